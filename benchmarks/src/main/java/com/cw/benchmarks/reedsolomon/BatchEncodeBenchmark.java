@@ -0,0 +1,80 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.ReedSolomon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding many small values, the way StorageSystem stores keys: one
+ * encodeParity() call per value, against one encodeParityBatch() call
+ * for all of them, against one encodeParity() call over the values
+ * packed back to back in shared shard buffers.
+ *
+ * The score is the time to encode all batchSize values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchEncodeBenchmark {
+
+    @Param({"2+1", "4+2"})
+    public String shape;
+
+    @Param({"100"})
+    public int valueSize;
+
+    @Param({"3", "64"})
+    public int batchSize;
+
+    private ReedSolomon codec;
+    private int shardSize;
+    private List<byte [] []> stripes;
+    private byte [] [] packed;
+
+    @Setup
+    public void setUp() {
+        codec = ReedSolomon.create(Codecs.dataShardCount(shape), Codecs.parityShardCount(shape));
+        shardSize = (valueSize + codec.getDataShardCount() - 1) / codec.getDataShardCount();
+        stripes = new ArrayList<byte [] []>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            stripes.add(Codecs.randomShards(codec, shardSize));
+        }
+        packed = Codecs.randomShards(codec, shardSize * batchSize);
+    }
+
+    @Benchmark
+    public List<byte [] []> oneCallPerValue() {
+        for (byte [] [] shards : stripes) {
+            codec.encodeParity(shards, 0, shardSize);
+        }
+        return stripes;
+    }
+
+    @Benchmark
+    public List<byte [] []> encodeParityBatch() {
+        codec.encodeParityBatch(stripes);
+        return stripes;
+    }
+
+    @Benchmark
+    public byte [] [] packed() {
+        codec.encodeParity(packed, 0, shardSize * batchSize);
+        return packed;
+    }
+}
@@ -0,0 +1,107 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.CodingLoop;
+import com.cw.storage.reedsolomon.CodingLoopTuner;
+import com.cw.storage.reedsolomon.ParallelCodingLoop;
+import com.cw.storage.reedsolomon.ReedSolomon;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Helpers that turn benchmark parameters into codecs and shards.
+ */
+final class Codecs {
+
+    /**
+     * One pool per thread count, shared by the trials in a fork until
+     * shutdownPools() is called.
+     */
+    private static final Map<Integer, ForkJoinPool> POOLS = new HashMap<>();
+
+    private Codecs() {
+    }
+
+    /**
+     * Returns the data shard count from a shape like "17+3".
+     */
+    static int dataShardCount(String shape) {
+        return Integer.parseInt(shape.split("\\+")[0]);
+    }
+
+    /**
+     * Returns the parity shard count from a shape like "17+3".
+     */
+    static int parityShardCount(String shape) {
+        return Integer.parseInt(shape.split("\\+")[1]);
+    }
+
+    /**
+     * Finds a coding loop by its simple class name.  "Default" means
+     * the one ReedSolomon.create() uses.
+     */
+    static CodingLoop codingLoop(String name) {
+        if (name.equals("Default")) {
+            return ReedSolomon.getDefaultCodingLoop();
+        }
+        for (CodingLoop codingLoop : CodingLoopTuner.candidates()) {
+            if (codingLoop.getClass().getSimpleName().equals(name)) {
+                return codingLoop;
+            }
+        }
+        throw new IllegalArgumentException("no such coding loop: " + name);
+    }
+
+    /**
+     * Builds a codec for the given parameters.  With more than one
+     * thread, the coding loop is wrapped in a ParallelCodingLoop with a
+     * pool of that many threads.  Call shutdownPools() in the
+     * benchmark's @TearDown.
+     */
+    static ReedSolomon codec(String shape, String codingLoopName, int threads) {
+        CodingLoop codingLoop = codingLoop(codingLoopName);
+        if (1 < threads) {
+            codingLoop = new ParallelCodingLoop(codingLoop, pool(threads), ParallelCodingLoop.DEFAULT_MIN_CHUNK_SIZE);
+        }
+        return new ReedSolomon(dataShardCount(shape), parityShardCount(shape), codingLoop);
+    }
+
+    /**
+     * Returns the pool with the given number of threads, creating it
+     * the first time.
+     */
+    static synchronized ForkJoinPool pool(int threads) {
+        ForkJoinPool pool = POOLS.get(threads);
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+            POOLS.put(threads, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Shuts down the pools created by pool().
+     */
+    static synchronized void shutdownPools() {
+        for (ForkJoinPool pool : POOLS.values()) {
+            pool.shutdown();
+        }
+        POOLS.clear();
+    }
+
+    /**
+     * Allocates the shards for a codec, with random data shards and
+     * correct parity.
+     */
+    static byte [] [] randomShards(ReedSolomon codec, int shardSize) {
+        Random random = new Random(42);
+        byte [] [] shards = new byte [codec.getTotalShardCount()] [shardSize];
+        for (int i = 0; i < codec.getDataShardCount(); i++) {
+            random.nextBytes(shards[i]);
+        }
+        codec.encodeParity(shards, 0, shardSize);
+        return shards;
+    }
+}
@@ -0,0 +1,77 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.ReedSolomon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of ReedSolomon.decodeMissing().
+ *
+ * The first data shards are the ones treated as missing, since
+ * rebuilding data shards is the expensive case.  erasures is either a
+ * count, or "max" for as many as the parity count allows.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    @Param({
+            "InputOutputByteTableCodingLoop",
+            "OutputInputByteTableCodingLoop",
+            "InputOutputByteSwarCodingLoop",
+            "InputOutputByteNibbleCodingLoop",
+    })
+    public String codingLoop;
+
+    @Param({"2+1", "4+2", "6+3", "10+4", "17+3"})
+    public String shape;
+
+    @Param({"4096", "65536", "1048576"})
+    public int shardSize;
+
+    @Param({"1", "max"})
+    public String erasures;
+
+    private ReedSolomon codec;
+    private byte [] [] shards;
+    private boolean [] shardPresent;
+
+    @Setup
+    public void setUp() {
+        codec = Codecs.codec(shape, codingLoop, 1);
+        shards = Codecs.randomShards(codec, shardSize);
+        int erasureCount = erasures.equals("max") ? codec.getParityShardCount() : Integer.parseInt(erasures);
+        if (codec.getParityShardCount() < erasureCount) {
+            throw new IllegalArgumentException("more erasures than parity shards: " + erasureCount + " > " + codec.getParityShardCount());
+        }
+        shardPresent = new boolean [codec.getTotalShardCount()];
+        Arrays.fill(shardPresent, true);
+        for (int i = 0; i < erasureCount; i++) {
+            shardPresent[i] = false;
+        }
+    }
+
+    @Benchmark
+    public byte [] [] decodeMissing() {
+        // The missing shards are overwritten on every call, so there's
+        // no need to clear them in between.
+        codec.decodeMissing(shards, shardPresent, 0, shardSize);
+        return shards;
+    }
+}
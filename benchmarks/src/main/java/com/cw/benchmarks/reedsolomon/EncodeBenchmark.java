@@ -0,0 +1,79 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.ReedSolomon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of ReedSolomon.encodeParity() and isParityCorrect().
+ *
+ * The score is stripes per second; multiply by shardSize and the data
+ * shard count to get bytes of input per second.  Everything runs on
+ * the calling thread; ParallelEncodeBenchmark gives the scaling curve
+ * of ParallelCodingLoop for large stripes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+
+    @Param({
+            "ByteInputOutputExpCodingLoop",
+            "ByteInputOutputTableCodingLoop",
+            "ByteOutputInputExpCodingLoop",
+            "ByteOutputInputTableCodingLoop",
+            "InputByteOutputExpCodingLoop",
+            "InputByteOutputTableCodingLoop",
+            "InputOutputByteExpCodingLoop",
+            "InputOutputByteTableCodingLoop",
+            "OutputByteInputExpCodingLoop",
+            "OutputByteInputTableCodingLoop",
+            "OutputInputByteExpCodingLoop",
+            "OutputInputByteTableCodingLoop",
+            "InputOutputByteSwarCodingLoop",
+            "InputOutputByteNibbleCodingLoop",
+    })
+    public String codingLoop;
+
+    @Param({"2+1", "4+2", "6+3", "10+4", "17+3"})
+    public String shape;
+
+    @Param({"4096", "65536", "1048576"})
+    public int shardSize;
+
+    private ReedSolomon codec;
+    private byte [] [] shards;
+    private byte [] tempBuffer;
+
+    @Setup
+    public void setUp() {
+        codec = Codecs.codec(shape, codingLoop, 1);
+        shards = Codecs.randomShards(codec, shardSize);
+        tempBuffer = new byte [shardSize];
+    }
+
+    @Benchmark
+    public byte [] [] encodeParity() {
+        codec.encodeParity(shards, 0, shardSize);
+        return shards;
+    }
+
+    @Benchmark
+    public boolean isParityCorrect() {
+        return codec.isParityCorrect(shards, 0, shardSize, tempBuffer);
+    }
+}
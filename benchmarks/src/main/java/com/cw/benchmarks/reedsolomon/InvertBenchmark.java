@@ -0,0 +1,61 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.Matrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for Matrix.invert() on a random invertible size x size matrix:
+ * the work done for every new erasure pattern before decoding, when the
+ * decode matrix isn't in the cache yet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvertBenchmark {
+
+    @Param({"2", "4", "10", "17", "64"})
+    public int size;
+
+    private Matrix matrix;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(size);
+        while (true) {
+            matrix = new Matrix(size, size);
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    matrix.set(r, c, (byte) random.nextInt(256));
+                }
+            }
+            try {
+                matrix.invert();
+                return;
+            }
+            catch (IllegalArgumentException e) {
+                // Singular; try another one.
+            }
+        }
+    }
+
+    @Benchmark
+    public Matrix invert() {
+        return matrix.invert();
+    }
+}
@@ -0,0 +1,75 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.MatrixType;
+import com.cw.storage.reedsolomon.ReedSolomon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the encoding matrices of MatrixType: how long it takes to
+ * build a codec, and how fast it then encodes.
+ *
+ * OPTIMIZED_CAUCHY only pays off in encoding with a loop that takes
+ * advantage of coefficients of 1, such as InputOutputByteSwarCodingLoop.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatrixBenchmark {
+
+    @Param({"VANDERMONDE", "CAUCHY", "OPTIMIZED_CAUCHY"})
+    public MatrixType matrixType;
+
+    @Param({"InputOutputByteTableCodingLoop", "InputOutputByteSwarCodingLoop"})
+    public String codingLoop;
+
+    @Param({"4+2", "10+4", "17+3", "64+16"})
+    public String shape;
+
+    @Param({"65536"})
+    public int shardSize;
+
+    private ReedSolomon codec;
+    private byte [] [] shards;
+
+    @Setup
+    public void setUp() {
+        codec = newCodec();
+        shards = Codecs.randomShards(codec, shardSize);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ReedSolomon construct() {
+        return newCodec();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public byte [] [] encodeParity() {
+        codec.encodeParity(shards, 0, shardSize);
+        return shards;
+    }
+
+    private ReedSolomon newCodec() {
+        return new ReedSolomon(
+                Codecs.dataShardCount(shape),
+                Codecs.parityShardCount(shape),
+                Codecs.codingLoop(codingLoop),
+                matrixType);
+    }
+}
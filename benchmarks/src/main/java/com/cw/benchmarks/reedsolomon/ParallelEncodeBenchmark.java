@@ -0,0 +1,66 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.ReedSolomon;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How ParallelCodingLoop scales with the number of threads, encoding
+ * large stripes.  threads=1 runs the wrapped loop on the calling thread
+ * and is the baseline for the speedup.
+ *
+ * The score is stripes per second; multiply by shardSize and the data
+ * shard count to get bytes of input per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelEncodeBenchmark {
+
+    @Param({"InputOutputByteTableCodingLoop"})
+    public String codingLoop;
+
+    @Param({"10+4"})
+    public String shape;
+
+    @Param({"1048576", "16777216"})
+    public int shardSize;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ReedSolomon codec;
+    private byte [] [] shards;
+
+    @Setup
+    public void setUp() {
+        codec = Codecs.codec(shape, codingLoop, threads);
+        shards = Codecs.randomShards(codec, shardSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Codecs.shutdownPools();
+    }
+
+    @Benchmark
+    public byte [] [] encodeParity() {
+        codec.encodeParity(shards, 0, shardSize);
+        return shards;
+    }
+}
@@ -0,0 +1,99 @@
+package com.cw.benchmarks.reedsolomon;
+
+import com.cw.storage.reedsolomon.ReedSolomon;
+import com.cw.storage.reedsolomon.ReedSolomon16;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode throughput of ReedSolomon (8-bit symbols) against
+ * ReedSolomon16 (16-bit symbols) on the same shapes.
+ *
+ * The default shapes fit in both.  Wide stripes only work with 16-bit
+ * symbols, for example:
+ *
+ *     -p symbolBits=16 -p shape=300+30,900+100 -p shardSize=4096
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SymbolSizeBenchmark {
+
+    @Param({"8", "16"})
+    public int symbolBits;
+
+    @Param({"10+4", "17+3", "200+56"})
+    public String shape;
+
+    @Param({"65536"})
+    public int shardSize;
+
+    private ReedSolomon codec8;
+    private ReedSolomon16 codec16;
+    private byte [] [] shards;
+    private boolean [] shardPresent;
+
+    @Setup
+    public void setUp() {
+        int dataShardCount = Codecs.dataShardCount(shape);
+        int parityShardCount = Codecs.parityShardCount(shape);
+        if (symbolBits == 8) {
+            codec8 = ReedSolomon.create(dataShardCount, parityShardCount);
+        }
+        else {
+            codec16 = ReedSolomon16.create(dataShardCount, parityShardCount);
+        }
+
+        Random random = new Random(42);
+        shards = new byte [dataShardCount + parityShardCount] [shardSize];
+        for (int i = 0; i < dataShardCount; i++) {
+            random.nextBytes(shards[i]);
+        }
+        encodeParity();
+
+        // Lose as many data shards as there are parity shards.
+        shardPresent = new boolean [shards.length];
+        Arrays.fill(shardPresent, true);
+        for (int i = 0; i < parityShardCount; i++) {
+            shardPresent[i] = false;
+        }
+    }
+
+    @Benchmark
+    public byte [] [] encodeParity() {
+        if (codec8 != null) {
+            codec8.encodeParity(shards, 0, shardSize);
+        }
+        else {
+            codec16.encodeParity(shards, 0, shardSize);
+        }
+        return shards;
+    }
+
+    @Benchmark
+    public byte [] [] decodeMissing() {
+        if (codec8 != null) {
+            codec8.decodeMissing(shards, shardPresent, 0, shardSize);
+        }
+        else {
+            codec16.decodeMissing(shards, shardPresent, 0, shardSize);
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,103 @@
+package com.cw.benchmarks.storage;
+
+import com.cw.enums.KeyTypeEnum;
+import com.cw.storage.InMemoryShardStore;
+import com.cw.storage.LogStructuredShardStore;
+import com.cw.storage.MappedSegmentShardStore;
+import com.cw.storage.ShardStore;
+import com.cw.storage.StorageSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for one StorageSystem.get() of a public key, with each
+ * ShardStore backend, with all databases present ("healthy") and with
+ * one data shard's database cleared ("degraded").
+ *
+ * Run with -prof gc to see the allocation per read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StorageGetBenchmark {
+
+    private static final String GROUP = "benchmark-group";
+
+    @Param({"memory", "log", "mapped"})
+    public String store;
+
+    @Param({"healthy", "degraded"})
+    public String state;
+
+    @Param({"256"})
+    public int valueSize;
+
+    private File directory;
+    private ShardStore shardStore;
+    private StorageSystem storage;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("shard-store").toFile();
+        switch (store) {
+            case "memory":
+                shardStore = new InMemoryShardStore(3);
+                break;
+            case "log":
+                shardStore = new LogStructuredShardStore(directory, 3);
+                break;
+            case "mapped":
+                shardStore = new MappedSegmentShardStore(directory, 3);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown store: " + store);
+        }
+        storage = new StorageSystem(shardStore);
+
+        Random random = new Random(valueSize);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < valueSize; i++) {
+            value.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        storage.put(value.toString(), GROUP, KeyTypeEnum.PUB_KEY);
+        if (state.equals("degraded")) {
+            shardStore.clear(0);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        shardStore.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public String get() {
+        return storage.get(null, GROUP, KeyTypeEnum.PUB_KEY.getType(), null, null);
+    }
+}
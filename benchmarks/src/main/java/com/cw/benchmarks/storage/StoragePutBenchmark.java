@@ -0,0 +1,104 @@
+package com.cw.benchmarks.storage;
+
+import com.cw.enums.KeyTypeEnum;
+import com.cw.storage.LogStructuredShardStore;
+import com.cw.storage.StorageSystem;
+import com.cw.storage.WriteAheadLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of StorageSystem.putAll() of a group's three keys, the way
+ * genAndStoreGroupKey stores them, from many threads at once, on a
+ * LogStructuredShardStore:
+ *
+ *   "none"      no write-ahead log (not crash safe)
+ *   "fsync"     write-ahead log, one fsync per put
+ *   "group"     write-ahead log with group commit
+ *
+ * Use -t to change the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class StoragePutBenchmark {
+
+    @Param({"none", "fsync", "group"})
+    public String durability;
+
+    private File directory;
+    private LogStructuredShardStore shardStore;
+    private WriteAheadLog writeAheadLog;
+    private StorageSystem storage;
+    private final AtomicLong groups = new AtomicLong();
+    private final Map<KeyTypeEnum, String> keys = new EnumMap<>(KeyTypeEnum.class);
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("shard-store").toFile();
+        shardStore = new LogStructuredShardStore(directory, 3);
+        switch (durability) {
+            case "none":
+                storage = new StorageSystem(shardStore);
+                break;
+            case "fsync":
+            case "group":
+                writeAheadLog = new WriteAheadLog(new File(directory, "wal.log"), durability.equals("group"));
+                storage = new StorageSystem(shardStore, writeAheadLog);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown durability: " + durability);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            hex.append(Character.forDigit(i % 16, 16));
+        }
+        for (KeyTypeEnum keyType : KeyTypeEnum.values()) {
+            keys.put(keyType, hex.toString());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (writeAheadLog != null) {
+            System.out.println("fsyncs per put: " + (double) writeAheadLog.getSyncCount() / groups.get());
+            writeAheadLog.close();
+        }
+        shardStore.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void putAll() {
+        storage.putAll(keys, "group-" + groups.incrementAndGet());
+    }
+}
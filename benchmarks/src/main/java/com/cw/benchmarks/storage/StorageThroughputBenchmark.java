@@ -0,0 +1,133 @@
+package com.cw.benchmarks.storage;
+
+import com.cw.enums.KeyTypeEnum;
+import com.cw.storage.InMemoryShardStore;
+import com.cw.storage.LogStructuredShardStore;
+import com.cw.storage.MappedSegmentShardStore;
+import com.cw.storage.ShardStore;
+import com.cw.storage.StorageSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one StorageSystem shared by 16 threads, each doing a
+ * mix of get() and put() on random groups out of a preloaded set.
+ *
+ * locking=striped calls StorageSystem directly, so operations on
+ * different groups only meet in the ShardStore.  locking=global puts
+ * every call behind one lock, as callers had to before StorageSystem
+ * was safe for concurrent use, and is the baseline to compare with.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class StorageThroughputBenchmark {
+
+    @Param({"memory", "log", "mapped"})
+    public String store;
+
+    @Param({"striped", "global"})
+    public String locking;
+
+    @Param({"90", "50"})
+    public int readPercent;
+
+    @Param({"1024"})
+    public int groupCount;
+
+    @Param({"256"})
+    public int valueSize;
+
+    private final Object globalLock = new Object();
+    private File directory;
+    private ShardStore shardStore;
+    private StorageSystem storage;
+    private String [] groups;
+    private String value;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("shard-store").toFile();
+        switch (store) {
+            case "memory":
+                shardStore = new InMemoryShardStore(3);
+                break;
+            case "log":
+                shardStore = new LogStructuredShardStore(directory, 3);
+                break;
+            case "mapped":
+                shardStore = new MappedSegmentShardStore(directory, 3);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown store: " + store);
+        }
+        storage = new StorageSystem(shardStore);
+
+        Random random = new Random(valueSize);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < valueSize; i++) {
+            builder.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        value = builder.toString();
+        groups = new String [groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            groups[i] = "benchmark-group-" + i;
+            storage.put(value, groups[i], KeyTypeEnum.PUB_KEY);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        shardStore.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public Object mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String group = groups[random.nextInt(groupCount)];
+        boolean read = random.nextInt(100) < readPercent;
+        if (locking.equals("global")) {
+            synchronized (globalLock) {
+                return operate(group, read);
+            }
+        }
+        return operate(group, read);
+    }
+
+    private Object operate(String group, boolean read) {
+        if (read) {
+            return storage.get(null, group, KeyTypeEnum.PUB_KEY.getType(), null, null);
+        }
+        storage.put(value, group, KeyTypeEnum.PUB_KEY);
+        return group;
+    }
+}
@@ -1,15 +1,26 @@
 package com.cw.server;
 
+import com.cw.enums.KeyTypeEnum;
+import com.cw.storage.InMemoryShardStore;
+import com.cw.storage.LogStructuredShardStore;
+import com.cw.storage.ShardLayout;
+import com.cw.storage.ShardStore;
 import com.cw.storage.StorageSystem;
+import com.cw.storage.WriteAheadLog;
 import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.Map;
 
 
 /**
  * @ClassName : Server
  * @Description : Server 系统，
- * 整合 MPC、SignServer 和 StorageSystem，用 3个HashMap代表3个数据库
+ * 整合 MPC、SignServer 和 StorageSystem，数据库默认是内存中的 3 个，设置 -Dstorage.dir 时存到日志文件
  * 以 group为单位管理用户，按 Sgn 分组进行混淆加密
  * 负责 group RSA 公私钥 的存，取和恢复, group 签名
  * 负责 保存用户 ECC 公钥，并验签
@@ -18,13 +29,21 @@ import java.net.InetAddress;
  */
 @Slf4j
 public class Server {
+    // 设置了 -Dstorage.dir 时，分片经预写日志写入该目录下的日志文件，重启后仍在；否则只存在内存中
+    private static final String STORAGE_DIR_PROPERTY = "storage.dir";
+    // 数据库（存储节点）个数，默认 3
+    private static final String STORAGE_NODES_PROPERTY = "storage.nodes";
+    // 默认的 k+m 布局，如 -Dstorage.layout=4+2，默认 2+1；-Dstorage.layout.<keyType>=6+3 单独设置某种 keyType（n、d0、d1）
+    private static final String STORAGE_LAYOUT_PROPERTY = "storage.layout";
+    private static final int DEFAULT_DATA_BASE_COUNT = 3;
+
     private static DatagramSocket udpSocket;
     private static ServerMsgHandle handle;
     private StorageSystem storage;
     private BlockchainSystem blockchainSystem;
 
     public Server(int port) {
-        storage = new StorageSystem();
+        storage = newStorageSystem();
         blockchainSystem = new BlockchainSystem(storage);
 
         try {
@@ -40,6 +59,31 @@ public class Server {
         }
     }
 
+    private static StorageSystem newStorageSystem() {
+        int nodes = Integer.getInteger(STORAGE_NODES_PROPERTY, DEFAULT_DATA_BASE_COUNT);
+        ShardLayout defaultLayout = ShardLayout.parse(System.getProperty(STORAGE_LAYOUT_PROPERTY, ShardLayout.DEFAULT.toString()));
+        Map<KeyTypeEnum, ShardLayout> keyTypeLayouts = new EnumMap<>(KeyTypeEnum.class);
+        for (KeyTypeEnum keyType : KeyTypeEnum.values()) {
+            String layout = System.getProperty(STORAGE_LAYOUT_PROPERTY + "." + keyType.getType());
+            if (layout != null) {
+                keyTypeLayouts.put(keyType, ShardLayout.parse(layout));
+            }
+        }
+        log.info("Storage uses {} databases, layout {} {}", nodes, defaultLayout, keyTypeLayouts);
+
+        String dir = System.getProperty(STORAGE_DIR_PROPERTY);
+        if (dir == null) {
+            return new StorageSystem(new InMemoryShardStore(nodes), defaultLayout, keyTypeLayouts);
+        }
+        try {
+            log.info("Storing shards in " + dir);
+            ShardStore shardStore = new LogStructuredShardStore(new File(dir), nodes);
+            return new StorageSystem(shardStore, defaultLayout, keyTypeLayouts, new WriteAheadLog(new File(dir, "wal.log")));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open shard store in " + dir, e);
+        }
+    }
+
     public static void main(String[] args) {
         Server s = new Server(9999);
     }
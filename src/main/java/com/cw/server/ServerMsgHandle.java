@@ -373,15 +373,17 @@ public class ServerMsgHandle implements Runnable {
         log.debug("d = {}", privateKey.d.toString(16));
 
         // 公钥存入存储系统，私钥分成碎片存入存储系统
-        storage.put(publicKey.n.toString(16), group, KeyTypeEnum.PUB_KEY);
+        Map<KeyTypeEnum, String> keys = new LinkedHashMap<>();
+        keys.put(KeyTypeEnum.PUB_KEY, publicKey.n.toString(16));
 
         // pks 私钥碎片
         String[] pks = Utils.splitString(privateKey.d.toString(16), 2);
-
-        // 私钥碎片存入 storage
         for (int i = 0; i < pks.length; i++) {
-            storage.put(pks[i], group, KeyTypeEnum.getByType("d" + i));
+            keys.put(KeyTypeEnum.getByType("d" + i), pks[i]);
         }
+
+        // 公钥和私钥碎片一起存入 storage
+        storage.putAll(keys, group);
         storage.display();
 
         for (User u : userManagement.get(group)) {
@@ -0,0 +1,100 @@
+package com.cw.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @ClassName : ConsistentHashRing
+ * @Description : 用一致性哈希把 key 的各个分片放到不同的存储节点上。
+ * 每个节点在环上有 virtualNodes 个点，key 的分片依次放在从 key 的哈希位置顺时针遇到的不同节点上。
+ * 节点数从 N 变成 N+1 时，新节点落在一个 key 的前 count 个不同节点之内的概率约为 count/(N+1)，
+ * 落入时排在它后面的分片都会换节点，所以 count 接近 N 时大部分 key 都要挪动，并不是只有 1/(N+1)。
+ * 分片不会自动迁移；StorageSystem 在每个分片里记下它的序号和布局，读时按序号放回，
+ * 只要环现在选出的节点上还有 k 个同一次写入的分片就能解码，否则需要重新写入。
+ */
+public final class ConsistentHashRing {
+
+    /**
+     * 每个节点默认的虚拟节点数
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int nodeCount;
+
+    // 环上的点按哈希值排序，owners[i] 是 points[i] 所属的节点
+    private final long[] points;
+    private final int[] owners;
+
+    public ConsistentHashRing(int nodeCount) {
+        this(nodeCount, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int nodeCount, int virtualNodes) {
+        if (nodeCount <= 0) {
+            throw new IllegalArgumentException("nodeCount must be positive: " + nodeCount);
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+        this.nodeCount = nodeCount;
+        long[][] entries = new long[nodeCount * virtualNodes][];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                entries[node * virtualNodes + v] = new long[]{hash("node-" + node + "#" + v), node};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[entries.length];
+        owners = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = (int) entries[i][1];
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @Description: key 的 count 个分片所在的节点，各不相同，第 i 个分片放在 result[i]
+     **/
+    public int[] nodesFor(String key, int count) {
+        if (count < 0 || nodeCount < count) {
+            throw new IllegalArgumentException("Cannot place " + count + " shards on " + nodeCount + " nodes");
+        }
+        int[] result = new int[count];
+        boolean[] used = new boolean[nodeCount];
+        int found = 0;
+        int start = Arrays.binarySearch(points, hash(key));
+        if (start < 0) {
+            start = -start - 1;
+        }
+        // 从 key 的位置顺时针走，到环尾后从环头绕回来
+        for (int step = 0; found < count; step++) {
+            int node = owners[(start + step) % points.length];
+            if (!used[node]) {
+                used[node] = true;
+                result[found++] = node;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 64 位 FNV-1a，再做一次 murmur3 的 fmix64 让相近的字符串也分散开
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e05ed5443L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
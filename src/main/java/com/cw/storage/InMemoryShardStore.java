@@ -0,0 +1,73 @@
+package com.cw.storage;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * @ClassName : InMemoryShardStore
+ * @Description : 内存中的分片存储，每个数据库是 { groupName ： {keyType ： shard}}，重启后数据丢失。
+ * 可以多线程并发访问：读不加锁；写和删除在外层 map 的 compute 中完成，
+ * 所以删除时移除空的组不会丢掉同时写入该组的分片。
+ */
+public class InMemoryShardStore implements ShardStore {
+
+    private final ArrayList<ConcurrentHashMap<String, ConcurrentHashMap<String, byte[]>>> dataBaseManagement;
+
+    public InMemoryShardStore(int dataBaseCount) {
+        if (dataBaseCount <= 0) {
+            throw new IllegalArgumentException("dataBaseCount must be positive: " + dataBaseCount);
+        }
+        dataBaseManagement = new ArrayList<>(dataBaseCount);
+        for (int i = 0; i < dataBaseCount; i++) {
+            dataBaseManagement.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public int getDataBaseCount() {
+        return dataBaseManagement.size();
+    }
+
+    @Override
+    public void put(int dataBase, String groupName, String keyType, byte[] shard) {
+        dataBaseManagement.get(dataBase).compute(groupName, (group, groupMap) -> {
+            if (groupMap == null) {
+                groupMap = new ConcurrentHashMap<>();
+            }
+            groupMap.put(keyType, shard);
+            return groupMap;
+        });
+    }
+
+    @Override
+    public byte[] get(int dataBase, String groupName, String keyType) {
+        ConcurrentHashMap<String, byte[]> groupMap = dataBaseManagement.get(dataBase).get(groupName);
+        return groupMap == null ? null : groupMap.get(keyType);
+    }
+
+    @Override
+    public boolean delete(int dataBase, String groupName, String keyType) {
+        boolean[] removed = new boolean[1];
+        dataBaseManagement.get(dataBase).computeIfPresent(groupName, (group, groupMap) -> {
+            removed[0] = groupMap.remove(keyType) != null;
+            return groupMap.isEmpty() ? null : groupMap;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public void scan(int dataBase, BiConsumer<String, String> consumer) {
+        dataBaseManagement.get(dataBase).forEach((group, map) -> map.keySet().forEach(keyType -> consumer.accept(group, keyType)));
+    }
+
+    @Override
+    public void clear(int dataBase) {
+        dataBaseManagement.get(dataBase).clear();
+    }
+
+    @Override
+    public boolean isEmpty(int dataBase) {
+        return dataBaseManagement.get(dataBase).isEmpty();
+    }
+}
@@ -0,0 +1,453 @@
+package com.cw.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * @ClassName : LogStructuredShardStore
+ * @Description : 追加写的日志结构分片存储，每个数据库一个日志文件 db-i.log。
+ * 记录格式见 ShardRecords，类型为 PUT 或 DELETE，覆盖写和删除都只是追加一条新记录。
+ * 内存里只保留 (groupName, keyType) -> 分片在文件中的位置，读分片是一次定位读，同一数据库的读可以并发。
+ * 启动时顺序扫描日志重建索引。坏记录之后再没有完好的记录时，它是写到一半时崩溃留下的尾巴，从那里截断；
+ * 坏记录之后还有完好的记录时是文件中间损坏，截断或跳过都会丢掉后面的写入、让旧分片复活，所以拒绝打开。
+ * compact() 把仍然有效的记录重写到新文件，回收被覆盖和删除的记录占用的空间。
+ */
+@Slf4j
+public class LogStructuredShardStore implements ShardStore {
+
+    private final File directory;
+    private final boolean syncOnWrite;
+    private final DataBaseLog[] logs;
+
+    /**
+     * @Description: 在 directory 下打开（或新建）dataBaseCount 个数据库，写入不强制刷盘
+     **/
+    public LogStructuredShardStore(File directory, int dataBaseCount) throws IOException {
+        this(directory, dataBaseCount, false);
+    }
+
+    /**
+     * @param syncOnWrite 为 true 时每次写入后 force()，断电也不会丢已返回的写入
+     **/
+    public LogStructuredShardStore(File directory, int dataBaseCount, boolean syncOnWrite) throws IOException {
+        if (dataBaseCount <= 0) {
+            throw new IllegalArgumentException("dataBaseCount must be positive: " + dataBaseCount);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.syncOnWrite = syncOnWrite;
+        this.logs = new DataBaseLog[dataBaseCount];
+        try {
+            for (int i = 0; i < dataBaseCount; i++) {
+                logs[i] = new DataBaseLog(logFile(i));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getDataBaseCount() {
+        return logs.length;
+    }
+
+    @Override
+    public void put(int dataBase, String groupName, String keyType, byte[] shard) {
+        DataBaseLog db = logs[dataBase];
+        db.lock.writeLock().lock();
+        try {
+            db.append(ShardRecords.PUT, groupName, keyType, shard);
+        } finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] get(int dataBase, String groupName, String keyType) {
+        DataBaseLog db = logs[dataBase];
+        // 定位读不改变 channel 的位置，多个线程可以同时读
+        db.lock.readLock().lock();
+        try {
+            return db.read(groupName, keyType);
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(int dataBase, String groupName, String keyType) {
+        DataBaseLog db = logs[dataBase];
+        db.lock.writeLock().lock();
+        try {
+            if (db.locate(groupName, keyType) == null) {
+                return false;
+            }
+            db.append(ShardRecords.DELETE, groupName, keyType, new byte[0]);
+            return true;
+        } finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void scan(int dataBase, BiConsumer<String, String> consumer) {
+        DataBaseLog db = logs[dataBase];
+        db.lock.readLock().lock();
+        try {
+            db.index.forEach((group, map) -> map.keySet().forEach(keyType -> consumer.accept(group, keyType)));
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear(int dataBase) {
+        DataBaseLog db = logs[dataBase];
+        db.lock.writeLock().lock();
+        try {
+            db.truncate(0);
+            db.index.clear();
+        } finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty(int dataBase) {
+        DataBaseLog db = logs[dataBase];
+        db.lock.readLock().lock();
+        try {
+            return db.index.isEmpty();
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (DataBaseLog db : logs) {
+            db.lock.readLock().lock();
+            try {
+                db.channel.force(false);
+            } finally {
+                db.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @Description: 第 dataBase 个数据库日志文件的字节数
+     **/
+    public long getLogSize(int dataBase) {
+        DataBaseLog db = logs[dataBase];
+        db.lock.readLock().lock();
+        try {
+            return db.end;
+        } finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @Description: 把第 dataBase 个数据库中仍有效的分片写入新日志，再原子替换旧日志
+     **/
+    public void compact(int dataBase) throws IOException {
+        DataBaseLog db = logs[dataBase];
+        db.lock.writeLock().lock();
+        try {
+            File compacted = new File(directory, logFile(dataBase).getName() + ".compact");
+            Map<String, Map<String, Location>> newIndex = new LinkedHashMap<>();
+            // 新文件在改名之前打开，改名后这个句柄指向的就是 db-i.log，换上它不会再失败
+            RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+            long position = 0;
+            try {
+                out.setLength(0);
+                FileChannel channel = out.getChannel();
+                for (Map.Entry<String, Map<String, Location>> group : db.index.entrySet()) {
+                    for (Map.Entry<String, Location> entry : group.getValue().entrySet()) {
+                        byte[] shard = db.read(entry.getValue());
+                        ByteBuffer record = ShardRecords.encode(ShardRecords.PUT, group.getKey(), entry.getKey(), shard);
+                        long valuePosition = position + record.limit() - ShardRecords.CRC_LENGTH - shard.length;
+                        position += writeFully(channel, record, position);
+                        newIndex.computeIfAbsent(group.getKey(), g -> new LinkedHashMap<>())
+                                .put(entry.getKey(), new Location(valuePosition, shard.length));
+                    }
+                }
+                channel.force(true);
+                Files.move(compacted.toPath(), logFile(dataBase).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                // 旧日志还开着、也没被替换，数据库照常可用
+                out.close();
+                compacted.delete();
+                throw e;
+            }
+            RandomAccessFile old = db.file;
+            db.replace(out, position, newIndex);
+            try {
+                old.close();
+            } catch (IOException e) {
+                log.warn("Cannot close replaced log of database {}", dataBase, e);
+            }
+        } finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (DataBaseLog db : logs) {
+            if (db != null) {
+                db.lock.writeLock().lock();
+                try {
+                    db.file.close();
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    db.lock.writeLock().unlock();
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private File logFile(int dataBase) {
+        return new File(directory, "db-" + dataBase + ".log");
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * 从 position 开始读满 buffer，文件先结束时返回 false
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 分片在日志文件中的位置
+     */
+    private static final class Location {
+        final long position;
+        final int length;
+
+        Location(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 一个数据库：日志文件、写入位置和内存索引。
+     * 读分片和索引时调用方持有读锁，追加、清空、压缩和关闭时持有写锁
+     */
+    private final class DataBaseLog {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final File path;
+        private RandomAccessFile file;
+        private FileChannel channel;
+        private long end;
+        private Map<String, Map<String, Location>> index = new LinkedHashMap<>();
+
+        DataBaseLog(File path) throws IOException {
+            this.path = path;
+            this.file = new RandomAccessFile(path, "rw");
+            this.channel = file.getChannel();
+            rebuildIndex();
+        }
+
+        /**
+         * 换上压缩后的日志，newEnd 是它的长度
+         */
+        void replace(RandomAccessFile newFile, long newEnd, Map<String, Map<String, Location>> newIndex) {
+            file = newFile;
+            channel = newFile.getChannel();
+            end = newEnd;
+            index = newIndex;
+        }
+
+        Location locate(String groupName, String keyType) {
+            Map<String, Location> groupMap = index.get(groupName);
+            return groupMap == null ? null : groupMap.get(keyType);
+        }
+
+        byte[] read(String groupName, String keyType) {
+            Location location = locate(groupName, keyType);
+            return location == null ? null : read(location);
+        }
+
+        byte[] read(Location location) {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length);
+            try {
+                if (!readFully(channel, buffer, location.position)) {
+                    throw new IOException("Log " + path + " ends inside a record");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer.array();
+        }
+
+        void append(byte type, String groupName, String keyType, byte[] shard) {
+            ByteBuffer record = ShardRecords.encode(type, groupName, keyType, shard);
+            long valuePosition = end + record.limit() - ShardRecords.CRC_LENGTH - shard.length;
+            try {
+                end += writeFully(channel, record, end);
+                if (syncOnWrite) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // 写了一半的记录留在末尾，下次启动扫描时会被截掉
+                throw new UncheckedIOException(e);
+            }
+            apply(type, groupName, keyType, new Location(valuePosition, shard.length));
+        }
+
+        void apply(byte type, String groupName, String keyType, Location location) {
+            if (type == ShardRecords.PUT) {
+                index.computeIfAbsent(groupName, g -> new LinkedHashMap<>()).put(keyType, location);
+            } else {
+                Map<String, Location> groupMap = index.get(groupName);
+                if (groupMap != null) {
+                    groupMap.remove(keyType);
+                    if (groupMap.isEmpty()) {
+                        index.remove(groupName);
+                    }
+                }
+            }
+        }
+
+        void truncate(long size) {
+            try {
+                channel.truncate(size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            end = size;
+        }
+
+        /**
+         * 从头扫描日志重建索引，返回时 end 指向最后一条完整记录之后。
+         * 第一条坏记录之后如果还有完好的记录，抛出 IOException，文件不动
+         */
+        private void rebuildIndex() throws IOException {
+            final long size = channel.size();
+            long position = 0;
+            int records = 0;
+            byte[] bytes;
+            while ((bytes = readRecord(position, size)) != null) {
+                ByteBuffer header = ByteBuffer.wrap(bytes);
+                header.position(4);
+                byte type = header.get();
+                int groupLength = header.getInt();
+                int keyLength = header.getInt();
+                int shardLength = header.getInt();
+                String groupName = new String(bytes, ShardRecords.HEADER_LENGTH, groupLength, StandardCharsets.UTF_8);
+                String keyType = new String(bytes, ShardRecords.HEADER_LENGTH + groupLength, keyLength, StandardCharsets.UTF_8);
+                long shardPosition = position + ShardRecords.shardOffset(groupLength, keyLength);
+                apply(type, groupName, keyType, new Location(shardPosition, shardLength));
+                position += bytes.length;
+                records += 1;
+            }
+            if (position < size) {
+                long next = findRecord(position + 1, size);
+                if (0 <= next) {
+                    throw new IOException("Log " + path + " is corrupt: " + records + " records end at byte " + position
+                            + ", but there is another record at byte " + next);
+                }
+                log.warn("Log {} has {} bytes of incomplete records after {} records, truncating", path, size - position, records);
+                channel.truncate(position);
+            }
+            end = position;
+        }
+
+        /**
+         * 读出从 position 开始的一条完整、CRC 正确的记录，那里不是这样一条记录时返回 null
+         */
+        private byte[] readRecord(long position, long size) throws IOException {
+            if (size < position + ShardRecords.HEADER_LENGTH + ShardRecords.CRC_LENGTH) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(ShardRecords.HEADER_LENGTH);
+            if (!readFully(channel, header, position)) {
+                return null;
+            }
+            header.flip();
+            if (header.getInt() != ShardRecords.MAGIC) {
+                return null;
+            }
+            byte type = header.get();
+            int groupLength = header.getInt();
+            int keyLength = header.getInt();
+            int shardLength = header.getInt();
+            long recordLength = ShardRecords.recordLength(type, groupLength, keyLength, shardLength);
+            if (recordLength < 0 || Integer.MAX_VALUE < recordLength || size < position + recordLength) {
+                return null;
+            }
+            ByteBuffer record = ByteBuffer.allocate((int) recordLength);
+            if (!readFully(channel, record, position)) {
+                return null;
+            }
+            byte[] bytes = record.array();
+            int crcOffset = bytes.length - ShardRecords.CRC_LENGTH;
+            if (ByteBuffer.wrap(bytes, crcOffset, ShardRecords.CRC_LENGTH).getInt() != ShardChecksum.crc32c(bytes, 4, crcOffset - 4)) {
+                return null;
+            }
+            return bytes;
+        }
+
+        /**
+         * 从 from 开始找下一条完好记录的位置，找不到时返回 -1
+         */
+        private long findRecord(long from, long size) throws IOException {
+            ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+            // 相邻两个窗口重叠 3 字节，跨窗口的 magic 也能找到
+            for (long start = from; start + ShardRecords.HEADER_LENGTH + ShardRecords.CRC_LENGTH <= size; start += window.capacity() - 3) {
+                window.clear();
+                window.limit((int) Math.min(window.capacity(), size - start));
+                readFully(channel, window, start);
+                for (int i = 0; i + 4 <= window.position(); i++) {
+                    if (window.getInt(i) == ShardRecords.MAGIC && readRecord(start + i, size) != null) {
+                        return start + i;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+}
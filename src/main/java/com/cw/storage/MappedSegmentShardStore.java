@@ -0,0 +1,379 @@
+package com.cw.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * @ClassName : MappedSegmentShardStore
+ * @Description : 用内存映射的定长段文件存分片，每个数据库是一串段文件 db-i.seg-n。
+ * 记录格式和 LogStructuredShardStore 一样（见 ShardRecords），追加写入当前段，放不下时开新段，记录不跨段。
+ * 段的剩余部分全是 0，扫描遇到 magic 不对就是该段的结尾。
+ * getBuffer() 直接返回映射区域的只读切片，分片不复制到堆上；StorageSystem.get 在切片上校验和解码。
+ * 启动时扫描所有段重建索引，最后一段末尾不完整的记录（写到一半时崩溃）被清零；
+ * 坏记录之后还有完好的记录，或者坏记录不在最后一段，都是文件损坏而不是写到一半，拒绝打开。
+ * 映射在 JVM 回收前一直有效，所以 close() 只刷盘；clear() 之后旧切片读到的是 0。
+ */
+@Slf4j
+public class MappedSegmentShardStore implements ShardStore {
+
+    /**
+     * 默认每个段的字节数
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final File directory;
+    private final int segmentSize;
+    private final boolean syncOnWrite;
+    private final DataBaseSegments[] dataBases;
+
+    /**
+     * @Description: 在 directory 下打开（或新建）dataBaseCount 个数据库，使用默认段大小，写入不强制刷盘
+     **/
+    public MappedSegmentShardStore(File directory, int dataBaseCount) throws IOException {
+        this(directory, dataBaseCount, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    /**
+     * @param segmentSize 每个段文件的字节数，也是单条记录的上限
+     * @param syncOnWrite 为 true 时每次写入后 force()
+     **/
+    public MappedSegmentShardStore(File directory, int dataBaseCount, int segmentSize, boolean syncOnWrite) throws IOException {
+        if (dataBaseCount <= 0) {
+            throw new IllegalArgumentException("dataBaseCount must be positive: " + dataBaseCount);
+        }
+        if (segmentSize < ShardRecords.HEADER_LENGTH + ShardRecords.CRC_LENGTH) {
+            throw new IllegalArgumentException("segmentSize is too small: " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncOnWrite = syncOnWrite;
+        this.dataBases = new DataBaseSegments[dataBaseCount];
+        for (int i = 0; i < dataBaseCount; i++) {
+            dataBases[i] = new DataBaseSegments(i);
+        }
+    }
+
+    @Override
+    public int getDataBaseCount() {
+        return dataBases.length;
+    }
+
+    @Override
+    public void put(int dataBase, String groupName, String keyType, byte[] shard) {
+        DataBaseSegments db = dataBases[dataBase];
+        synchronized (db) {
+            db.append(ShardRecords.PUT, groupName, keyType, shard);
+        }
+    }
+
+    @Override
+    public byte[] get(int dataBase, String groupName, String keyType) {
+        ByteBuffer buffer = getBuffer(dataBase, groupName, keyType);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] shard = new byte[buffer.remaining()];
+        buffer.get(shard);
+        return shard;
+    }
+
+    @Override
+    public ByteBuffer getBuffer(int dataBase, String groupName, String keyType) {
+        DataBaseSegments db = dataBases[dataBase];
+        synchronized (db) {
+            Location location = db.locate(groupName, keyType);
+            if (location == null) {
+                return null;
+            }
+            ByteBuffer view = db.segments.get(location.segment).asReadOnlyBuffer();
+            view.limit(location.position + location.length).position(location.position);
+            return view.slice();
+        }
+    }
+
+    @Override
+    public boolean delete(int dataBase, String groupName, String keyType) {
+        DataBaseSegments db = dataBases[dataBase];
+        synchronized (db) {
+            if (db.locate(groupName, keyType) == null) {
+                return false;
+            }
+            db.append(ShardRecords.DELETE, groupName, keyType, new byte[0]);
+            return true;
+        }
+    }
+
+    @Override
+    public void scan(int dataBase, BiConsumer<String, String> consumer) {
+        DataBaseSegments db = dataBases[dataBase];
+        synchronized (db) {
+            db.index.forEach((group, map) -> map.keySet().forEach(keyType -> consumer.accept(group, keyType)));
+        }
+    }
+
+    @Override
+    public void clear(int dataBase) {
+        DataBaseSegments db = dataBases[dataBase];
+        synchronized (db) {
+            db.clear();
+        }
+    }
+
+    @Override
+    public boolean isEmpty(int dataBase) {
+        DataBaseSegments db = dataBases[dataBase];
+        synchronized (db) {
+            return db.index.isEmpty();
+        }
+    }
+
+    /**
+     * @Description: 第 dataBase 个数据库的段文件个数
+     **/
+    public int getSegmentCount(int dataBase) {
+        DataBaseSegments db = dataBases[dataBase];
+        synchronized (db) {
+            return db.segments.size();
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        for (DataBaseSegments db : dataBases) {
+            synchronized (db) {
+                db.segments.forEach(MappedByteBuffer::force);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private File segmentFile(int dataBase, int segment) {
+        return new File(directory, "db-" + dataBase + ".seg-" + segment);
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        // 映射建立后就不再需要文件句柄
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * 分片所在的段和段内位置
+     */
+    private static final class Location {
+        final int segment;
+        final int position;
+        final int length;
+
+        Location(int segment, int position, int length) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 一个数据库：已映射的段、最后一段的写入位置和内存索引，调用方持有它的锁
+     */
+    private final class DataBaseSegments {
+        private final int dataBase;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        private final Map<String, Map<String, Location>> index = new LinkedHashMap<>();
+        private int end;
+
+        DataBaseSegments(int dataBase) throws IOException {
+            this.dataBase = dataBase;
+            int segmentCount = 0;
+            while (segmentFile(dataBase, segmentCount).exists()) {
+                segmentCount += 1;
+            }
+            for (int n = 0; n < segmentCount; n++) {
+                File file = segmentFile(dataBase, n);
+                if (file.length() != segmentSize) {
+                    throw new IOException("Segment " + file + " is " + file.length() + " bytes, expected " + segmentSize);
+                }
+                segments.add(map(file));
+                end = scanSegment(n, n == segmentCount - 1);
+            }
+            if (segments.isEmpty()) {
+                segments.add(map(segmentFile(dataBase, 0)));
+                end = 0;
+            }
+        }
+
+        Location locate(String groupName, String keyType) {
+            Map<String, Location> groupMap = index.get(groupName);
+            return groupMap == null ? null : groupMap.get(keyType);
+        }
+
+        void append(byte type, String groupName, String keyType, byte[] shard) {
+            ByteBuffer record = ShardRecords.encode(type, groupName, keyType, shard);
+            if (segmentSize < record.limit()) {
+                throw new IllegalArgumentException("Record of " + record.limit() + " bytes does not fit in a segment of " + segmentSize);
+            }
+            if (segmentSize - end < record.limit()) {
+                try {
+                    segments.add(map(segmentFile(dataBase, segments.size())));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                end = 0;
+            }
+            int segment = segments.size() - 1;
+            MappedByteBuffer target = segments.get(segment);
+            int shardPosition = end + record.limit() - ShardRecords.CRC_LENGTH - shard.length;
+            ByteBuffer view = target.duplicate();
+            view.position(end);
+            view.put(record);
+            end += record.limit();
+            if (syncOnWrite) {
+                target.force();
+            }
+            apply(type, groupName, keyType, new Location(segment, shardPosition, shard.length));
+        }
+
+        void apply(byte type, String groupName, String keyType, Location location) {
+            if (type == ShardRecords.PUT) {
+                index.computeIfAbsent(groupName, g -> new LinkedHashMap<>()).put(keyType, location);
+            } else {
+                Map<String, Location> groupMap = index.get(groupName);
+                if (groupMap != null) {
+                    groupMap.remove(keyType);
+                    if (groupMap.isEmpty()) {
+                        index.remove(groupName);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 清零第一段，删掉其余的段
+         */
+        void clear() {
+            MappedByteBuffer first = segments.get(0);
+            int written = segments.size() == 1 ? end : segmentSize;
+            zero(first, 0, written);
+            for (int n = segments.size() - 1; 1 <= n; n--) {
+                segments.remove(n);
+                File file = segmentFile(dataBase, n);
+                if (!file.delete()) {
+                    log.warn("Cannot delete segment {}", file);
+                }
+            }
+            if (syncOnWrite) {
+                first.force();
+            }
+            index.clear();
+            end = 0;
+        }
+
+        /**
+         * 扫描第 n 段中的记录并加入索引，返回最后一条完整记录之后的位置。
+         * 记录之后的非 0 字节只有在最后一段、且后面再没有完好的记录时才当作写到一半的记录清零，否则抛出 IOException
+         */
+        private int scanSegment(int n, boolean last) throws IOException {
+            MappedByteBuffer segment = segments.get(n);
+            int position = 0;
+            int records = 0;
+            int recordLength;
+            while ((recordLength = validRecordLength(segment, position)) > 0) {
+                int groupLength = segment.getInt(position + 5);
+                int keyLength = segment.getInt(position + 9);
+                int shardLength = segment.getInt(position + 13);
+                String groupName = readString(segment, position + ShardRecords.HEADER_LENGTH, groupLength);
+                String keyType = readString(segment, position + ShardRecords.HEADER_LENGTH + groupLength, keyLength);
+                int shardPosition = position + ShardRecords.shardOffset(groupLength, keyLength);
+                apply(segment.get(position + 4), groupName, keyType, new Location(n, shardPosition, shardLength));
+                position += recordLength;
+                records += 1;
+            }
+            // 段尾之后应当全是 0
+            int garbageEnd = position;
+            for (int i = position; i < segmentSize; i++) {
+                if (segment.get(i) != 0) {
+                    garbageEnd = i + 1;
+                }
+            }
+            if (position < garbageEnd) {
+                File file = segmentFile(dataBase, n);
+                for (int next = position + 1; next < garbageEnd; next++) {
+                    if (validRecordLength(segment, next) > 0) {
+                        throw new IOException("Segment " + file + " is corrupt: " + records + " records end at byte " + position
+                                + ", but there is another record at byte " + next);
+                    }
+                }
+                if (!last) {
+                    throw new IOException("Segment " + file + " is corrupt: it has damaged records after byte " + position
+                            + " but is not the last segment");
+                }
+                // 写到一半的记录，清掉以免之后被当成记录
+                log.warn("Segment {} has incomplete records after byte {}, clearing them", file, position);
+                zero(segment, position, garbageEnd);
+            }
+            return position;
+        }
+
+        /**
+         * 从 position 开始是一条完整、CRC 正确的记录时返回它的长度，否则返回 -1
+         */
+        private int validRecordLength(MappedByteBuffer segment, int position) {
+            if (segmentSize < position + ShardRecords.HEADER_LENGTH + ShardRecords.CRC_LENGTH
+                    || segment.getInt(position) != ShardRecords.MAGIC) {
+                return -1;
+            }
+            long recordLength = ShardRecords.recordLength(segment.get(position + 4),
+                    segment.getInt(position + 5), segment.getInt(position + 9), segment.getInt(position + 13));
+            if (recordLength < 0 || segmentSize < position + recordLength) {
+                return -1;
+            }
+            int crcPosition = (int) (position + recordLength - ShardRecords.CRC_LENGTH);
+            ByteBuffer covered = segment.duplicate();
+            covered.limit(crcPosition).position(position + 4);
+            if (ShardChecksum.crc32c(covered) != segment.getInt(crcPosition)) {
+                return -1;
+            }
+            return (int) recordLength;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void zero(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+}
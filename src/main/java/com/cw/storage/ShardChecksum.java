@@ -0,0 +1,183 @@
+package com.cw.storage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * @ClassName : ShardChecksum
+ * @Description : 分片的 CRC32C 校验。
+ * 存储的分片 = 分片数据 + 4 字节 CRC32C（大端）。
+ * JDK 9 及以上使用 java.util.zip.CRC32C（有硬件加速），项目目标是 Java 8，
+ * 所以通过反射加载，加载不到时退回到纯 Java 的查表实现，两者结果相同。
+ * 每个线程复用一个 CRC32C 实例，计算校验和不分配对象。
+ */
+public final class ShardChecksum {
+
+    public static final int CHECKSUM_LENGTH = 4;
+
+    // CRC32C (Castagnoli) 多项式的反射形式
+    private static final int CASTAGNOLI_POLYNOMIAL = 0x82F63B78;
+
+    private static final int[] TABLE = generateTable();
+
+    private static final Constructor<? extends Checksum> JDK_CRC32C = loadJdkCrc32c();
+
+    // Checksum.update(ByteBuffer) 是 JDK 9 才有的，拿不到时为 null
+    private static final MethodHandle UPDATE_BYTE_BUFFER = loadUpdateByteBuffer();
+
+    private static final ThreadLocal<Checksum> CHECKSUMS = ThreadLocal.withInitial(ShardChecksum::newJdkCrc32c);
+
+    private ShardChecksum() {
+    }
+
+    /**
+     * 计算 data[offset, offset + length) 的 CRC32C
+     **/
+    public static int crc32c(byte[] data, int offset, int length) {
+        if (JDK_CRC32C != null) {
+            Checksum checksum = CHECKSUMS.get();
+            checksum.reset();
+            checksum.update(data, offset, length);
+            return (int) checksum.getValue();
+        }
+        int crc = 0xFFFFFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return ~crc;
+    }
+
+    /**
+     * 计算 data 从 position 到 limit 之间的 CRC32C，不改变 data 的 position
+     **/
+    public static int crc32c(ByteBuffer data) {
+        if (data.hasArray()) {
+            return crc32c(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        final int position = data.position();
+        if (UPDATE_BYTE_BUFFER != null) {
+            Checksum checksum = CHECKSUMS.get();
+            checksum.reset();
+            try {
+                UPDATE_BYTE_BUFFER.invokeExact(checksum, data);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            } finally {
+                data.position(position);
+            }
+            return (int) checksum.getValue();
+        }
+        int crc = 0xFFFFFFFF;
+        for (int i = position; i < data.limit(); i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data.get(i)) & 0xFF];
+        }
+        return ~crc;
+    }
+
+    /**
+     * 返回 分片 + CRC32C 尾部
+     **/
+    public static byte[] seal(byte[] shard) {
+        byte[] result = new byte[shard.length + CHECKSUM_LENGTH];
+        System.arraycopy(shard, 0, result, 0, shard.length);
+        int crc = crc32c(shard, 0, shard.length);
+        result[shard.length] = (byte) (crc >>> 24);
+        result[shard.length + 1] = (byte) (crc >>> 16);
+        result[shard.length + 2] = (byte) (crc >>> 8);
+        result[shard.length + 3] = (byte) crc;
+        return result;
+    }
+
+    /**
+     * 校验并去掉 CRC32C 尾部，校验失败（或长度不足）时返回 null
+     **/
+    public static byte[] open(byte[] stored) {
+        if (stored == null || stored.length <= CHECKSUM_LENGTH) {
+            return null;
+        }
+        int length = stored.length - CHECKSUM_LENGTH;
+        int expected = ((stored[length] & 0xFF) << 24) | ((stored[length + 1] & 0xFF) << 16)
+                | ((stored[length + 2] & 0xFF) << 8) | (stored[length + 3] & 0xFF);
+        if (crc32c(stored, 0, length) != expected) {
+            return null;
+        }
+        byte[] shard = new byte[length];
+        System.arraycopy(stored, 0, shard, 0, length);
+        return shard;
+    }
+
+    /**
+     * 校验 stored 从 position 到 limit 之间的 分片 + CRC32C 尾部，
+     * 通过时把 limit 移到分片末尾（去掉尾部）并返回 true，不复制分片；失败时不改变 stored
+     **/
+    public static boolean open(ByteBuffer stored) {
+        int length = stored.remaining() - CHECKSUM_LENGTH;
+        if (length <= 0) {
+            return false;
+        }
+        final int limit = stored.limit();
+        int expected = stored.getInt(limit - CHECKSUM_LENGTH);
+        stored.limit(limit - CHECKSUM_LENGTH);
+        if (crc32c(stored) != expected) {
+            stored.limit(limit);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 是否在使用 JDK 自带（硬件加速）的 CRC32C
+     **/
+    public static boolean isJdkCrc32c() {
+        return JDK_CRC32C != null;
+    }
+
+    private static int[] generateTable() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = ((crc & 1) != 0) ? (crc >>> 1) ^ CASTAGNOLI_POLYNOMIAL : crc >>> 1;
+            }
+            table[i] = crc;
+        }
+        return table;
+    }
+
+    private static Checksum newJdkCrc32c() {
+        try {
+            return JDK_CRC32C.newInstance();
+        } catch (ReflectiveOperationException e) {
+            // 不会发生：构造函数在加载时已经调用成功过
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle loadUpdateByteBuffer() {
+        if (JDK_CRC32C == null) {
+            return null;
+        }
+        try {
+            return MethodHandles.publicLookup()
+                    .findVirtual(JDK_CRC32C.getDeclaringClass(), "update", MethodType.methodType(void.class, ByteBuffer.class))
+                    .asType(MethodType.methodType(void.class, Checksum.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Constructor<? extends Checksum> loadJdkCrc32c() {
+        try {
+            Constructor<? extends Checksum> constructor =
+                    Class.forName("java.util.zip.CRC32C").asSubclass(Checksum.class).getConstructor();
+            constructor.newInstance();
+            return constructor;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cw.storage;
+
+import com.cw.storage.reedsolomon.ReedSolomon;
+import com.cw.storage.reedsolomon.ReedSolomonCodecs;
+
+/**
+ * @ClassName : ShardLayout
+ * @Description : 一个值切成 dataShards 个数据分片 + parityShards 个冗余分片（k+m），
+ * 任意 k 个分片即可恢复，最多容忍 m 个存储节点丢失。
+ */
+public final class ShardLayout {
+
+    /**
+     * 原来写死的 2+1
+     */
+    public static final ShardLayout DEFAULT = new ShardLayout(2, 1);
+
+    private final int dataShards;
+    private final int parityShards;
+
+    public ShardLayout(int dataShards, int parityShards) {
+        if (dataShards <= 0) {
+            throw new IllegalArgumentException("dataShards must be positive: " + dataShards);
+        }
+        if (parityShards < 0) {
+            throw new IllegalArgumentException("parityShards must not be negative: " + parityShards);
+        }
+        if (256 < dataShards + parityShards) {
+            throw new IllegalArgumentException("too many shards: " + (dataShards + parityShards));
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+    }
+
+    /**
+     * @Description: 解析 "4+2" 这样的写法
+     **/
+    public static ShardLayout parse(String layout) {
+        String[] parts = layout.trim().split("\\+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("layout must look like 4+2: " + layout);
+        }
+        try {
+            return new ShardLayout(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("layout must look like 4+2: " + layout, e);
+        }
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    public int getTotalShards() {
+        return dataShards + parityShards;
+    }
+
+    /**
+     * @Description: 这种布局共享的编解码器
+     **/
+    ReedSolomon codec() {
+        return ReedSolomonCodecs.forShape(dataShards, parityShards);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ShardLayout)) {
+            return false;
+        }
+        ShardLayout that = (ShardLayout) other;
+        return dataShards == that.dataShards && parityShards == that.parityShards;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * dataShards + parityShards;
+    }
+
+    @Override
+    public String toString() {
+        return dataShards + "+" + parityShards;
+    }
+}
@@ -0,0 +1,53 @@
+package com.cw.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @ClassName : ShardRecords
+ * @Description : LogStructuredShardStore 和 MappedSegmentShardStore 共用的记录格式。
+ * magic(4) + 类型(1) + groupName 长度(4) + keyType 长度(4) + 分片长度(4)
+ * + groupName + keyType + 分片 + CRC32C(4)，CRC 覆盖 magic 之后、CRC 之前的全部字节。
+ */
+final class ShardRecords {
+
+    static final int MAGIC = 0x53484431; // "SHD1"
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final int HEADER_LENGTH = 4 + 1 + 4 + 4 + 4;
+    static final int CRC_LENGTH = 4;
+
+    private ShardRecords() {
+    }
+
+    /**
+     * @Description: 编码一条记录，返回的 buffer 从 0 到 limit 是整条记录
+     **/
+    static ByteBuffer encode(byte type, String groupName, String keyType, byte[] shard) {
+        byte[] group = groupName.getBytes(StandardCharsets.UTF_8);
+        byte[] key = keyType.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + group.length + key.length + shard.length + CRC_LENGTH);
+        record.putInt(MAGIC).put(type).putInt(group.length).putInt(key.length).putInt(shard.length);
+        record.put(group).put(key).put(shard);
+        record.putInt(ShardChecksum.crc32c(record.array(), 4, record.position() - 4));
+        record.flip();
+        return record;
+    }
+
+    /**
+     * @Description: 记录中分片相对记录开头的偏移
+     **/
+    static int shardOffset(int groupLength, int keyLength) {
+        return HEADER_LENGTH + groupLength + keyLength;
+    }
+
+    /**
+     * @Description: 由头部中的三个长度算出整条记录的长度，长度不合法时返回 -1
+     **/
+    static long recordLength(byte type, int groupLength, int keyLength, int shardLength) {
+        if ((type != PUT && type != DELETE) || groupLength < 0 || keyLength < 0 || shardLength < 0) {
+            return -1;
+        }
+        return (long) HEADER_LENGTH + groupLength + keyLength + shardLength + CRC_LENGTH;
+    }
+}
@@ -0,0 +1,77 @@
+package com.cw.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+
+/**
+ * @ClassName : ShardStore
+ * @Description : StorageSystem 的分片存储后端。
+ * 共 getDataBaseCount() 个相互独立的“数据库”，每个数据库按 (groupName, keyType) 存一个分片。
+ * 存取的都是 StorageSystem 封装好的分片（带 CRC32C 尾部），后端不解析内容。
+ */
+public interface ShardStore extends Closeable {
+
+    /**
+     * @Description: 数据库个数
+     **/
+    int getDataBaseCount();
+
+    /**
+     * @Description: 在第 dataBase 个数据库中存入分片，覆盖已有的值
+     **/
+    void put(int dataBase, String groupName, String keyType, byte[] shard);
+
+    /**
+     * @Description: 取第 dataBase 个数据库中的分片，不存在时返回 null
+     **/
+    byte[] get(int dataBase, String groupName, String keyType);
+
+    /**
+     * @Description: 取分片的只读视图，position 为 0，limit 为分片长度，不存在时返回 null。
+     * 调用方可以改这个 buffer 的 position 和 limit，但不能写入内容。
+     * 默认包装 get() 的结果；能直接给出存储内存的后端（如 MappedSegmentShardStore）可以覆盖它来省掉复制。
+     **/
+    default ByteBuffer getBuffer(int dataBase, String groupName, String keyType) {
+        byte[] shard = get(dataBase, groupName, keyType);
+        return shard == null ? null : ByteBuffer.wrap(shard);
+    }
+
+    /**
+     * @Description: 删除一个分片，返回它原来是否存在
+     **/
+    boolean delete(int dataBase, String groupName, String keyType);
+
+    /**
+     * @Description: 依次把第 dataBase 个数据库中的每个 (groupName, keyType) 交给 consumer，同一组的分片相邻
+     **/
+    void scan(int dataBase, BiConsumer<String, String> consumer);
+
+    /**
+     * @Description: 清空第 dataBase 个数据库，模拟数据库丢失
+     **/
+    void clear(int dataBase);
+
+    /**
+     * @Description: 第 dataBase 个数据库是否为空
+     **/
+    boolean isEmpty(int dataBase);
+
+    /**
+     * @Description: 重启后数据是否还在。只有持久的后端才能和 WriteAheadLog 一起使用
+     **/
+    default boolean isPersistent() {
+        return false;
+    }
+
+    /**
+     * @Description: 把之前的写入全部落盘，返回后断电也不会丢失。非持久的后端什么都不做
+     **/
+    default void flush() throws IOException {
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
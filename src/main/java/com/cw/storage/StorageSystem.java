@@ -1,65 +1,220 @@
 package com.cw.storage;
 
 import com.cw.enums.KeyTypeEnum;
-import com.cw.storage.reedsolomon.ReedSolomon;
 import com.cw.utils.encryption.ECC;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.security.interfaces.ECPublicKey;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * @ClassName : storageSystem
- * @Description : 存储运营商
+ * @Description : 存储运营商，可以被多个线程同时调用
  * @Author : Ethan
  * @Date: 2023/5/24  15:34
  */
 @Slf4j
 public class StorageSystem {
-    private static final int DATA_SHARDS = 2;
-    private static final int PARITY_SHARDS = 1;
-    private static final int TOTAL_SHARDS = 3;
+    private static final int DEFAULT_DATA_BASES = 3;
     private static final int BYTES_IN_INT = 4;
 
-    // 模拟3个数据库： i 数据库编号: { groupName ： {data ： dataType}}
-    private final ArrayList<HashMap<String, HashMap<String, byte[]>>> dataBaseManagement;
+    // 分片的位置标记：分片序号、k - 1、m 各占 1 字节，最高字节为 0
+    private static final int PLACEMENT_LENGTH = 4;
 
+    // 预写日志超过这个大小时做一次 checkpoint
+    private static final long CHECKPOINT_SIZE = 16 * 1024 * 1024;
+
+    // 组锁的个数，必须是 2 的幂
+    private static final int GROUP_LOCK_STRIPES = 256;
+
+    // N 个数据库（存储节点）： i 数据库编号: { groupName ： {dataType ： data}}，
+    // 每个分片后面是位置标记（见 placement()）和覆盖两者的 CRC32C 尾部
+    private final ShardStore shardStore;
+
+    // 每个 (groupName, keyType) 的各个分片放在哪些数据库上
+    private final ConsistentHashRing ring;
+
+    // 各 keyType 的 k+m 布局，没有配置的用 defaultLayout
+    private final ShardLayout defaultLayout;
+    private final Map<String, ShardLayout> keyTypeLayouts;
+
+    // 预写日志，为 null 时直接写各个数据库
+    private final WriteAheadLog writeAheadLog;
+
+    // 按组名分片的锁：写入（put、putAll、recover）持有写锁，get 乐观读，不同组的读写互不影响
+    private final StampedLock[] groupLocks = new StampedLock[GROUP_LOCK_STRIPES];
+
+    // 写入持有读锁（可并发），checkpoint 持有写锁，保证截断日志时没有写了日志还没应用到数据库的分条
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    // 每个数据库读到的 CRC32C 校验失败的分片数
+    private final AtomicLongArray corruptShardCounts;
+
+    /**
+     * @Description: 用内存中的 3 个数据库，所有 keyType 都是 2+1，重启后数据丢失
+     **/
     public StorageSystem() {
-        dataBaseManagement = new ArrayList<>(TOTAL_SHARDS);
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            dataBaseManagement.add(new HashMap<>());
+        this(new InMemoryShardStore(DEFAULT_DATA_BASES));
+    }
+
+    /**
+     * @Description: 用给定的分片存储后端，所有 keyType 都是 2+1
+     **/
+    public StorageSystem(ShardStore shardStore) {
+        this(shardStore, ShardLayout.DEFAULT, Collections.emptyMap());
+    }
+
+    /**
+     * @param defaultLayout  keyTypeLayouts 中没有的 keyType 使用的布局
+     * @param keyTypeLayouts 按 keyType 单独配置的布局
+     * @Description: 分片按一致性哈希分布到 shardStore 的各个数据库上，数据库数不能少于任何一种布局的分片总数
+     **/
+    public StorageSystem(ShardStore shardStore, ShardLayout defaultLayout, Map<KeyTypeEnum, ShardLayout> keyTypeLayouts) {
+        this(null, shardStore, defaultLayout, keyTypeLayouts);
+    }
+
+    /**
+     * @Description: 所有 keyType 都是 2+1，使用预写日志
+     **/
+    public StorageSystem(ShardStore shardStore, WriteAheadLog writeAheadLog) throws IOException {
+        this(shardStore, ShardLayout.DEFAULT, Collections.emptyMap(), writeAheadLog);
+    }
+
+    /**
+     * @Description: 写入先整条分条记入预写日志并落盘，再写各个数据库，数据库之间不会出现写了一半的分条。
+     * 启动时重放日志中的分条（上次崩溃时可能没写完），然后做一次 checkpoint。
+     * shardStore 必须是持久的，否则 checkpoint 截断日志后数据就丢了。
+     **/
+    public StorageSystem(ShardStore shardStore, ShardLayout defaultLayout, Map<KeyTypeEnum, ShardLayout> keyTypeLayouts,
+                         WriteAheadLog writeAheadLog) throws IOException {
+        this(writeAheadLog, shardStore, defaultLayout, keyTypeLayouts);
+        if (!shardStore.isPersistent()) {
+            throw new IllegalArgumentException("A write-ahead log needs a persistent shardStore");
+        }
+
+        int replayed = writeAheadLog.replay(this::applyLogRecord);
+        if (replayed > 0) {
+            log.info("Replayed {} stripes from the write-ahead log", replayed);
+        }
+        checkpoint();
+    }
+
+    private StorageSystem(WriteAheadLog writeAheadLog, ShardStore shardStore, ShardLayout defaultLayout,
+                          Map<KeyTypeEnum, ShardLayout> keyTypeLayouts) {
+        final int dataBases = shardStore.getDataBaseCount();
+        this.keyTypeLayouts = new HashMap<>();
+        for (Map.Entry<KeyTypeEnum, ShardLayout> entry : keyTypeLayouts.entrySet()) {
+            this.keyTypeLayouts.put(entry.getKey().getType(), entry.getValue());
+        }
+        List<ShardLayout> layouts = new ArrayList<>(this.keyTypeLayouts.values());
+        layouts.add(defaultLayout);
+        for (ShardLayout layout : layouts) {
+            if (dataBases < layout.getTotalShards()) {
+                throw new IllegalArgumentException("Layout " + layout + " needs at least " + layout.getTotalShards()
+                        + " databases, shardStore has " + dataBases);
+            }
+        }
+        this.shardStore = shardStore;
+        this.ring = new ConsistentHashRing(dataBases);
+        this.defaultLayout = defaultLayout;
+        this.writeAheadLog = writeAheadLog;
+        this.corruptShardCounts = new AtomicLongArray(dataBases);
+        for (int i = 0; i < GROUP_LOCK_STRIPES; i++) {
+            groupLocks[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * @Description: keyType 使用的 k+m 布局
+     **/
+    public ShardLayout getLayout(String keyType) {
+        return keyTypeLayouts.getOrDefault(keyType, defaultLayout);
+    }
+
+    /**
+     * @Description: 把数据库落盘后清空预写日志。没有预写日志时什么都不做
+     **/
+    public void checkpoint() throws IOException {
+        if (writeAheadLog == null) {
+            return;
+        }
+        checkpointLock.writeLock().lock();
+        try {
+            if (writeAheadLog.size() > 0) {
+                shardStore.flush();
+                writeAheadLog.truncate();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
         }
     }
 
+    /**
+     * @Description: 所有数据库中校验失败的分片总数
+     **/
+    public long getCorruptShardCount() {
+        long total = 0;
+        for (int i = 0; i < corruptShardCounts.length(); i++) {
+            total += corruptShardCounts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @Description: 第 i 个数据库中校验失败的分片数
+     **/
+    public long getCorruptShardCount(int dataBase) {
+        return corruptShardCounts.get(dataBase);
+    }
+
     /**
      * @Description: 模拟删一个非空的数据库
      **/
     public void deleteOneDataBase() {
-        Random random = new Random();
-        int idx = random.nextInt(3);
-        if (dataBaseManagement.get(idx).isEmpty()) {
-            idx = random.nextInt(3);
+        List<Integer> nonEmpty = new ArrayList<>();
+        for (int i = 0; i < shardStore.getDataBaseCount(); i++) {
+            if (!shardStore.isEmpty(i)) {
+                nonEmpty.add(i);
+            }
         }
-        dataBaseManagement.get(idx).clear();
+        if (nonEmpty.isEmpty()) {
+            return;
+        }
+        shardStore.clear(nonEmpty.get(new Random().nextInt(nonEmpty.size())));
     }
 
     /**
      * @Description:  打印数据库的当前情况
      **/
     public void display() {
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            HashMap<String, HashMap<String, byte[]>> groupData = dataBaseManagement.get(i);
+        for (int i = 0; i < shardStore.getDataBaseCount(); i++) {
+            Map<String, List<String>> groupData = new LinkedHashMap<>();
+            shardStore.scan(i, (group, keyType) -> groupData.computeIfAbsent(group, g -> new ArrayList<>()).add(keyType));
             System.out.println("-------------- " + i + " database -------------");
             if (groupData.isEmpty()) {
                 System.out.println("this database is empty");
             } else {
-                groupData.forEach((group, map) -> {
+                groupData.forEach((group, keyTypes) -> {
                     System.out.print("group " + group + " : ");
-                    map.forEach((k, v) -> System.out.print(k + " "));
+                    keyTypes.forEach(k -> System.out.print(k + " "));
                     System.out.println();
                 });
             }
@@ -70,7 +225,7 @@ public class StorageSystem {
     /**
      * 通过 userName、signGroupName 和 keyType 取 公钥 或者 私钥碎片。
      * 不同在于取私钥碎片需要验签
-     * 当 DATA_SHARDS 至多少了 PARITY_SHARDS 个时，可通过 ReedSolomon 恢复出来。
+     * 当 k+m 布局的分片至多少了 m 个时，可通过 ReedSolomon 恢复出来。
      **/
     public String get(String userName, String signGroupName, String keyType, String sign, ECPublicKey userPubKey) {
         boolean verified = false;
@@ -85,88 +240,332 @@ public class StorageSystem {
             }
         }
 
-        // 取得所有的 DATA_SHARDS
-        byte[][] shards = new byte[TOTAL_SHARDS][];
-        boolean[] shardPresent = new boolean[TOTAL_SHARDS];
+        ShardLayout layout = getLayout(keyType);
+        final int dataShards = layout.getDataShards();
+        final int totalShards = layout.getTotalShards();
+        int[] nodes = ring.nodesFor(placementKey(signGroupName, keyType), totalShards);
+
+        // 取得所有的分片，后端能给出存储内存的切片时不复制分片。
+        // 先不加锁地读（乐观读），期间同组有写入时再加读锁重读，保证各分片来自同一次写入
+        ByteBuffer[] shards = new ByteBuffer[totalShards];
+        StampedLock groupLock = groupLock(signGroupName);
+        long stamp = groupLock.tryOptimisticRead();
+        fetchShards(signGroupName, keyType, nodes, shards);
+        if (!groupLock.validate(stamp)) {
+            stamp = groupLock.readLock();
+            try {
+                fetchShards(signGroupName, keyType, nodes, shards);
+            } finally {
+                groupLock.unlockRead(stamp);
+            }
+        }
+
+        // 校验 CRC32C，不通过的分片当作缺失，交给 ReedSolomon 恢复。
+        // 分片按位置标记中的序号放回分条：节点数变了以后，分片可能不在环现在为它选的位置上；
+        // 标记的布局不是 keyType 现在的布局时，分片是按别的布局写的，解码出来的数据不对，也当作缺失
+        final int expectedLayout = placement(0, layout);
+        ByteBuffer[] placed = new ByteBuffer[totalShards];
+        int[] strayIndexes = new int[totalShards];
+        Arrays.fill(strayIndexes, -1);
+        for (int i = 0; i < totalShards; i++) {
+            ByteBuffer shard = shards[i];
+            if (shard == null || !shard.hasRemaining()) {
+                continue;
+            }
+            if (!ShardChecksum.open(shard) || shard.remaining() <= PLACEMENT_LENGTH) {
+                corruptShardCounts.incrementAndGet(nodes[i]);
+                log.warn("Shard {} of group {} in database {} failed its checksum", keyType, signGroupName, nodes[i]);
+                continue;
+            }
+            int placement = shard.getInt(shard.limit() - PLACEMENT_LENGTH);
+            shard.limit(shard.limit() - PLACEMENT_LENGTH);
+            int index = placement >>> 16;
+            if ((placement & 0xFFFF) != expectedLayout || totalShards <= index) {
+                log.warn("Shard {} of group {} in database {} was written with another layout, ignoring it",
+                        keyType, signGroupName, nodes[i]);
+            } else if (index == i) {
+                placed[i] = shard;
+            } else {
+                strayIndexes[i] = index;
+            }
+        }
+        // 在环为它选的位置上的分片优先，挪过位置的分片只填空位
+        for (int i = 0; i < totalShards; i++) {
+            if (0 <= strayIndexes[i] && placed[strayIndexes[i]] == null) {
+                placed[strayIndexes[i]] = shards[i];
+            }
+        }
+
+        boolean[] shardPresent = new boolean[totalShards];
         int shardSize = 0;
         int shardCount = 0;
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            HashMap<String, byte[]> groupMap = dataBaseManagement.get(i).getOrDefault(signGroupName, new HashMap<>());
-            if (groupMap.isEmpty()) continue;
-            byte[] bytes = groupMap.getOrDefault(keyType, new byte[0]);
-            if (bytes.length > 0) {
-                shardSize = bytes.length;
-                shards[i] = new byte[shardSize];
-                shardPresent[i] = true;
-                shardCount += 1;
-                System.arraycopy(bytes, 0, shards[i], 0, shardSize);
+        for (int i = 0; i < totalShards; i++) {
+            shards[i] = null;
+            if (placed[i] == null || (shardCount > 0 && placed[i].limit() != shardSize)) {
+                // 大小不同的分片不是同一次写入的
+                continue;
             }
+            shards[i] = placed[i];
+            shardSize = placed[i].limit();
+            shardPresent[i] = true;
+            shardCount += 1;
         }
 
-        // We need at least DATA_SHARDS to be able to reconstruct the data.
-        if (shardCount < DATA_SHARDS) {
+        // We need at least dataShards to be able to reconstruct the data.
+        if (shardCount < dataShards) {
             log.info("Not enough shards present");
             return "insufficient";
         }
 
-        // Make empty buffers for the missing shards.
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            if (!shardPresent[i]) {
-                shards[i] = new byte[shardSize];
+        // 有数据分片缺失时才解码，缺失的分片重建在堆上
+        boolean dataShardMissing = false;
+        for (int i = 0; i < dataShards; i++) {
+            dataShardMissing |= !shardPresent[i];
+        }
+        if (dataShardMissing) {
+            for (int i = 0; i < totalShards; i++) {
+                if (!shardPresent[i]) {
+                    shards[i] = ByteBuffer.allocate(shardSize);
+                }
             }
+            layout.codec().decodeMissing(shards, shardPresent, 0, shardSize);
         }
 
-        // Use Reed-Solomon to fill in the missing shards
-        ReedSolomon reedSolomon = ReedSolomon.create(DATA_SHARDS, PARITY_SHARDS);
-        reedSolomon.decodeMissing(shards, shardPresent, 0, shardSize);
+        // 数据分片依次拼起来是 数据大小（4 字节）+ 数据，直接从分片中取出数据
+        int dataSize = 0;
+        for (int j = 0; j < BYTES_IN_INT; j++) {
+            dataSize = (dataSize << 8) | (shards[j / shardSize].get(j % shardSize) & 0xFF);
+        }
+        if (dataSize < 0 || shardSize * dataShards - BYTES_IN_INT < dataSize) {
+            log.warn("Shard {} of group {} has a corrupt data size {}", keyType, signGroupName, dataSize);
+            return "insufficient";
+        }
+        byte[] data = new byte[dataSize];
+        int copied = 0;
+        while (copied < dataSize) {
+            int stored = BYTES_IN_INT + copied;
+            ByteBuffer shard = shards[stored / shardSize];
+            shard.position(stored % shardSize);
+            int count = Math.min(shard.remaining(), dataSize - copied);
+            shard.get(data, copied, count);
+            copied += count;
+        }
 
-        // Combine the data shards into one buffer for convenience.
-        // (This is not efficient, but it is convenient.)
-        byte[] allBytes = new byte[shardSize * DATA_SHARDS];
-        for (int i = 0; i < DATA_SHARDS; i++) {
-            System.arraycopy(shards[i], 0, allBytes, shardSize * i, shardSize);
+        return new String(data);
+    }
+
+    private void fetchShards(String signGroupName, String keyType, int[] nodes, ByteBuffer[] shards) {
+        for (int i = 0; i < nodes.length; i++) {
+            shards[i] = shardStore.getBuffer(nodes[i], signGroupName, keyType);
         }
-        int dataSize = ByteBuffer.wrap(allBytes).getInt();
+    }
 
-        return new String(allBytes, BYTES_IN_INT, dataSize);
+    /**
+     * @Description: 保护同一组分片读写的锁。组名按哈希分到 GROUP_LOCK_STRIPES 把锁上，不同的组基本不会争用同一把锁
+     **/
+    private StampedLock groupLock(String signGroupName) {
+        int h = signGroupName.hashCode();
+        h ^= h >>> 16;
+        return groupLocks[h & (GROUP_LOCK_STRIPES - 1)];
     }
 
     /**
-     * 通过 signGroupName 和 dataType 存 公钥 或者 私钥碎片， 将其分 2+1 个 shards 存储。
+     * 通过 signGroupName 和 dataType 存 公钥 或者 私钥碎片， 按 keyType 的布局切成 k+m 个 shards 存储。
      **/
     public void put(String data, String signGroupName, KeyTypeEnum keyType) {
-        int dataSize = data.length();
+        ShardLayout layout = getLayout(keyType.getType());
+        byte[][] shards = toShards(data, layout);
+
+        // Use Reed-Solomon to calculate the parity.
+        layout.codec().encodeParity(shards, 0, shards[0].length);
+
+        StampedLock groupLock = groupLock(signGroupName);
+        long stamp = groupLock.writeLock();
+        try {
+            storeStripes(signGroupName, Collections.singletonList(keyType), Collections.singletonList(shards));
+        } finally {
+            groupLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 一次存同一组的多个 公钥 / 私钥碎片，布局相同的分条用一次 encodeParityBatch 编码，
+     * 省去逐个 put 时每次编码的参数检查和循环准备。
+     **/
+    public void putAll(Map<KeyTypeEnum, String> values, String signGroupName) {
+        List<KeyTypeEnum> keyTypes = new ArrayList<>(values.keySet());
+        List<byte[][]> stripes = new ArrayList<>(values.size());
+        Map<ShardLayout, List<byte[][]>> stripesByLayout = new LinkedHashMap<>();
+        for (KeyTypeEnum keyType : keyTypes) {
+            ShardLayout layout = getLayout(keyType.getType());
+            byte[][] shards = toShards(values.get(keyType), layout);
+            stripes.add(shards);
+            stripesByLayout.computeIfAbsent(layout, l -> new ArrayList<>()).add(shards);
+        }
+
+        // Use Reed-Solomon to calculate the parity of every stripe.
+        stripesByLayout.forEach((layout, batch) -> layout.codec().encodeParityBatch(batch));
+
+        StampedLock groupLock = groupLock(signGroupName);
+        long stamp = groupLock.writeLock();
+        try {
+            storeStripes(signGroupName, keyTypes, stripes);
+        } finally {
+            groupLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @Description: 把 数据大小（4 字节）+ 数据 切成 k 个数据分片，m 个冗余分片留空
+     **/
+    private static byte[][] toShards(String data, ShardLayout layout) {
+        final int dataShards = layout.getDataShards();
+        byte[] bytes = data.getBytes();
+        int dataSize = bytes.length;
         int storedSize = dataSize + BYTES_IN_INT;
-        int shardSize = (storedSize + DATA_SHARDS - 1) / DATA_SHARDS;
-        int bufferSize = shardSize * DATA_SHARDS;
+        int shardSize = (storedSize + dataShards - 1) / dataShards;
+        int bufferSize = shardSize * dataShards;
         ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
 
         buffer.putInt(dataSize);
-        buffer.put(data.getBytes());
+        buffer.put(bytes);
 
-        byte[][] shards = new byte[TOTAL_SHARDS][shardSize];
+        byte[][] shards = new byte[layout.getTotalShards()][shardSize];
 
         // Fill in the data shards
-        for (int i = 0; i < DATA_SHARDS; i++) {
+        for (int i = 0; i < dataShards; i++) {
             System.arraycopy(buffer.array(), i * shardSize, shards[i], 0, shardSize);
         }
+        return shards;
+    }
 
-        // Use Reed-Solomon to calculate the parity.
-        ReedSolomon reedSolomon = ReedSolomon.create(DATA_SHARDS, PARITY_SHARDS);
-        reedSolomon.encodeParity(shards, 0, shardSize);
+    /**
+     * @Description: 分片在一致性哈希环上的位置由 groupName 和 keyType 决定
+     **/
+    private static String placementKey(String signGroupName, String keyType) {
+        return signGroupName + "/" + keyType;
+    }
+
+    /**
+     * @Description: 分片的位置标记：它是分条的第几个分片，分条用的是哪种 k+m 布局。
+     * 节点数变了以后环会给分片选出别的位置，布局改了以后同一个数据库里可能还是旧布局的分片，
+     * 读的时候靠这个标记把分片放回原来的序号，或者认出它不能用
+     **/
+    private static int placement(int index, ShardLayout layout) {
+        return (index << 16) | ((layout.getDataShards() - 1) << 8) | layout.getParityShards();
+    }
 
-        storeShardsByGroup(signGroupName, keyType, shards);
-        buffer.clear();
+    /**
+     * @Description: 分片 + 位置标记 + 覆盖两者的 CRC32C
+     **/
+    private static byte[] seal(byte[] shard, int placement) {
+        byte[] tagged = Arrays.copyOf(shard, shard.length + PLACEMENT_LENGTH);
+        ByteBuffer.wrap(tagged).putInt(shard.length, placement);
+        return ShardChecksum.seal(tagged);
     }
 
     /**
-     * @Description:  将 shards[i] 分别存入第i个数据库
+     * @Description:  将每个分条的 shards[i] 存入一致性哈希为它选出的第 i 个数据库。
+     * 有预写日志时先把这些分条作为一条记录写入日志并等它落盘（和并发的写入一起组提交），再写数据库
      **/
-    private void storeShardsByGroup(String signGroupName, KeyTypeEnum keyType, byte[][] shards) {
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            HashMap<String, byte[]> groupMap = dataBaseManagement.get(i).getOrDefault(signGroupName, new HashMap<>());
-            groupMap.put(keyType.getType(), shards[i]);
-            dataBaseManagement.get(i).put(signGroupName, groupMap);
+    private void storeStripes(String signGroupName, List<KeyTypeEnum> keyTypes, List<byte[][]> stripes) {
+        String[] types = new String[keyTypes.size()];
+        int[][] nodes = new int[stripes.size()][];
+        byte[][][] sealed = new byte[stripes.size()][][];
+        for (int s = 0; s < sealed.length; s++) {
+            byte[][] shards = stripes.get(s);
+            types[s] = keyTypes.get(s).getType();
+            ShardLayout layout = getLayout(types[s]);
+            nodes[s] = ring.nodesFor(placementKey(signGroupName, types[s]), shards.length);
+            sealed[s] = new byte[shards.length][];
+            for (int i = 0; i < shards.length; i++) {
+                sealed[s][i] = seal(shards[i], placement(i, layout));
+            }
+        }
+
+        if (writeAheadLog == null) {
+            applyStripes(signGroupName, types, nodes, sealed);
+            return;
+        }
+        boolean checkpointNeeded;
+        checkpointLock.readLock().lock();
+        try {
+            writeAheadLog.appendAndSync(encodeLogRecord(signGroupName, types, nodes, sealed));
+            applyStripes(signGroupName, types, nodes, sealed);
+            checkpointNeeded = CHECKPOINT_SIZE < writeAheadLog.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        if (checkpointNeeded) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void applyStripes(String signGroupName, String[] keyTypes, int[][] nodes, byte[][][] sealedStripes) {
+        for (int s = 0; s < sealedStripes.length; s++) {
+            for (int i = 0; i < sealedStripes[s].length; i++) {
+                shardStore.put(nodes[s][i], signGroupName, keyTypes[s], sealedStripes[s][i]);
+            }
+        }
+    }
+
+    /**
+     * @Description: 预写日志记录：groupName + 分条数 + 每个分条的 keyType、分片数和每个分片的 数据库编号 + 带校验的分片。
+     * 记下数据库编号，重放时不依赖当时的布局和节点数
+     **/
+    private static byte[] encodeLogRecord(String signGroupName, String[] keyTypes, int[][] nodes, byte[][][] sealedStripes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(signGroupName);
+            out.writeInt(sealedStripes.length);
+            for (int s = 0; s < sealedStripes.length; s++) {
+                out.writeUTF(keyTypes[s]);
+                out.writeInt(sealedStripes[s].length);
+                for (int i = 0; i < sealedStripes[s].length; i++) {
+                    out.writeInt(nodes[s][i]);
+                    out.writeInt(sealedStripes[s][i].length);
+                    out.write(sealedStripes[s][i]);
+                }
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream 不会抛 IOException
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void applyLogRecord(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            String signGroupName = in.readUTF();
+            int stripeCount = in.readInt();
+            String[] keyTypes = new String[stripeCount];
+            int[][] nodes = new int[stripeCount][];
+            byte[][][] sealed = new byte[stripeCount][][];
+            for (int s = 0; s < stripeCount; s++) {
+                keyTypes[s] = in.readUTF();
+                int shardCount = in.readInt();
+                nodes[s] = new int[shardCount];
+                sealed[s] = new byte[shardCount][];
+                for (int i = 0; i < shardCount; i++) {
+                    nodes[s][i] = in.readInt();
+                    if (shardStore.getDataBaseCount() <= nodes[s][i]) {
+                        throw new IllegalStateException("Write-ahead log record for group " + signGroupName + " names database "
+                                + nodes[s][i] + ", but shardStore has " + shardStore.getDataBaseCount());
+                    }
+                    sealed[s][i] = new byte[in.readInt()];
+                    in.readFully(sealed[s][i]);
+                }
+            }
+            applyStripes(signGroupName, keyTypes, nodes, sealed);
+        } catch (IOException e) {
+            // 记录通过了 CRC 校验，读不出来说明格式不对
+            throw new IllegalStateException("Corrupt write-ahead log record", e);
         }
     }
 
@@ -182,43 +581,57 @@ public class StorageSystem {
      * 3. 否则提示输入key错误，恢复失败。
      */
     public boolean recover(String data, String signGroupName, KeyTypeEnum keyType) {
-        int dataSize = data.length();
-        int storedSize = dataSize + BYTES_IN_INT;
-        int shardSize = (storedSize + DATA_SHARDS - 1) / DATA_SHARDS;
-        int bufferSize = shardSize * DATA_SHARDS;
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-
-        buffer.putInt(dataSize);
-        buffer.put(data.getBytes());
-
-        byte[][] shards = new byte[TOTAL_SHARDS][shardSize];
-
-        // Fill in the data shards
-        for (int i = 0; i < DATA_SHARDS; i++) {
-            System.arraycopy(buffer.array(), i * shardSize, shards[i], 0, shardSize);
-        }
+        ShardLayout layout = getLayout(keyType.getType());
+        byte[][] shards = toShards(data, layout);
 
         // Use Reed-Solomon to calculate the parity.
-        ReedSolomon reedSolomon = ReedSolomon.create(DATA_SHARDS, PARITY_SHARDS);
-        reedSolomon.encodeParity(shards, 0, shardSize);
+        layout.codec().encodeParity(shards, 0, shards[0].length);
 
+        int[] nodes = ring.nodesFor(placementKey(signGroupName, keyType.getType()), layout.getTotalShards());
         boolean validation = false;
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            HashMap<String, byte[]> groupMap = dataBaseManagement.get(i).getOrDefault(signGroupName, new HashMap<>());
-            if (!groupMap.isEmpty() && groupMap.getOrDefault(keyType.getType(), new byte[0]).length>0) {
-                validation = Arrays.equals(groupMap.get(keyType.getType()), shards[i]);
-                break;
-            }
+        // 比较和重新存入之间不能有同组的写入
+        StampedLock groupLock = groupLock(signGroupName);
+        long stamp = groupLock.writeLock();
+        try {
+            validation = verifyAndStore(signGroupName, keyType, layout, nodes, shards);
+        } finally {
+            groupLock.unlockWrite(stamp);
         }
         if (validation) {
-            storeShardsByGroup(signGroupName, keyType, shards);
             log.info("The key entered by group {} is correct, and the {} recovery is successful.", signGroupName, keyType.getType());
         } else {
             log.info("The key entered by group {} is incorrect, and the {} recovery fails.", signGroupName, keyType.getType());
         }
 
-        buffer.clear();
+        return validation;
+    }
 
+    /**
+     * @Description: 第一个完好的已存分片和 shards 中对应的分片相同时，重新存入整个分条
+     **/
+    private boolean verifyAndStore(String signGroupName, KeyTypeEnum keyType, ShardLayout layout, int[] nodes, byte[][] shards) {
+        boolean validation = false;
+        for (int i = 0; i < nodes.length; i++) {
+            byte[] stored = shardStore.get(nodes[i], signGroupName, keyType.getType());
+            if (stored != null && stored.length > 0) {
+                byte[] tagged = ShardChecksum.open(stored);
+                if (tagged == null || tagged.length <= PLACEMENT_LENGTH) {
+                    // 校验失败的分片不能用来验证 key，换下一个数据库
+                    corruptShardCounts.incrementAndGet(nodes[i]);
+                    continue;
+                }
+                int length = tagged.length - PLACEMENT_LENGTH;
+                if (ByteBuffer.wrap(tagged).getInt(length) != placement(i, layout)) {
+                    // 不是这个位置、这种布局的分片，和 shards[i] 没法比较
+                    continue;
+                }
+                validation = Arrays.equals(Arrays.copyOf(tagged, length), shards[i]);
+                break;
+            }
+        }
+        if (validation) {
+            storeStripes(signGroupName, Collections.singletonList(keyType), Collections.singletonList(shards));
+        }
         return validation;
     }
 }
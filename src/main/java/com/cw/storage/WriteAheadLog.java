@@ -0,0 +1,224 @@
+package com.cw.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * @ClassName : WriteAheadLog
+ * @Description : StorageSystem 的预写日志。
+ * 每条记录：magic(4) + 长度(4) + 内容 + CRC32C(4)，CRC 覆盖长度和内容。
+ * append() 只把记录写进文件并返回序号，sync(序号) 等到该记录落盘。
+ * 组提交：同时等待落盘的线程中只有一个（leader）调用 force()，它返回时把在它之前写入的记录都标记为已落盘，
+ * 其他线程（follower）等它完成，所以并发写入时多次 put 分摊一次 fsync。
+ * groupCommit 为 false 时每次 sync 都单独 force()，用来对比。
+ */
+@Slf4j
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final int MAGIC = 0x57414C31; // "WAL1"
+    private static final int HEADER_LENGTH = 8;
+    private static final int CRC_LENGTH = 4;
+
+    private final File file;
+    private final boolean groupCommit;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    // 写入位置和已写入的最后一条记录的序号，由 this 的锁保护
+    private long end;
+    private long writtenSequence;
+
+    // 已落盘的最后一条记录的序号和是否有 leader 正在 force()，由 syncLock 保护
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncDone = syncLock.newCondition();
+    private long syncedSequence;
+    private boolean syncing;
+    private long syncCount;
+
+    /**
+     * @Description: 打开（或新建）日志文件，使用组提交
+     **/
+    public WriteAheadLog(File file) throws IOException {
+        this(file, true);
+    }
+
+    public WriteAheadLog(File file, boolean groupCommit) throws IOException {
+        this.file = file;
+        this.groupCommit = groupCommit;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.end = channel.size();
+    }
+
+    /**
+     * @Description: 依次把日志中每条完整记录的内容交给 consumer，遇到不完整或 CRC 不对的记录（写到一半时崩溃）就截断日志
+     * @return 重放的记录数
+     **/
+    public synchronized int replay(Consumer<byte[]> consumer) throws IOException {
+        final long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        long position = 0;
+        int records = 0;
+        while (position + HEADER_LENGTH + CRC_LENGTH <= size) {
+            header.clear();
+            if (!readFully(header, position)) {
+                break;
+            }
+            header.flip();
+            int length = header.getInt(4);
+            if (header.getInt(0) != MAGIC || length < 0 || size < position + HEADER_LENGTH + length + CRC_LENGTH) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + length + CRC_LENGTH);
+            if (!readFully(record, position)) {
+                break;
+            }
+            byte[] bytes = record.array();
+            if (ShardChecksum.crc32c(bytes, 4, 4 + length) != record.getInt(HEADER_LENGTH + length)) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            System.arraycopy(bytes, HEADER_LENGTH, payload, 0, length);
+            consumer.accept(payload);
+            position += bytes.length;
+            records += 1;
+        }
+        if (position < size) {
+            log.warn("Write-ahead log {} has {} bytes of incomplete records after {} records, truncating", file, size - position, records);
+            channel.truncate(position);
+            channel.force(false);
+        }
+        end = position;
+        return records;
+    }
+
+    /**
+     * @Description: 追加一条记录，返回它的序号；记录此时还不一定落盘，需要持久化时再调用 sync()
+     **/
+    public long append(byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + payload.length + CRC_LENGTH);
+        record.putInt(MAGIC).putInt(payload.length).put(payload);
+        record.putInt(ShardChecksum.crc32c(record.array(), 4, 4 + payload.length));
+        record.flip();
+        synchronized (this) {
+            // 整条记录写完才移动 end；写到一半失败时，下一条记录从同一位置覆盖写，不会接在残缺的字节后面
+            long position = end;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            end = position;
+            writtenSequence += 1;
+            return writtenSequence;
+        }
+    }
+
+    /**
+     * @Description: 等到序号不超过 sequence 的记录都已落盘
+     **/
+    public void sync(long sequence) throws IOException {
+        if (!groupCommit) {
+            channel.force(false);
+            syncLock.lock();
+            try {
+                syncCount += 1;
+                syncedSequence = Math.max(syncedSequence, sequence);
+            } finally {
+                syncLock.unlock();
+            }
+            return;
+        }
+
+        syncLock.lock();
+        try {
+            while (syncedSequence < sequence) {
+                if (syncing) {
+                    // 已经有 leader 在 force()，等它完成后再看自己的记录是否已包含在内
+                    syncDone.awaitUninterruptibly();
+                    continue;
+                }
+                // 成为 leader：force() 之前已写入的记录都会被这次 force() 覆盖
+                syncing = true;
+                long target;
+                synchronized (this) {
+                    target = writtenSequence;
+                }
+                syncLock.unlock();
+                boolean forced = false;
+                try {
+                    channel.force(false);
+                    forced = true;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (forced) {
+                        syncCount += 1;
+                        syncedSequence = Math.max(syncedSequence, target);
+                    }
+                    // 失败时也要唤醒 follower，由它们中的一个重新尝试
+                    syncDone.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * @Description: append() 之后立即 sync()
+     **/
+    public long appendAndSync(byte[] payload) throws IOException {
+        long sequence = append(payload);
+        sync(sequence);
+        return sequence;
+    }
+
+    /**
+     * @Description: 清空日志。调用方必须保证日志中的记录都已经持久地应用到了存储中，并且期间没有新的 append()
+     **/
+    public synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(false);
+        end = 0;
+    }
+
+    /**
+     * @Description: 日志文件的字节数
+     **/
+    public synchronized long size() {
+        return end;
+    }
+
+    /**
+     * @Description: 到目前为止调用 force() 的次数，用来观察组提交的效果
+     **/
+    public long getSyncCount() {
+        syncLock.lock();
+        try {
+            return syncCount;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Interface for a method of looping over ByteBuffer inputs and encoding them.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The ByteBuffer counterpart of CodingLoop.
+ *
+ * Shards are read and written with absolute get()/put() calls, so the
+ * position and limit of the buffers are left alone, and offset is an
+ * index into each buffer.  The buffers may be heap, direct or memory
+ * mapped buffers, which lets shards read from channels or mapped files
+ * be coded without first copying them into byte arrays.
+ */
+public interface ByteBufferCodingLoop {
+
+    /**
+     * Multiplies a subset of rows from a coding matrix by a full set of
+     * input shards to produce some output shards.
+     *
+     * @param matrixRows The rows from the matrix to use.
+     * @param inputs An array of buffers, each of which is one input shard.
+     *               The number of inputs used is determined by the length
+     *               of each matrix row.
+     * @param inputCount The number of input buffers.
+     * @param outputs Buffers where the computed shards are stored.  The
+     *                number of outputs computed, and the number of matrix
+     *                rows used, is determined by outputCount.
+     * @param outputCount The number of outputs to compute.
+     * @param offset The index in the inputs and output of the first byte
+     *               to process.
+     * @param byteCount The number of bytes to process.
+     */
+    void codeSomeShards(final byte [] [] matrixRows,
+                        final ByteBuffer [] inputs,
+                        final int inputCount,
+                        final ByteBuffer [] outputs,
+                        final int outputCount,
+                        final int offset,
+                        final int byteCount);
+
+    /**
+     * Multiplies a subset of rows from a coding matrix by a full set of
+     * input shards, and checks that the data in the toCheck shards
+     * matches what's expected.
+     *
+     * @param matrixRows The rows from the matrix to use.
+     * @param inputs An array of buffers, each of which is one input shard.
+     * @param inputCount The number of input buffers.
+     * @param toCheck Buffers holding the shards to check.  The number of
+     *                shards checked, and the number of matrix rows used,
+     *                is determined by checkCount.
+     * @param checkCount The number of shards to check.
+     * @param offset The index in the inputs and toCheck of the first byte
+     *               to process.
+     * @param byteCount The number of bytes to process.
+     * @param tempBuffer A writable place to store temporary results.  May
+     *                   be null.
+     */
+    boolean checkSomeShards(final byte [] [] matrixRows,
+                            final ByteBuffer [] inputs,
+                            final int inputCount,
+                            final ByteBuffer [] toCheck,
+                            final int checkCount,
+                            final int offset,
+                            final int byteCount,
+                            final ByteBuffer tempBuffer);
+}
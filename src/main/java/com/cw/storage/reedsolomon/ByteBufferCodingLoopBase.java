@@ -0,0 +1,53 @@
+/**
+ * Common implementations for ByteBuffer coding loops.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Common implementations for ByteBuffer coding loops.
+ *
+ * The same as CodingLoopBase, for loops that don't have a custom
+ * checkSomeShards() method.
+ */
+public abstract class ByteBufferCodingLoopBase implements ByteBufferCodingLoop {
+
+    @Override
+    public boolean checkSomeShards(
+            byte[][] matrixRows,
+            ByteBuffer[] inputs, int inputCount,
+            ByteBuffer[] toCheck, int checkCount,
+            int offset, int byteCount,
+            ByteBuffer tempBuffer) {
+        return checkByteByByte(matrixRows, inputs, inputCount, toCheck, checkCount, offset, byteCount);
+    }
+
+    /**
+     * Checks the shards one byte at a time, without a temp buffer.
+     */
+    static boolean checkByteByByte(
+            byte[][] matrixRows,
+            ByteBuffer[] inputs, int inputCount,
+            ByteBuffer[] toCheck, int checkCount,
+            int offset, int byteCount) {
+
+        // This is the loop structure for ByteOutputInput, which does not
+        // require temporary buffers for checking.
+        byte [] [] table = Galois.MULTIPLICATION_TABLE;
+        for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+            for (int iOutput = 0; iOutput < checkCount; iOutput++) {
+                byte [] matrixRow = matrixRows[iOutput];
+                int value = 0;
+                for (int iInput = 0; iInput < inputCount; iInput++) {
+                    value ^= table[matrixRow[iInput] & 0xFF][inputs[iInput].get(iByte) & 0xFF];
+                }
+                if (toCheck[iOutput].get(iByte) != (byte) value) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
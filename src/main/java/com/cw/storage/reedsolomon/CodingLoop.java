@@ -29,8 +29,16 @@ public interface CodingLoop {
      *
      *    "exp"    - Use the logarithm/exponent table.
      *
-     * The ReedSolomonBenchmark class compares the performance of the different
-     * loops, which will depend on the specific processor you're running on.
+     *    "swar"   - Use 64-bit XORs for coefficients of 1, skip
+     *               coefficients of 0, and the multiplication table
+     *               for everything else.
+     *
+     *    "nibble" - Use two 16-entry tables per coefficient, one for
+     *               each half of the input byte.
+     *
+     * The JMH benchmarks in the benchmarks module compare the performance of
+     * the different loops, which will depend on the specific processor you're
+     * running on.  CodingLoopTuner picks one at run time.
      *
      * This is the inner loop.  It needs to be fast.  Be careful
      * if you change it.
@@ -53,6 +61,8 @@ public interface CodingLoop {
                     new OutputByteInputTableCodingLoop(),
                     new OutputInputByteExpCodingLoop(),
                     new OutputInputByteTableCodingLoop(),
+                    new InputOutputByteSwarCodingLoop(),
+                    new InputOutputByteNibbleCodingLoop(),
             };
 
     /**
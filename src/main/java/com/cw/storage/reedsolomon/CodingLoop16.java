@@ -0,0 +1,52 @@
+/**
+ * Interface for a method of looping over 16-bit symbols and encoding them.
+ */
+
+package com.cw.storage.reedsolomon;
+
+/**
+ * The GF(2^16) counterpart of CodingLoop, used by ReedSolomon16.
+ *
+ * Shards are still byte arrays, but each pair of bytes is one 16-bit
+ * symbol, high byte first, so offsets and byte counts are always even.
+ * Matrix coefficients are chars holding members of Galois16.
+ */
+public interface CodingLoop16 {
+
+    /**
+     * Multiplies a subset of rows from a coding matrix by a full set of
+     * input shards to produce some output shards.
+     *
+     * @param matrixRows The rows from the matrix to use.
+     * @param inputs An array of byte arrays, each of which is one input shard.
+     * @param inputCount The number of input byte arrays.
+     * @param outputs Byte arrays where the computed shards are stored.
+     * @param outputCount The number of outputs to compute.
+     * @param offset The index in the inputs and output of the first byte
+     *               to process.  Must be even.
+     * @param byteCount The number of bytes to process.  Must be even.
+     */
+    void codeSomeShards(final char [] [] matrixRows,
+                        final byte [] [] inputs,
+                        final int inputCount,
+                        final byte [] [] outputs,
+                        final int outputCount,
+                        final int offset,
+                        final int byteCount);
+
+    /**
+     * Multiplies a subset of rows from a coding matrix by a full set of
+     * input shards, and checks that the data in the toCheck shards
+     * matches what's expected.
+     *
+     * @param tempBuffer A place to store temporary results.  May be null.
+     */
+    boolean checkSomeShards(final char [] [] matrixRows,
+                            final byte [] [] inputs,
+                            final int inputCount,
+                            final byte [] [] toCheck,
+                            final int checkCount,
+                            final int offset,
+                            final int byteCount,
+                            final byte [] tempBuffer);
+}
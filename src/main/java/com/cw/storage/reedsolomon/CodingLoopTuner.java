@@ -0,0 +1,313 @@
+/**
+ * Picks the fastest coding loop for a shape on this machine.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Picks the fastest coding loop for a shape on this machine.
+ *
+ * The benchmarks module shows that which loop is fastest depends on
+ * the processor, the number of shards and the buffer size.  Buffer
+ * sizes are rounded up to a power of two, and anything above
+ * MAX_CALIBRATION_SIZE is treated as that size, so a shape only ever
+ * has a few dozen entries.  The first time a (data, parity, rounded
+ * size) combination is asked for, the tuner times encodeParity() with
+ * each of the candidate loops for a fraction of a second and keeps the
+ * fastest.  The result is written to a small properties file, so that
+ * later runs on the same machine skip the calibration.
+ *
+ * Calibrations of different combinations don't wait for each other;
+ * callers asking for the same one wait for the first to finish.
+ *
+ * The profile file is ~/.reedsolomon-tuning.properties, unless the
+ * system property reedsolomon.tuning.file names another one.  Results
+ * recorded on a different processor count, architecture or JVM are
+ * ignored.
+ */
+public final class CodingLoopTuner {
+
+    /**
+     * System property naming the profile file.
+     */
+    public static final String PROFILE_FILE_PROPERTY = "reedsolomon.tuning.file";
+
+    private static final String DEFAULT_PROFILE_FILE_NAME = ".reedsolomon-tuning.properties";
+
+    private static final String ENVIRONMENT_KEY = "environment";
+
+    private static final long WARM_UP_NANOS = 50L * 1000 * 1000;
+    private static final long MEASUREMENT_NANOS = 100L * 1000 * 1000;
+
+    /**
+     * The largest shard size calibrated with.  Larger buffers use the
+     * result for this size, so calibrating never allocates more than
+     * this much per shard.
+     */
+    public static final int MAX_CALIBRATION_SIZE = 1024 * 1024;
+
+    /**
+     * The outcome of tuning one shape.
+     */
+    public static final class Result {
+        private final CodingLoop codingLoop;
+        private final double megabytesPerSecond;
+
+        private Result(CodingLoop codingLoop, double megabytesPerSecond) {
+            this.codingLoop = codingLoop;
+            this.megabytesPerSecond = megabytesPerSecond;
+        }
+
+        /**
+         * Returns the fastest coding loop.
+         */
+        public CodingLoop getCodingLoop() {
+            return codingLoop;
+        }
+
+        /**
+         * Returns the encode rate measured for the coding loop, in
+         * megabytes of input data per second.
+         */
+        public double getMegabytesPerSecond() {
+            return megabytesPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.1f MB/s", codingLoop.getClass().getSimpleName(), megabytesPerSecond);
+        }
+    }
+
+    private static final ConcurrentMap<String, Result> RESULTS = new ConcurrentHashMap<String, Result>();
+
+    /**
+     * One lock per combination, held while it is calibrated.
+     */
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Guards profile, which is only held while reading or writing it.
+     */
+    private static final Object PROFILE_LOCK = new Object();
+
+    private static Properties profile;
+
+    private CodingLoopTuner() {
+    }
+
+    /**
+     * Returns the fastest coding loop for the given shape and buffer
+     * size, calibrating it if neither this process nor the profile
+     * file has a result for it yet.
+     */
+    public static Result select(int dataShardCount, int parityShardCount, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        int calibrationSize = calibrationSize(bufferSize);
+        String key = dataShardCount + "+" + parityShardCount + "/" + calibrationSize;
+        Result result = RESULTS.get(key);
+        if (result != null) {
+            return result;
+        }
+
+        Object lock = LOCKS.get(key);
+        if (lock == null) {
+            Object created = new Object();
+            lock = LOCKS.putIfAbsent(key, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        synchronized (lock) {
+            result = RESULTS.get(key);
+            if (result != null) {
+                return result;
+            }
+            synchronized (PROFILE_LOCK) {
+                result = parse(loadProfile().getProperty(key));
+            }
+            if (result == null) {
+                result = calibrate(dataShardCount, parityShardCount, calibrationSize);
+                synchronized (PROFILE_LOCK) {
+                    Properties loaded = loadProfile();
+                    loaded.setProperty(key, result.getCodingLoop().getClass().getSimpleName() + " " + result.getMegabytesPerSecond());
+                    storeProfile(loaded);
+                }
+            }
+            RESULTS.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Rounds bufferSize up to a power of two, no larger than
+     * MAX_CALIBRATION_SIZE.
+     */
+    static int calibrationSize(int bufferSize) {
+        if (MAX_CALIBRATION_SIZE <= bufferSize) {
+            return MAX_CALIBRATION_SIZE;
+        }
+        int highestBit = Integer.highestOneBit(bufferSize);
+        return highestBit == bufferSize ? bufferSize : highestBit << 1;
+    }
+
+    /**
+     * Returns the coding loops the tuner chooses between: all of
+     * CodingLoop.ALL_CODING_LOOPS, plus the default loop of
+     * ReedSolomon.create() if that isn't one of them.
+     */
+    public static List<CodingLoop> candidates() {
+        List<CodingLoop> result = new ArrayList<CodingLoop>();
+        for (CodingLoop codingLoop : CodingLoop.ALL_CODING_LOOPS) {
+            result.add(codingLoop);
+        }
+        CodingLoop defaultLoop = ReedSolomon.getDefaultCodingLoop();
+        if (find(result, defaultLoop.getClass().getSimpleName()) == null) {
+            result.add(defaultLoop);
+        }
+        return result;
+    }
+
+    /**
+     * Times each candidate and returns the fastest.
+     */
+    private static Result calibrate(int dataShardCount, int parityShardCount, int bufferSize) {
+        Random random = new Random();
+        byte [] [] shards = new byte [dataShardCount + parityShardCount] [bufferSize];
+        for (int i = 0; i < dataShardCount; i++) {
+            random.nextBytes(shards[i]);
+        }
+
+        Result best = null;
+        for (CodingLoop codingLoop : candidates()) {
+            ReedSolomon codec = new ReedSolomon(dataShardCount, parityShardCount, codingLoop);
+            measure(codec, shards, bufferSize, WARM_UP_NANOS);
+            double rate = measure(codec, shards, bufferSize, MEASUREMENT_NANOS);
+            if (best == null || best.getMegabytesPerSecond() < rate) {
+                best = new Result(codingLoop, rate);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Encodes for about the given amount of time, and returns the rate
+     * in megabytes of input data per second.
+     */
+    private static double measure(ReedSolomon codec, byte [] [] shards, int bufferSize, long durationNanos) {
+        long bytesEncoded = 0;
+        long startTime = System.nanoTime();
+        long elapsed;
+        do {
+            codec.encodeParity(shards, 0, bufferSize);
+            bytesEncoded += (long) bufferSize * codec.getDataShardCount();
+            elapsed = System.nanoTime() - startTime;
+        } while (elapsed < durationNanos);
+        return (bytesEncoded / 1000000.0) / (elapsed / 1000000000.0);
+    }
+
+    /**
+     * Turns a profile entry like "InputOutputByteTableCodingLoop 1234.5"
+     * back into a result.  Returns null if there's no entry, or it names
+     * a loop that isn't available in this process.
+     */
+    private static Result parse(String entry) {
+        if (entry == null) {
+            return null;
+        }
+        String [] parts = entry.trim().split(" ");
+        if (parts.length != 2) {
+            return null;
+        }
+        CodingLoop codingLoop = find(candidates(), parts[0]);
+        if (codingLoop == null) {
+            return null;
+        }
+        try {
+            return new Result(codingLoop, Double.parseDouble(parts[1]));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static CodingLoop find(List<CodingLoop> codingLoops, String simpleName) {
+        for (CodingLoop codingLoop : codingLoops) {
+            if (codingLoop.getClass().getSimpleName().equals(simpleName)) {
+                return codingLoop;
+            }
+        }
+        return null;
+    }
+
+    private static File profileFile() {
+        String name = System.getProperty(PROFILE_FILE_PROPERTY);
+        if (name != null) {
+            return new File(name);
+        }
+        return new File(System.getProperty("user.home"), DEFAULT_PROFILE_FILE_NAME);
+    }
+
+    /**
+     * Describes what the timings depend on, so that a profile copied
+     * from another machine (or JVM) isn't trusted.
+     */
+    private static String environment() {
+        return System.getProperty("os.arch") + "/" +
+                Runtime.getRuntime().availableProcessors() + "cpu/" +
+                System.getProperty("java.vm.name") + " " + System.getProperty("java.version");
+    }
+
+    private static Properties loadProfile() {
+        if (profile != null) {
+            return profile;
+        }
+        profile = new Properties();
+        File file = profileFile();
+        if (file.exists()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                profile.load(in);
+            }
+            catch (IOException e) {
+                // An unreadable profile just means calibrating again.
+                profile.clear();
+            }
+        }
+        if (!environment().equals(profile.getProperty(ENVIRONMENT_KEY))) {
+            profile.clear();
+            profile.setProperty(ENVIRONMENT_KEY, environment());
+        }
+        return profile;
+    }
+
+    private static void storeProfile(Properties properties) {
+        File file = profileFile();
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                properties.store(out, "Reed-Solomon coding loop calibration");
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            // Not being able to save the profile only costs a
+            // calibration on the next start.
+            temp.delete();
+        }
+    }
+}
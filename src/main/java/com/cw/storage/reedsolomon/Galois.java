@@ -177,6 +177,25 @@ public final class Galois {
      */
     public static byte [] [] MULTIPLICATION_TABLE = generateMultiplicationTable();
 
+    /**
+     * Products of each member of the field with the sixteen possible
+     * values of a low nibble.
+     *
+     * Multiplication distributes over addition (XOR), so for any a and b:
+     *
+     *     a * b == LOW_NIBBLE_TABLE[a][b & 0x0F] ^ HIGH_NIBBLE_TABLE[a][(b >> 4) & 0x0F]
+     *
+     * Each row is 16 bytes, so the two tables together are 8 KB, compared
+     * to 64 KB for MULTIPLICATION_TABLE.
+     */
+    public static final byte [] [] LOW_NIBBLE_TABLE = generateNibbleTable(0);
+
+    /**
+     * Products of each member of the field with the sixteen possible
+     * values of a high nibble.  See LOW_NIBBLE_TABLE.
+     */
+    public static final byte [] [] HIGH_NIBBLE_TABLE = generateNibbleTable(4);
+
     /**
      * Adds two elements of the field.  If you're in an inner loop,
      * you should inline this function: it's just XOR.
@@ -305,6 +324,24 @@ public final class Galois {
         return result;
     }
 
+    /**
+     * Generates a table of products with one nibble of the second
+     * operand, which starts at bit position shift.
+     *
+     * To get the result of multiplying a by the nibble n:
+     *
+     *     result[a][n]
+     */
+    public static byte [] [] generateNibbleTable(int shift) {
+        byte [] [] result = new byte [256] [16];
+        for (int a = 0; a < FIELD_SIZE; a++) {
+            for (int n = 0; n < 16; n++) {
+                result[a][n] = multiply((byte) a, (byte) (n << shift));
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns a list of all polynomials that can be used to generate
      * the field.
@@ -0,0 +1,140 @@
+/**
+ * 16-bit Galois Field
+ */
+
+package com.cw.storage.reedsolomon;
+
+/**
+ * 16-bit Galois Field
+ *
+ * The same operations as Galois, over GF(2^16), for codes with more
+ * than 256 shards.  Elements are ints from 0 to 65535.
+ *
+ * A full multiplication table would take 8 GB, so multiplication uses
+ * the log and exp tables instead, which take 384 KB between them.  As
+ * in Galois, the exp table repeats its data so that the sum of two
+ * logarithms never needs to be reduced.
+ */
+public final class Galois16 {
+
+    /**
+     * The number of elements in the field.
+     */
+    public static final int FIELD_SIZE = 65536;
+
+    /**
+     * The polynomial used to generate the logarithm table:
+     * x^16 + x^12 + x^3 + x + 1, without the x^16 term.
+     *
+     * Any primitive polynomial of degree 16 works; this is a common
+     * choice.  generateLogTable() checks that it generates every
+     * non-zero element.
+     */
+    public static final int GENERATING_POLYNOMIAL = 0x100B;
+
+    /**
+     * Mapping from members of the field to their integer logarithms.
+     * The entry for 0 is meaningless because there is no log of 0.
+     */
+    public static final char [] LOG_TABLE = generateLogTable(GENERATING_POLYNOMIAL);
+
+    /**
+     * Inverse of the log table, repeated so that it can be indexed by
+     * the sum of two logarithms.
+     */
+    public static final char [] EXP_TABLE = generateExpTable(LOG_TABLE);
+
+    private Galois16() {
+    }
+
+    /**
+     * Adds two elements of the field.  It's just XOR.
+     */
+    public static int add(int a, int b) {
+        return a ^ b;
+    }
+
+    /**
+     * Inverse of addition.  It's also just XOR.
+     */
+    public static int subtract(int a, int b) {
+        return a ^ b;
+    }
+
+    /**
+     * Multiplies two elements of the field.
+     */
+    public static int multiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP_TABLE[LOG_TABLE[a] + LOG_TABLE[b]];
+    }
+
+    /**
+     * Inverse of multiplication.
+     */
+    public static int divide(int a, int b) {
+        if (a == 0) {
+            return 0;
+        }
+        if (b == 0) {
+            throw new IllegalArgumentException("Argument 'divisor' is 0");
+        }
+        int logResult = LOG_TABLE[a] - LOG_TABLE[b];
+        if (logResult < 0) {
+            logResult += FIELD_SIZE - 1;
+        }
+        return EXP_TABLE[logResult];
+    }
+
+    /**
+     * Computes a**n.
+     */
+    public static int exp(int a, int n) {
+        if (n == 0) {
+            return 1;
+        }
+        else if (a == 0) {
+            return 0;
+        }
+        else {
+            long logResult = ((long) LOG_TABLE[a] * n) % (FIELD_SIZE - 1);
+            return EXP_TABLE[(int) logResult];
+        }
+    }
+
+    /**
+     * Generates a logarithm table given a starting polynomial.
+     */
+    public static char [] generateLogTable(int polynomial) {
+        char [] result = new char [FIELD_SIZE];
+        boolean [] set = new boolean [FIELD_SIZE];
+        int b = 1;
+        for (int log = 0; log < FIELD_SIZE - 1; log++) {
+            if (set[b]) {
+                throw new RuntimeException("BUG: duplicate logarithm (bad polynomial?)");
+            }
+            set[b] = true;
+            result[b] = (char) log;
+            b = (b << 1);
+            if (FIELD_SIZE <= b) {
+                b = ((b - FIELD_SIZE) ^ polynomial);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generates the inverse log table.
+     */
+    public static char [] generateExpTable(char [] logTable) {
+        final char [] result = new char [FIELD_SIZE * 2 - 2];
+        for (int i = 1; i < FIELD_SIZE; i++) {
+            int log = logTable[i];
+            result[log] = (char) i;
+            result[log + FIELD_SIZE - 1] = (char) i;
+        }
+        return result;
+    }
+}
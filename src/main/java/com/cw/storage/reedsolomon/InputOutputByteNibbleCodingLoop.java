@@ -0,0 +1,63 @@
+/**
+ * Coding loop that multiplies with 16-entry nibble tables.
+ */
+
+package com.cw.storage.reedsolomon;
+
+/**
+ * Same loop nesting as InputOutputByteTableCodingLoop, but each
+ * multiplication is split into two lookups in 16-entry tables: one for
+ * the low nibble of the input byte and one for the high nibble.
+ *
+ * This is the technique ISA-L style encoders use with SIMD shuffles.
+ * In plain Java it doesn't make a single multiply cheaper, but the
+ * tables for one matrix coefficient are 32 bytes instead of a 256-byte
+ * row of MULTIPLICATION_TABLE, and the tables for every possible
+ * coefficient add up to 8 KB.  So however many coefficients a wide
+ * matrix has live, the lookups stay in the L1 cache.
+ *
+ * The pair of tables for a coefficient is looked up once for each
+ * (input, output) pair, just before the loop over its bytes.
+ */
+public class InputOutputByteNibbleCodingLoop extends CodingLoopBase {
+
+    @Override
+    public void codeSomeShards(
+            byte[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] outputs, int outputCount,
+            int offset, int byteCount) {
+
+        final byte [] [] lowTable = Galois.LOW_NIBBLE_TABLE;
+        final byte [] [] highTable = Galois.HIGH_NIBBLE_TABLE;
+
+        {
+            final int iInput = 0;
+            final byte[] inputShard = inputs[iInput];
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final byte[] outputShard = outputs[iOutput];
+                final int coefficient = matrixRows[iOutput][iInput] & 0xFF;
+                final byte[] lowRow = lowTable[coefficient];
+                final byte[] highRow = highTable[coefficient];
+                for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                    final int value = inputShard[iByte];
+                    outputShard[iByte] = (byte) (lowRow[value & 0x0F] ^ highRow[(value >> 4) & 0x0F]);
+                }
+            }
+        }
+
+        for (int iInput = 1; iInput < inputCount; iInput++) {
+            final byte[] inputShard = inputs[iInput];
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final byte[] outputShard = outputs[iOutput];
+                final int coefficient = matrixRows[iOutput][iInput] & 0xFF;
+                final byte[] lowRow = lowTable[coefficient];
+                final byte[] highRow = highTable[coefficient];
+                for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                    final int value = inputShard[iByte];
+                    outputShard[iByte] ^= (byte) (lowRow[value & 0x0F] ^ highRow[(value >> 4) & 0x0F]);
+                }
+            }
+        }
+    }
+}
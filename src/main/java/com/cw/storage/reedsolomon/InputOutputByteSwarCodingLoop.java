@@ -0,0 +1,313 @@
+/**
+ * Coding loop that handles coefficients of 0 and 1 a 64-bit word at a time.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Same loop nesting as InputOutputByteTableCodingLoop, but matrix
+ * coefficients of 0 and 1 are handled a 64-bit word at a time.
+ *
+ * Multiplying by 1 is the identity, so adding the product into an
+ * output is a plain XOR, which can be done on eight bytes at once
+ * through a long view of the shards ("SIMD within a register").
+ * Multiplying by 0 contributes nothing, so those inputs are skipped.
+ * How much this buys depends on the matrix: a parity row of all 1s
+ * (plain XOR parity) is coded entirely with word operations, while
+ * Vandermonde rows only have the odd 1.  MatrixType.OPTIMIZED_CAUCHY
+ * makes the first parity row all 1s.  All other coefficients use the
+ * multiplication table, one byte at a time.
+ *
+ * The same loops are available over ByteBuffers.  For direct and
+ * mapped buffers, getLong()/putLong() in native order are single
+ * unaligned loads and stores, so the words are read straight out of
+ * the off-heap memory.
+ */
+public class InputOutputByteSwarCodingLoop extends CodingLoopBase implements ByteBufferCodingLoop {
+
+    private static final int BYTES_IN_LONG = 8;
+
+    @Override
+    public void codeSomeShards(
+            byte[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] outputs, int outputCount,
+            int offset, int byteCount) {
+
+        final byte [] [] table = Galois.MULTIPLICATION_TABLE;
+        final ByteBuffer [] outputWords = wrap(outputs, outputCount);
+
+        {
+            final int iInput = 0;
+            final byte[] inputShard = inputs[iInput];
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final byte[] outputShard = outputs[iOutput];
+                final byte coefficient = matrixRows[iOutput][iInput];
+                if (coefficient == 0) {
+                    Arrays.fill(outputShard, offset, offset + byteCount, (byte) 0);
+                }
+                else if (coefficient == 1) {
+                    System.arraycopy(inputShard, offset, outputShard, offset, byteCount);
+                }
+                else {
+                    final byte[] multTableRow = table[coefficient & 0xFF];
+                    for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                        outputShard[iByte] = multTableRow[inputShard[iByte] & 0xFF];
+                    }
+                }
+            }
+        }
+
+        for (int iInput = 1; iInput < inputCount; iInput++) {
+            final byte[] inputShard = inputs[iInput];
+            ByteBuffer inputWords = null;
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final byte[] outputShard = outputs[iOutput];
+                final byte coefficient = matrixRows[iOutput][iInput];
+                if (coefficient == 0) {
+                    continue;
+                }
+                if (coefficient == 1) {
+                    if (inputWords == null) {
+                        inputWords = wrap(inputShard);
+                    }
+                    xorInto(inputShard, inputWords, outputShard, outputWords[iOutput], offset, byteCount);
+                }
+                else {
+                    final byte[] multTableRow = table[coefficient & 0xFF];
+                    for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                        outputShard[iByte] ^= multTableRow[inputShard[iByte] & 0xFF];
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean checkSomeShards(
+            byte[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] toCheck, int checkCount,
+            int offset, int byteCount,
+            byte[] tempBuffer) {
+
+        if (tempBuffer == null) {
+            return super.checkSomeShards(matrixRows, inputs, inputCount, toCheck, checkCount, offset, byteCount, null);
+        }
+
+        // Compute each parity shard into the temp buffer, then compare
+        // it a word at a time.
+        final byte [] [] temp = new byte [] [] { tempBuffer };
+        final ByteBuffer tempWords = wrap(tempBuffer);
+        for (int iOutput = 0; iOutput < checkCount; iOutput++) {
+            codeSomeShards(
+                    new byte [] [] { matrixRows[iOutput] },
+                    inputs, inputCount,
+                    temp, 1,
+                    offset, byteCount);
+            final byte [] outputShard = toCheck[iOutput];
+            final ByteBuffer outputWords = wrap(outputShard);
+            int iByte = offset;
+            for (; iByte + BYTES_IN_LONG <= offset + byteCount; iByte += BYTES_IN_LONG) {
+                if (tempWords.getLong(iByte) != outputWords.getLong(iByte)) {
+                    return false;
+                }
+            }
+            for (; iByte < offset + byteCount; iByte++) {
+                if (tempBuffer[iByte] != outputShard[iByte]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void codeSomeShards(
+            byte[][] matrixRows,
+            ByteBuffer[] inputs, int inputCount,
+            ByteBuffer[] outputs, int outputCount,
+            int offset, int byteCount) {
+
+        final byte [] [] table = Galois.MULTIPLICATION_TABLE;
+        final ByteBuffer [] outputWords = nativeOrder(outputs, outputCount);
+
+        {
+            final int iInput = 0;
+            final ByteBuffer inputShard = inputs[iInput];
+            ByteBuffer inputWords = null;
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final ByteBuffer outputShard = outputWords[iOutput];
+                final byte coefficient = matrixRows[iOutput][iInput];
+                if (coefficient == 0) {
+                    fill(outputShard, offset, byteCount);
+                }
+                else if (coefficient == 1) {
+                    if (inputWords == null) {
+                        inputWords = nativeOrder(inputShard);
+                    }
+                    copyInto(inputWords, outputShard, offset, byteCount);
+                }
+                else {
+                    final byte[] multTableRow = table[coefficient & 0xFF];
+                    for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                        outputShard.put(iByte, multTableRow[inputShard.get(iByte) & 0xFF]);
+                    }
+                }
+            }
+        }
+
+        for (int iInput = 1; iInput < inputCount; iInput++) {
+            final ByteBuffer inputShard = inputs[iInput];
+            ByteBuffer inputWords = null;
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final ByteBuffer outputShard = outputWords[iOutput];
+                final byte coefficient = matrixRows[iOutput][iInput];
+                if (coefficient == 0) {
+                    continue;
+                }
+                if (coefficient == 1) {
+                    if (inputWords == null) {
+                        inputWords = nativeOrder(inputShard);
+                    }
+                    xorInto(inputWords, outputShard, offset, byteCount);
+                }
+                else {
+                    final byte[] multTableRow = table[coefficient & 0xFF];
+                    for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                        outputShard.put(iByte, (byte) (outputShard.get(iByte) ^ multTableRow[inputShard.get(iByte) & 0xFF]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean checkSomeShards(
+            byte[][] matrixRows,
+            ByteBuffer[] inputs, int inputCount,
+            ByteBuffer[] toCheck, int checkCount,
+            int offset, int byteCount,
+            ByteBuffer tempBuffer) {
+
+        if (tempBuffer == null) {
+            return ByteBufferCodingLoopBase.checkByteByByte(matrixRows, inputs, inputCount, toCheck, checkCount, offset, byteCount);
+        }
+
+        // Compute each parity shard into the temp buffer, then compare
+        // it a word at a time.
+        final ByteBuffer tempWords = nativeOrder(tempBuffer);
+        final ByteBuffer [] temp = new ByteBuffer [] { tempWords };
+        for (int iOutput = 0; iOutput < checkCount; iOutput++) {
+            codeSomeShards(
+                    new byte [] [] { matrixRows[iOutput] },
+                    inputs, inputCount,
+                    temp, 1,
+                    offset, byteCount);
+            final ByteBuffer outputWords = nativeOrder(toCheck[iOutput]);
+            int iByte = offset;
+            for (; iByte + BYTES_IN_LONG <= offset + byteCount; iByte += BYTES_IN_LONG) {
+                if (tempWords.getLong(iByte) != outputWords.getLong(iByte)) {
+                    return false;
+                }
+            }
+            for (; iByte < offset + byteCount; iByte++) {
+                if (tempWords.get(iByte) != outputWords.get(iByte)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * XORs input into output over the given range, eight bytes at a
+     * time, with the leftover bytes at the end done one at a time.
+     */
+    private static void xorInto(byte [] input, ByteBuffer inputWords,
+                                byte [] output, ByteBuffer outputWords,
+                                int offset, int byteCount) {
+        final int end = offset + byteCount;
+        int iByte = offset;
+        for (; iByte + BYTES_IN_LONG <= end; iByte += BYTES_IN_LONG) {
+            outputWords.putLong(iByte, outputWords.getLong(iByte) ^ inputWords.getLong(iByte));
+        }
+        for (; iByte < end; iByte++) {
+            output[iByte] ^= input[iByte];
+        }
+    }
+
+    /**
+     * The ByteBuffer version of xorInto().
+     */
+    private static void xorInto(ByteBuffer inputWords, ByteBuffer outputWords, int offset, int byteCount) {
+        final int end = offset + byteCount;
+        int iByte = offset;
+        for (; iByte + BYTES_IN_LONG <= end; iByte += BYTES_IN_LONG) {
+            outputWords.putLong(iByte, outputWords.getLong(iByte) ^ inputWords.getLong(iByte));
+        }
+        for (; iByte < end; iByte++) {
+            outputWords.put(iByte, (byte) (outputWords.get(iByte) ^ inputWords.get(iByte)));
+        }
+    }
+
+    private static void copyInto(ByteBuffer inputWords, ByteBuffer outputWords, int offset, int byteCount) {
+        final int end = offset + byteCount;
+        int iByte = offset;
+        for (; iByte + BYTES_IN_LONG <= end; iByte += BYTES_IN_LONG) {
+            outputWords.putLong(iByte, inputWords.getLong(iByte));
+        }
+        for (; iByte < end; iByte++) {
+            outputWords.put(iByte, inputWords.get(iByte));
+        }
+    }
+
+    private static void fill(ByteBuffer outputWords, int offset, int byteCount) {
+        final int end = offset + byteCount;
+        int iByte = offset;
+        for (; iByte + BYTES_IN_LONG <= end; iByte += BYTES_IN_LONG) {
+            outputWords.putLong(iByte, 0L);
+        }
+        for (; iByte < end; iByte++) {
+            outputWords.put(iByte, (byte) 0);
+        }
+    }
+
+    private static ByteBuffer [] wrap(byte [] [] shards, int count) {
+        ByteBuffer [] result = new ByteBuffer [count];
+        for (int i = 0; i < count; i++) {
+            result[i] = wrap(shards[i]);
+        }
+        return result;
+    }
+
+    /**
+     * XOR doesn't care about byte order, so use whichever one lets the
+     * JIT compile getLong()/putLong() to a single load or store.
+     */
+    private static ByteBuffer wrap(byte [] shard) {
+        return ByteBuffer.wrap(shard).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer [] nativeOrder(ByteBuffer [] shards, int count) {
+        ByteBuffer [] result = new ByteBuffer [count];
+        for (int i = 0; i < count; i++) {
+            result[i] = nativeOrder(shards[i]);
+        }
+        return result;
+    }
+
+    /**
+     * A view of the shard in native byte order.  The caller's buffer is
+     * left alone; only the view's order changes.
+     */
+    private static ByteBuffer nativeOrder(ByteBuffer shard) {
+        return shard.duplicate().order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * One specific ordering/nesting of the coding loops, over ByteBuffers.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The loops of InputOutputByteTableCodingLoop, reading and writing
+ * shards through absolute ByteBuffer get()/put() calls.
+ */
+public class InputOutputByteTableBufferCodingLoop extends ByteBufferCodingLoopBase {
+
+    @Override
+    public void codeSomeShards(
+            byte[][] matrixRows,
+            ByteBuffer[] inputs, int inputCount,
+            ByteBuffer[] outputs, int outputCount,
+            int offset, int byteCount) {
+
+        final byte [] [] table = Galois.MULTIPLICATION_TABLE;
+
+        {
+            final int iInput = 0;
+            final ByteBuffer inputShard = inputs[iInput];
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final ByteBuffer outputShard = outputs[iOutput];
+                final byte[] matrixRow = matrixRows[iOutput];
+                final byte[] multTableRow = table[matrixRow[iInput] & 0xFF];
+                for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                    outputShard.put(iByte, multTableRow[inputShard.get(iByte) & 0xFF]);
+                }
+            }
+        }
+
+        for (int iInput = 1; iInput < inputCount; iInput++) {
+            final ByteBuffer inputShard = inputs[iInput];
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final ByteBuffer outputShard = outputs[iOutput];
+                final byte[] matrixRow = matrixRows[iOutput];
+                final byte[] multTableRow = table[matrixRow[iInput] & 0xFF];
+                for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                    outputShard.put(iByte, (byte) (outputShard.get(iByte) ^ multTableRow[inputShard.get(iByte) & 0xFF]));
+                }
+            }
+        }
+    }
+}
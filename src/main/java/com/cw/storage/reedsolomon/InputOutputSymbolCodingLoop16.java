@@ -0,0 +1,110 @@
+/**
+ * Coding loop over 16-bit symbols.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.util.Arrays;
+
+/**
+ * The loop nesting of InputOutputByteTableCodingLoop, over 16-bit
+ * symbols.  Each symbol is multiplied through the Galois16 log and exp
+ * tables, with the log of the coefficient looked up once per input and
+ * output.  Coefficients of 1 are a plain XOR.
+ */
+public class InputOutputSymbolCodingLoop16 implements CodingLoop16 {
+
+    @Override
+    public void codeSomeShards(
+            char[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] outputs, int outputCount,
+            int offset, int byteCount) {
+
+        final char [] logTable = Galois16.LOG_TABLE;
+        final char [] expTable = Galois16.EXP_TABLE;
+        final int end = offset + byteCount;
+
+        for (int iInput = 0; iInput < inputCount; iInput++) {
+            final byte[] inputShard = inputs[iInput];
+            final boolean first = (iInput == 0);
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final byte[] outputShard = outputs[iOutput];
+                final int coefficient = matrixRows[iOutput][iInput];
+                if (coefficient == 0) {
+                    if (first) {
+                        Arrays.fill(outputShard, offset, end, (byte) 0);
+                    }
+                }
+                else if (coefficient == 1) {
+                    if (first) {
+                        System.arraycopy(inputShard, offset, outputShard, offset, byteCount);
+                    }
+                    else {
+                        for (int iByte = offset; iByte < end; iByte++) {
+                            outputShard[iByte] ^= inputShard[iByte];
+                        }
+                    }
+                }
+                else {
+                    final int logCoefficient = logTable[coefficient];
+                    for (int iByte = offset; iByte < end; iByte += 2) {
+                        final int symbol = ((inputShard[iByte] & 0xFF) << 8) | (inputShard[iByte + 1] & 0xFF);
+                        final int product = (symbol == 0) ? 0 : expTable[logCoefficient + logTable[symbol]];
+                        if (first) {
+                            outputShard[iByte] = (byte) (product >> 8);
+                            outputShard[iByte + 1] = (byte) product;
+                        }
+                        else {
+                            outputShard[iByte] ^= (byte) (product >> 8);
+                            outputShard[iByte + 1] ^= (byte) product;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean checkSomeShards(
+            char[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] toCheck, int checkCount,
+            int offset, int byteCount,
+            byte[] tempBuffer) {
+
+        if (tempBuffer != null) {
+            final byte [] [] temp = new byte [] [] { tempBuffer };
+            for (int iOutput = 0; iOutput < checkCount; iOutput++) {
+                codeSomeShards(
+                        new char [] [] { matrixRows[iOutput] },
+                        inputs, inputCount,
+                        temp, 1,
+                        offset, byteCount);
+                for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+                    if (tempBuffer[iByte] != toCheck[iOutput][iByte]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Without a temp buffer, compute one symbol of each output at a
+        // time.
+        for (int iByte = offset; iByte < offset + byteCount; iByte += 2) {
+            for (int iOutput = 0; iOutput < checkCount; iOutput++) {
+                final char [] matrixRow = matrixRows[iOutput];
+                int value = 0;
+                for (int iInput = 0; iInput < inputCount; iInput++) {
+                    final int symbol = ((inputs[iInput][iByte] & 0xFF) << 8) | (inputs[iInput][iByte + 1] & 0xFF);
+                    value ^= Galois16.multiply(matrixRow[iInput], symbol);
+                }
+                if (toCheck[iOutput][iByte] != (byte) (value >> 8) || toCheck[iOutput][iByte + 1] != (byte) value) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,501 @@
+/**
+ * Locally repairable code built on ReedSolomon.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.util.Arrays;
+
+/**
+ * Locally repairable code built on ReedSolomon.
+ *
+ * The data shards are split into local groups of consecutive shards,
+ * and each group gets a local parity shard that is the XOR of its
+ * members.  On top of that, global parity shards are computed over all
+ * of the data shards with a ReedSolomon codec.  The shards are laid out
+ * as:
+ *
+ *     data 0 .. k-1, local parity 0 .. l-1, global parity 0 .. r-1
+ *
+ * Losing one shard is by far the most common failure, and with plain
+ * Reed-Solomon repairing it means reading k other shards.  Here a lost
+ * data shard or local parity shard is rebuilt from the rest of its
+ * group, which is about k / l shards.  repairSet() says which shards a
+ * repair reads.
+ *
+ * When more shards are lost than local repair can handle,
+ * decodeMissing() solves for the missing data with every surviving
+ * row of the generator matrix, local parities included.
+ */
+public class LocallyRepairableCode {
+
+    private final int dataShardCount;
+    private final int localGroupCount;
+    private final int globalParityCount;
+    private final int totalShardCount;
+    private final ReedSolomon globalCodec;
+    private final CodingLoop codingLoop;
+
+    /**
+     * For each local group, the indexes of its data shards.
+     */
+    private final int [] [] groups;
+
+    /**
+     * For each data shard, the local group it belongs to.
+     */
+    private final int [] groupOfShard;
+
+    /**
+     * Creates a code that uses the shared ReedSolomon codec for the
+     * global parity.
+     */
+    public static LocallyRepairableCode create(int dataShardCount, int localGroupCount, int globalParityCount) {
+        return new LocallyRepairableCode(dataShardCount, localGroupCount,
+                ReedSolomonCodecs.forShape(dataShardCount, globalParityCount));
+    }
+
+    /**
+     * Creates a code with localGroupCount local groups, whose global
+     * parity is computed by globalCodec.
+     */
+    public LocallyRepairableCode(int dataShardCount, int localGroupCount, ReedSolomon globalCodec) {
+        if (globalCodec.getDataShardCount() != dataShardCount) {
+            throw new IllegalArgumentException("global codec has " + globalCodec.getDataShardCount() + " data shards, not " + dataShardCount);
+        }
+        if (localGroupCount <= 0 || dataShardCount < localGroupCount) {
+            throw new IllegalArgumentException("bad local group count: " + localGroupCount);
+        }
+        this.dataShardCount = dataShardCount;
+        this.localGroupCount = localGroupCount;
+        this.globalParityCount = globalCodec.getParityShardCount();
+        this.totalShardCount = dataShardCount + localGroupCount + globalParityCount;
+        this.globalCodec = globalCodec;
+        this.codingLoop = globalCodec.getCodingLoop();
+
+        // Spread the data shards as evenly as possible; the first
+        // (dataShardCount % localGroupCount) groups get one extra.
+        groups = new int [localGroupCount] [];
+        groupOfShard = new int [dataShardCount];
+        int next = 0;
+        for (int g = 0; g < localGroupCount; g++) {
+            int size = dataShardCount / localGroupCount + (g < dataShardCount % localGroupCount ? 1 : 0);
+            groups[g] = new int [size];
+            for (int i = 0; i < size; i++) {
+                groups[g][i] = next;
+                groupOfShard[next] = g;
+                next += 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of data shards.
+     */
+    public int getDataShardCount() {
+        return dataShardCount;
+    }
+
+    /**
+     * Returns the number of local groups, which is also the number of
+     * local parity shards.
+     */
+    public int getLocalGroupCount() {
+        return localGroupCount;
+    }
+
+    /**
+     * Returns the number of global parity shards.
+     */
+    public int getGlobalParityCount() {
+        return globalParityCount;
+    }
+
+    /**
+     * Returns the total number of shards.
+     */
+    public int getTotalShardCount() {
+        return totalShardCount;
+    }
+
+    /**
+     * Returns the shards that have to be read to repair the given shard
+     * when it is the only one missing.
+     *
+     * For a data shard or local parity shard, that's the rest of its
+     * local group.  For a global parity shard, it's all of the data.
+     */
+    public int [] repairSet(int shardIndex) {
+        if (shardIndex < 0 || totalShardCount <= shardIndex) {
+            throw new IllegalArgumentException("no such shard: " + shardIndex);
+        }
+        if (isGlobalParity(shardIndex)) {
+            int [] result = new int [dataShardCount];
+            for (int i = 0; i < dataShardCount; i++) {
+                result[i] = i;
+            }
+            return result;
+        }
+        int group = (shardIndex < dataShardCount) ? groupOfShard[shardIndex] : shardIndex - dataShardCount;
+        int [] members = groupWithParity(group);
+        int [] result = new int [members.length - 1];
+        int count = 0;
+        for (int member : members) {
+            if (member != shardIndex) {
+                result[count++] = member;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Encodes the local and global parity for a set of data shards.
+     *
+     * @param shards An array holding the data shards, then the local
+     *               parity shards, then the global parity shards.  They
+     *               must all be the same size.
+     * @param offset The index of the first byte in each shard to encode.
+     * @param byteCount The number of bytes to encode in each shard.
+     */
+    public void encodeParity(byte [] [] shards, int offset, int byteCount) {
+        checkBuffersAndSizes(shards, offset, byteCount);
+        for (int g = 0; g < localGroupCount; g++) {
+            encodeLocalParity(shards, g, offset, byteCount);
+        }
+        globalCodec.encodeParity(globalShards(shards), offset, byteCount);
+    }
+
+    /**
+     * Returns true if the local and global parity shards contain the
+     * right data.
+     */
+    public boolean isParityCorrect(byte [] [] shards, int firstByte, int byteCount) {
+        checkBuffersAndSizes(shards, firstByte, byteCount);
+        for (int g = 0; g < localGroupCount; g++) {
+            int [] members = groups[g];
+            byte [] [] inputs = new byte [members.length] [];
+            for (int i = 0; i < members.length; i++) {
+                inputs[i] = shards[members[i]];
+            }
+            boolean correct = codingLoop.checkSomeShards(
+                    new byte [] [] { ones(members.length) },
+                    inputs, members.length,
+                    new byte [] [] { shards[dataShardCount + g] }, 1,
+                    firstByte, byteCount,
+                    null);
+            if (!correct) {
+                return false;
+            }
+        }
+        return globalCodec.isParityCorrect(globalShards(shards), firstByte, byteCount);
+    }
+
+    /**
+     * Re-creates one missing shard, reading only its local group when
+     * the rest of the group is present.
+     *
+     * If it isn't, this falls back to decodeMissing(), which fills in
+     * every missing shard, so then all of them must be allocated.
+     *
+     * @param shards The shards, laid out as for encodeParity().  Missing
+     *               shards that aren't being re-created may be null
+     *               when local repair is possible.
+     * @param shardPresent Which shards hold data.
+     * @param shardIndex The shard to re-create.
+     * @param offset The index of the first byte to re-create.
+     * @param byteCount The number of bytes to re-create.
+     */
+    public void reconstructShard(byte [] [] shards,
+                                 boolean [] shardPresent,
+                                 int shardIndex,
+                                 int offset,
+                                 int byteCount) {
+        if (shards.length != totalShardCount || shardPresent.length != totalShardCount) {
+            throw new IllegalArgumentException("wrong number of shards: " + shards.length);
+        }
+        if (shardIndex < 0 || totalShardCount <= shardIndex) {
+            throw new IllegalArgumentException("no such shard: " + shardIndex);
+        }
+        if (shardPresent[shardIndex]) {
+            return;
+        }
+        boolean local = true;
+        for (int member : repairSet(shardIndex)) {
+            local &= shardPresent[member];
+        }
+        if (local && !isGlobalParity(shardIndex)) {
+            int group = (shardIndex < dataShardCount) ? groupOfShard[shardIndex] : shardIndex - dataShardCount;
+            repairFromGroup(shards, group, shardIndex, offset, byteCount);
+        }
+        else if (local) {
+            // All of the data is here, so just encode the one row.
+            codingLoop.codeSomeShards(
+                    new byte [] [] { globalCodec.getParityRows()[shardIndex - dataShardCount - localGroupCount] },
+                    shards, dataShardCount,
+                    new byte [] [] { shards[shardIndex] }, 1,
+                    offset, byteCount);
+        }
+        else {
+            decodeMissing(shards, shardPresent, offset, byteCount);
+        }
+    }
+
+    /**
+     * Given a list of shards, some of which contain data, fills in the
+     * ones that don't have data.
+     *
+     * Groups with one shard missing are repaired locally first.  Any
+     * data that is still missing is solved for with k independent rows
+     * of the generator matrix, chosen from the surviving data, local
+     * parity and global parity shards.  Finally, missing parity is
+     * re-encoded.  shardPresent is not changed.
+     *
+     * @throws IllegalArgumentException if the surviving shards don't
+     * determine the data.
+     */
+    public void decodeMissing(byte [] [] shards,
+                              boolean [] shardPresent,
+                              final int offset,
+                              final int byteCount) {
+        checkBuffersAndSizes(shards, offset, byteCount);
+        boolean [] present = Arrays.copyOf(shardPresent, totalShardCount);
+
+        // Local repairs.
+        for (int g = 0; g < localGroupCount; g++) {
+            int missing = -1;
+            int missingCount = 0;
+            for (int member : groupWithParity(g)) {
+                if (!present[member]) {
+                    missing = member;
+                    missingCount += 1;
+                }
+            }
+            if (missingCount == 1) {
+                repairFromGroup(shards, g, missing, offset, byteCount);
+                present[missing] = true;
+            }
+        }
+
+        // Solve for any data that is still missing.
+        int missingData = 0;
+        for (int i = 0; i < dataShardCount; i++) {
+            if (!present[i]) {
+                missingData += 1;
+            }
+        }
+        if (0 < missingData) {
+            decodeData(shards, present, missingData, offset, byteCount);
+        }
+
+        // Re-encode missing parity.
+        for (int g = 0; g < localGroupCount; g++) {
+            if (!present[dataShardCount + g]) {
+                encodeLocalParity(shards, g, offset, byteCount);
+            }
+        }
+        byte [] [] globalRows = globalCodec.getParityRows();
+        byte [] [] outputs = new byte [globalParityCount] [];
+        byte [] [] matrixRows = new byte [globalParityCount] [];
+        int outputCount = 0;
+        for (int i = 0; i < globalParityCount; i++) {
+            int shardIndex = dataShardCount + localGroupCount + i;
+            if (!present[shardIndex]) {
+                outputs[outputCount] = shards[shardIndex];
+                matrixRows[outputCount] = globalRows[i];
+                outputCount += 1;
+            }
+        }
+        codingLoop.codeSomeShards(
+                matrixRows,
+                shards, dataShardCount,
+                outputs, outputCount,
+                offset, byteCount);
+    }
+
+    /**
+     * Picks dataShardCount linearly independent rows of the generator
+     * matrix from the present shards, inverts them, and computes the
+     * missing data shards.
+     */
+    private void decodeData(byte [] [] shards, boolean [] present, int missingData, int offset, int byteCount) {
+        // The rows already picked, kept in reduced form to test whether
+        // the next candidate is independent of them.  pivots[i] is the
+        // column of the leading 1 in reduced[i].
+        byte [] [] reduced = new byte [dataShardCount] [];
+        int [] pivots = new int [dataShardCount];
+        int [] chosen = new int [dataShardCount];
+        int chosenCount = 0;
+        for (int shardIndex = 0; shardIndex < totalShardCount && chosenCount < dataShardCount; shardIndex++) {
+            if (!present[shardIndex]) {
+                continue;
+            }
+            byte [] row = generatorRow(shardIndex);
+            for (int i = 0; i < chosenCount; i++) {
+                byte factor = row[pivots[i]];
+                if (factor != 0) {
+                    for (int c = 0; c < dataShardCount; c++) {
+                        row[c] ^= Galois.multiply(factor, reduced[i][c]);
+                    }
+                }
+            }
+            int pivot = 0;
+            while (pivot < dataShardCount && row[pivot] == 0) {
+                pivot += 1;
+            }
+            if (pivot == dataShardCount) {
+                continue;
+            }
+            byte scale = Galois.divide((byte) 1, row[pivot]);
+            for (int c = 0; c < dataShardCount; c++) {
+                row[c] = Galois.multiply(row[c], scale);
+            }
+            reduced[chosenCount] = row;
+            pivots[chosenCount] = pivot;
+            chosen[chosenCount] = shardIndex;
+            chosenCount += 1;
+        }
+        if (chosenCount < dataShardCount) {
+            throw new IllegalArgumentException("Not enough shards present");
+        }
+
+        // The chosen shards are (sub-matrix * data), so the data is
+        // inverse * chosen shards.
+        Matrix subMatrix = new Matrix(dataShardCount, dataShardCount);
+        byte [] [] inputs = new byte [dataShardCount] [];
+        for (int r = 0; r < dataShardCount; r++) {
+            byte [] row = generatorRow(chosen[r]);
+            for (int c = 0; c < dataShardCount; c++) {
+                subMatrix.set(r, c, row[c]);
+            }
+            inputs[r] = shards[chosen[r]];
+        }
+        Matrix decodeMatrix = subMatrix.invert();
+
+        byte [] [] outputs = new byte [missingData] [];
+        byte [] [] matrixRows = new byte [missingData] [];
+        int outputCount = 0;
+        for (int i = 0; i < dataShardCount; i++) {
+            if (!present[i]) {
+                outputs[outputCount] = shards[i];
+                matrixRows[outputCount] = decodeMatrix.getRow(i);
+                outputCount += 1;
+                present[i] = true;
+            }
+        }
+        codingLoop.codeSomeShards(
+                matrixRows,
+                inputs, dataShardCount,
+                outputs, outputCount,
+                offset, byteCount);
+    }
+
+    /**
+     * Returns a copy of the row of the generator matrix that produces
+     * the given shard from the data.
+     */
+    private byte [] generatorRow(int shardIndex) {
+        byte [] row = new byte [dataShardCount];
+        if (shardIndex < dataShardCount) {
+            row[shardIndex] = 1;
+        }
+        else if (shardIndex < dataShardCount + localGroupCount) {
+            for (int member : groups[shardIndex - dataShardCount]) {
+                row[member] = 1;
+            }
+        }
+        else {
+            byte [] globalRow = globalCodec.getParityRows()[shardIndex - dataShardCount - localGroupCount];
+            System.arraycopy(globalRow, 0, row, 0, dataShardCount);
+        }
+        return row;
+    }
+
+    /**
+     * XORs the other shards of a group (data and local parity) into
+     * the missing one.
+     */
+    private void repairFromGroup(byte [] [] shards, int group, int missing, int offset, int byteCount) {
+        int [] members = groupWithParity(group);
+        byte [] [] inputs = new byte [members.length - 1] [];
+        int inputCount = 0;
+        for (int member : members) {
+            if (member != missing) {
+                inputs[inputCount++] = shards[member];
+            }
+        }
+        codingLoop.codeSomeShards(
+                new byte [] [] { ones(inputCount) },
+                inputs, inputCount,
+                new byte [] [] { shards[missing] }, 1,
+                offset, byteCount);
+    }
+
+    private void encodeLocalParity(byte [] [] shards, int group, int offset, int byteCount) {
+        int [] members = groups[group];
+        byte [] [] inputs = new byte [members.length] [];
+        for (int i = 0; i < members.length; i++) {
+            inputs[i] = shards[members[i]];
+        }
+        codingLoop.codeSomeShards(
+                new byte [] [] { ones(members.length) },
+                inputs, members.length,
+                new byte [] [] { shards[dataShardCount + group] }, 1,
+                offset, byteCount);
+    }
+
+    /**
+     * Returns the data shards of a group followed by its local parity.
+     */
+    private int [] groupWithParity(int group) {
+        int [] members = Arrays.copyOf(groups[group], groups[group].length + 1);
+        members[members.length - 1] = dataShardCount + group;
+        return members;
+    }
+
+    /**
+     * Returns the shards in the layout the global codec expects: the
+     * data followed by the global parity.
+     */
+    private byte [] [] globalShards(byte [] [] shards) {
+        byte [] [] result = new byte [dataShardCount + globalParityCount] [];
+        System.arraycopy(shards, 0, result, 0, dataShardCount);
+        System.arraycopy(shards, dataShardCount + localGroupCount, result, dataShardCount, globalParityCount);
+        return result;
+    }
+
+    private boolean isGlobalParity(int shardIndex) {
+        return dataShardCount + localGroupCount <= shardIndex;
+    }
+
+    private static byte [] ones(int count) {
+        byte [] result = new byte [count];
+        Arrays.fill(result, (byte) 1);
+        return result;
+    }
+
+    /**
+     * Checks the consistency of arguments passed to public methods.
+     */
+    private void checkBuffersAndSizes(byte [] [] shards, int offset, int byteCount) {
+        if (shards.length != totalShardCount) {
+            throw new IllegalArgumentException("wrong number of shards: " + shards.length);
+        }
+
+        int shardLength = shards[0].length;
+        for (int i = 1; i < shards.length; i++) {
+            if (shards[i].length != shardLength) {
+                throw new IllegalArgumentException("Shards are different sizes");
+            }
+        }
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset is negative: " + offset);
+        }
+        if (byteCount < 0) {
+            throw new IllegalArgumentException("byteCount is negative: " + byteCount);
+        }
+        if (shardLength < offset + byteCount) {
+            throw new IllegalArgumentException("buffers too small: " + (offset + byteCount));
+        }
+    }
+}
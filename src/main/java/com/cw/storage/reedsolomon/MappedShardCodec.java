@@ -0,0 +1,304 @@
+/**
+ * Reed-Solomon coding of files through memory-mapped shard files.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reed-Solomon coding of files through memory-mapped shard files.
+ *
+ * The file is stored as its size (an eight-byte long), followed by the
+ * contents of the file, padded with zeros to a multiple of the data
+ * shard count.  Data shard i holds the i-th slice of that, and each
+ * parity shard is the same size.
+ *
+ * Nothing is copied through the Java heap: the data shards are written
+ * with FileChannel.transferTo(), and the parity is computed by running a
+ * ByteBufferCodingLoop over windows of the shard files mapped with
+ * FileChannel.map().  Windows keep each mapping under the 2 GB limit of
+ * a ByteBuffer, so there's no limit on the size of the file.
+ */
+public class MappedShardCodec {
+
+    /**
+     * Default number of bytes of each shard mapped at once.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int BYTES_IN_LONG = 8;
+
+    private final ReedSolomon codec;
+    private final int windowSize;
+
+    /**
+     * Makes a codec that maps the default window size at a time.
+     */
+    public MappedShardCodec(ReedSolomon codec) {
+        this(codec, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Makes a codec that maps windowSize bytes of each shard at a time.
+     */
+    public MappedShardCodec(ReedSolomon codec, int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        this.codec = codec;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Returns the shard files for a file: "foo.txt.0", "foo.txt.1", ...
+     * in the same directory.
+     */
+    public File [] shardFiles(File file) {
+        File [] result = new File [codec.getTotalShardCount()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new File(file.getParentFile(), file.getName() + "." + i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size each shard of a file of the given size will have.
+     */
+    public long shardSize(long fileSize) {
+        long storedSize = fileSize + BYTES_IN_LONG;
+        return (storedSize + codec.getDataShardCount() - 1) / codec.getDataShardCount();
+    }
+
+    /**
+     * Encodes a file into the given shard files, replacing them if they
+     * already exist.
+     */
+    public void encode(File inputFile, File [] shardFiles) throws IOException {
+        checkShardFileCount(shardFiles);
+        final int dataShardCount = codec.getDataShardCount();
+        final int totalShardCount = codec.getTotalShardCount();
+
+        try (RandomAccessFile input = new RandomAccessFile(inputFile, "r")) {
+            final FileChannel inputChannel = input.getChannel();
+            final long fileSize = inputChannel.size();
+            final long shardSize = shardSize(fileSize);
+
+            RandomAccessFile [] shards = new RandomAccessFile [totalShardCount];
+            try {
+                for (int i = 0; i < totalShardCount; i++) {
+                    shards[i] = new RandomAccessFile(shardFiles[i], "rw");
+                    shards[i].setLength(0);
+                }
+
+                // Copy the slices of the stored data into the data shards.
+                // If the shards are tiny, the size may spill over from the
+                // first shard into the next ones.  setLength() pads the
+                // last shards with zeros.
+                ByteBuffer header = ByteBuffer.allocate(BYTES_IN_LONG);
+                header.putLong(fileSize);
+                for (int i = 0; i < dataShardCount; i++) {
+                    final long shardStart = i * shardSize;
+                    final long shardEnd = shardStart + shardSize;
+                    final FileChannel shardChannel = shards[i].getChannel();
+                    if (shardStart < BYTES_IN_LONG) {
+                        header.limit((int) Math.min(shardEnd, BYTES_IN_LONG));
+                        header.position((int) shardStart);
+                        writeFully(shardChannel, header, 0);
+                    }
+                    long storedStart = Math.max(shardStart, BYTES_IN_LONG);
+                    long storedEnd = Math.min(shardEnd, BYTES_IN_LONG + fileSize);
+                    if (storedStart < storedEnd) {
+                        transferFully(inputChannel, storedStart - BYTES_IN_LONG, storedEnd - storedStart,
+                                shardChannel, storedStart - shardStart);
+                    }
+                }
+                for (int i = 0; i < totalShardCount; i++) {
+                    shards[i].setLength(shardSize);
+                }
+
+                // Compute the parity a window at a time.
+                for (long windowStart = 0; windowStart < shardSize; windowStart += windowSize) {
+                    int count = (int) Math.min(windowSize, shardSize - windowStart);
+                    MappedByteBuffer [] buffers = new MappedByteBuffer [totalShardCount];
+                    for (int i = 0; i < totalShardCount; i++) {
+                        FileChannel.MapMode mode = (i < dataShardCount) ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+                        buffers[i] = shards[i].getChannel().map(mode, windowStart, count);
+                    }
+                    codec.encodeParity(buffers, 0, count);
+                    for (int i = dataShardCount; i < totalShardCount; i++) {
+                        buffers[i].force();
+                    }
+                }
+            }
+            finally {
+                closeAll(shards);
+            }
+        }
+    }
+
+    /**
+     * Encodes a file into shard files next to it.
+     */
+    public void encode(File inputFile) throws IOException {
+        encode(inputFile, shardFiles(inputFile));
+    }
+
+    /**
+     * Rebuilds the original file from the shard files that exist.
+     *
+     * Shard files that are missing are re-created, so afterwards all of
+     * the shards are present again.
+     *
+     * @return The size of the decoded file.
+     */
+    public long decode(File [] shardFiles, File outputFile) throws IOException {
+        checkShardFileCount(shardFiles);
+        final int dataShardCount = codec.getDataShardCount();
+        final int totalShardCount = codec.getTotalShardCount();
+
+        boolean [] shardPresent = new boolean [totalShardCount];
+        int shardCount = 0;
+        long shardSize = -1;
+        for (int i = 0; i < totalShardCount; i++) {
+            if (shardFiles[i].exists()) {
+                if (0 <= shardSize && shardFiles[i].length() != shardSize) {
+                    throw new IOException("Shards are different sizes: " + shardFiles[i]);
+                }
+                shardSize = shardFiles[i].length();
+                shardPresent[i] = true;
+                shardCount += 1;
+            }
+        }
+        if (shardCount < dataShardCount) {
+            throw new IllegalArgumentException("Not enough shards present");
+        }
+        if (shardSize * dataShardCount < BYTES_IN_LONG) {
+            throw new IOException("Shards are too small: " + shardSize);
+        }
+
+        RandomAccessFile [] shards = new RandomAccessFile [totalShardCount];
+        try {
+            for (int i = 0; i < totalShardCount; i++) {
+                shards[i] = new RandomAccessFile(shardFiles[i], shardPresent[i] ? "r" : "rw");
+                if (!shardPresent[i]) {
+                    shards[i].setLength(shardSize);
+                }
+            }
+
+            // Fill in the missing shards a window at a time.
+            if (shardCount < totalShardCount) {
+                for (long windowStart = 0; windowStart < shardSize; windowStart += windowSize) {
+                    int count = (int) Math.min(windowSize, shardSize - windowStart);
+                    MappedByteBuffer [] buffers = new MappedByteBuffer [totalShardCount];
+                    for (int i = 0; i < totalShardCount; i++) {
+                        FileChannel.MapMode mode = shardPresent[i] ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+                        buffers[i] = shards[i].getChannel().map(mode, windowStart, count);
+                    }
+                    codec.decodeMissing(buffers, shardPresent, 0, count);
+                    for (int i = 0; i < totalShardCount; i++) {
+                        if (!shardPresent[i]) {
+                            buffers[i].force();
+                        }
+                    }
+                }
+            }
+
+            // Extract the file size, then copy the file out of the
+            // data shards.
+            ByteBuffer header = ByteBuffer.allocate(BYTES_IN_LONG);
+            for (int i = 0; header.position() < BYTES_IN_LONG; i++) {
+                header.limit((int) Math.min((i + 1) * shardSize, BYTES_IN_LONG));
+                readFully(shards[i].getChannel(), header, 0);
+            }
+            header.flip();
+            final long fileSize = header.getLong();
+            if (fileSize < 0 || shardSize * dataShardCount < fileSize + BYTES_IN_LONG) {
+                throw new IOException("corrupt file size: " + fileSize);
+            }
+
+            try (RandomAccessFile output = new RandomAccessFile(outputFile, "rw")) {
+                output.setLength(0);
+                final FileChannel outputChannel = output.getChannel();
+                for (int i = 0; i < dataShardCount; i++) {
+                    final long shardStart = i * shardSize;
+                    long storedStart = Math.max(shardStart, BYTES_IN_LONG);
+                    long storedEnd = Math.min(shardStart + shardSize, BYTES_IN_LONG + fileSize);
+                    if (storedStart < storedEnd) {
+                        transferFully(shards[i].getChannel(), storedStart - shardStart, storedEnd - storedStart,
+                                outputChannel, storedStart - BYTES_IN_LONG);
+                    }
+                }
+            }
+            return fileSize;
+        }
+        finally {
+            closeAll(shards);
+        }
+    }
+
+    /**
+     * Rebuilds the original file from the shard files next to it.
+     */
+    public long decode(File originalFile, File outputFile) throws IOException {
+        return decode(shardFiles(originalFile), outputFile);
+    }
+
+    private void checkShardFileCount(File [] shardFiles) {
+        if (shardFiles.length != codec.getTotalShardCount()) {
+            throw new IllegalArgumentException("wrong number of shard files: " + shardFiles.length);
+        }
+    }
+
+    private static void transferFully(FileChannel from, long fromPosition, long count,
+                                      FileChannel to, long toPosition) throws IOException {
+        long copied = 0;
+        while (copied < count) {
+            to.position(toPosition + copied);
+            long got = from.transferTo(fromPosition + copied, count - copied, to);
+            if (got <= 0) {
+                throw new EOFException("file ended early");
+            }
+            copied += got;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int got = channel.read(buffer, position);
+            if (got < 0) {
+                throw new EOFException("shard ended early");
+            }
+            position += got;
+        }
+    }
+
+    private static void closeAll(RandomAccessFile [] files) throws IOException {
+        IOException failure = null;
+        for (RandomAccessFile file : files) {
+            if (file != null) {
+                try {
+                    file.close();
+                }
+                catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -11,8 +11,13 @@ import java.util.Arrays;
 /**
  * A matrix over the 8-bit Galois field.
  *
- * This class is not performance-critical, so the implementations
- * are simple and straightforward.
+ * The elements are kept in one flat array.  The inversion itself,
+ * invertInPlace(), works on any flat square array with scratch space
+ * supplied by the caller; ReedSolomon uses it directly on reused
+ * buffers when it builds a decode matrix.  invert() runs it on a copy.
+ * Row operations look up a whole row of Galois.MULTIPLICATION_TABLE
+ * once and then index it, rather than calling Galois.multiply() for
+ * every element.
  */
 public class Matrix {
 
@@ -29,12 +34,12 @@ public class Matrix {
     /**
      * The data in the matrix, in row major form.
      *
-     * To get element (r, c): data[r][c]
+     * To get element (r, c): data[r * columns + c]
      *
      * Because this this is computer science, and not math,
      * the indices for both the row and column start at 0.
      */
-    private final byte [] [] data;
+    private final byte [] data;
 
     /**
      * Initialize a matrix of zeros.
@@ -45,10 +50,7 @@ public class Matrix {
     public Matrix(int initRows, int initColumns) {
         rows = initRows;
         columns = initColumns;
-        data = new byte [rows] [];
-        for (int r = 0; r < rows; r++) {
-            data[r] = new byte [columns];
-        }
+        data = new byte [rows * columns];
     }
 
     /**
@@ -57,15 +59,12 @@ public class Matrix {
     public Matrix(byte [] [] initData) {
         rows = initData.length;
         columns = initData[0].length;
-        data = new byte [rows] [];
+        data = new byte [rows * columns];
         for (int r = 0; r < rows; r++) {
             if (initData[r].length != columns) {
                 throw new IllegalArgumentException("Not all rows have the same number of columns");
             }
-            data[r] = new byte[columns];
-            for (int c = 0; c < columns; c++) {
-                data[r][c] = initData[r][c];
-            }
+            System.arraycopy(initData[r], 0, data, r * columns, columns);
         }
     }
 
@@ -98,7 +97,7 @@ public class Matrix {
                 if (c != 0) {
                     result.append(", ");
                 }
-                result.append(data[r][c] & 0xFF);
+                result.append(data[r * columns + c] & 0xFF);
             }
             result.append(']');
         }
@@ -154,7 +153,7 @@ public class Matrix {
         if (c < 0 || columns <= c) {
             throw new IllegalArgumentException("Column index out of range: " + c);
         }
-        return data[r][c];
+        return data[r * columns + c];
     }
 
     /**
@@ -167,7 +166,7 @@ public class Matrix {
         if (c < 0 || columns <= c) {
             throw new IllegalArgumentException("Column index out of range: " + c);
         }
-        data[r][c] = value;
+        data[r * columns + c] = value;
     }
 
     /**
@@ -178,12 +177,13 @@ public class Matrix {
         if (!(other instanceof Matrix)) {
             return false;
         }
-        for (int r = 0; r < rows; r++) {
-            if (!Arrays.equals(data[r], ((Matrix)other).data[r])) {
-                return false;
-            }
-        }
-        return true;
+        Matrix that = (Matrix) other;
+        return rows == that.rows && columns == that.columns && Arrays.equals(data, that.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(data);
     }
 
     /**
@@ -196,14 +196,18 @@ public class Matrix {
                     "Columns on left (" + getColumns() +") " +
                     "is different than rows on right (" + right.getRows() + ")");
         }
-        Matrix result = new Matrix(getRows(), right.getColumns());
-        for (int r = 0; r < getRows(); r++) {
-            for (int c = 0; c < right.getColumns(); c++) {
-                byte value = 0;
-                for (int i = 0; i < getColumns(); i++) {
-                    value ^= Galois.multiply(get(r, i), right.get(i, c));
+        // Accumulate each result row as a sum of multiples of the rows
+        // on the right.
+        final int resultColumns = right.columns;
+        Matrix result = new Matrix(rows, resultColumns);
+        for (int r = 0; r < rows; r++) {
+            final int resultStart = r * resultColumns;
+            for (int i = 0; i < columns; i++) {
+                final byte [] multTableRow = Galois.MULTIPLICATION_TABLE[data[r * columns + i] & 0xFF];
+                final int rightStart = i * resultColumns;
+                for (int c = 0; c < resultColumns; c++) {
+                    result.data[resultStart + c] ^= multTableRow[right.data[rightStart + c] & 0xFF];
                 }
-                result.set(r, c, value);
             }
         }
         return result;
@@ -218,12 +222,8 @@ public class Matrix {
         }
         Matrix result = new Matrix(rows, columns + right.columns);
         for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < columns; c++) {
-                result.data[r][c] = data[r][c];
-            }
-            for (int c = 0; c < right.columns; c++) {
-                result.data[r][columns + c] = right.data[r][c];
-            }
+            System.arraycopy(data, r * columns, result.data, r * result.columns, columns);
+            System.arraycopy(right.data, r * right.columns, result.data, r * result.columns + columns, right.columns);
         }
         return result;
     }
@@ -234,9 +234,7 @@ public class Matrix {
     public Matrix submatrix(int rmin, int cmin, int rmax, int cmax) {
         Matrix result = new Matrix(rmax - rmin, cmax - cmin);
         for (int r = rmin; r < rmax; r++) {
-            for (int c = cmin; c < cmax; c++) {
-                result.data[r - rmin][c - cmin] = data[r][c];
-            }
+            System.arraycopy(data, r * columns + cmin, result.data, (r - rmin) * result.columns, cmax - cmin);
         }
         return result;
     }
@@ -245,11 +243,21 @@ public class Matrix {
      * Returns one row of the matrix as a byte array.
      */
     public byte [] getRow(int row) {
-        byte [] result = new byte [columns];
-        for (int c = 0; c < columns; c++) {
-            result[c] = get(row, c);
+        if (row < 0 || rows <= row) {
+            throw new IllegalArgumentException("Row index out of range: " + row);
         }
-        return result;
+        return Arrays.copyOfRange(data, row * columns, (row + 1) * columns);
+    }
+
+    /**
+     * Copies one row of the matrix into destination, starting at
+     * destinationOffset.
+     */
+    void copyRow(int row, byte [] destination, int destinationOffset) {
+        if (row < 0 || rows <= row) {
+            throw new IllegalArgumentException("Row index out of range: " + row);
+        }
+        System.arraycopy(data, row * columns, destination, destinationOffset, columns);
     }
 
     /**
@@ -259,9 +267,32 @@ public class Matrix {
         if (r1 < 0 || rows <= r1 || r2 < 0 || rows <= r2) {
             throw new IllegalArgumentException("Row index out of range");
         }
-        byte [] tmp = data[r1];
-        data[r1] = data[r2];
-        data[r2] = tmp;
+        swapRows(data, columns, r1, r2);
+    }
+
+    private static void swapRows(byte [] data, int columns, int r1, int r2) {
+        if (r1 == r2) {
+            return;
+        }
+        final int start1 = r1 * columns;
+        final int start2 = r2 * columns;
+        for (int c = 0; c < columns; c++) {
+            byte tmp = data[start1 + c];
+            data[start1 + c] = data[start2 + c];
+            data[start2 + c] = tmp;
+        }
+    }
+
+    private static void swapColumns(byte [] data, int rows, int columns, int c1, int c2) {
+        if (c1 == c2) {
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            final int start = r * columns;
+            byte tmp = data[start + c1];
+            data[start + c1] = data[start + c2];
+            data[start + c2] = tmp;
+        }
     }
 
     /**
@@ -276,73 +307,71 @@ public class Matrix {
             throw new IllegalArgumentException("Only square matrices can be inverted");
         }
 
-        // Create a working matrix by augmenting this one with
-        // an identity matrix on the right.
-        Matrix work = augment(identity(rows));
-
-        // Do Gaussian elimination to transform the left half into
-        // an identity matrix.
-        work.gaussianElimination();
-
-        // The right half is now the inverse.
-        return work.submatrix(0, rows, columns, columns * 2);
+        // The copy is turned into the inverse in place.
+        Matrix result = new Matrix(rows, columns);
+        System.arraycopy(data, 0, result.data, 0, data.length);
+        invertInPlace(result.data, rows, new int [rows]);
+        return result;
     }
 
     /**
-     * Does the work of matrix inversion.
+     * Gauss-Jordan inversion of the size x size matrix in work, in
+     * place, without an augmented identity matrix.
      *
-     * Assumes that this is an r by 2r matrix.
+     * Column d of the identity never needs to be stored: when it is
+     * eliminated, column d of work has just been cleared to a single 1
+     * on the diagonal, so that column is reused to hold it.  Row swaps
+     * made to find a non-zero pivot come out as column swaps of the
+     * inverse, which are undone at the end in reverse order.
+     *
+     * @param pivotRows Scratch space for at least size row indexes.
      */
-    private void gaussianElimination() {
-        // Clear out the part below the main diagonal and scale the main
-        // diagonal to be 1.
-        for (int r = 0; r < rows; r++) {
+    static void invertInPlace(byte [] work, int size, int [] pivotRows) {
+        for (int d = 0; d < size; d++) {
             // If the element on the diagonal is 0, find a row below
             // that has a non-zero and swap them.
-            if (data[r][r] == (byte) 0) {
-                for (int rowBelow = r + 1; rowBelow < rows; rowBelow++) {
-                    if (data[rowBelow][r] != 0) {
-                        swapRows(r, rowBelow);
-                        break;
-                    }
-                }
+            int pivotRow = d;
+            while (pivotRow < size && work[pivotRow * size + d] == 0) {
+                pivotRow += 1;
             }
             // If we couldn't find one, the matrix is singular.
-            if (data[r][r] == (byte) 0) {
+            if (pivotRow == size) {
                 throw new IllegalArgumentException("Matrix is singular");
             }
-            // Scale to 1.
-            if (data[r][r] != (byte) 1) {
-                byte scale = Galois.divide((byte) 1, data[r][r]);
-                for (int c = 0; c < columns; c++) {
-                    data[r][c] = Galois.multiply(data[r][c], scale);
+            swapRows(work, size, d, pivotRow);
+            pivotRows[d] = pivotRow;
+
+            // Scale the pivot row so the diagonal is 1.  The diagonal
+            // itself becomes the scale, which is the entry of the
+            // inverse in that position so far.
+            final int pivotStart = d * size;
+            final byte scale = Galois.divide((byte) 1, work[pivotStart + d]);
+            if (scale != (byte) 1) {
+                final byte [] scaleRow = Galois.MULTIPLICATION_TABLE[scale & 0xFF];
+                work[pivotStart + d] = 1;
+                for (int c = 0; c < size; c++) {
+                    work[pivotStart + c] = scaleRow[work[pivotStart + c] & 0xFF];
                 }
             }
-            // Make everything below the 1 be a 0 by subtracting
-            // a multiple of it.  (Subtraction and addition are
+
+            // Make everything else in column d be a 0 by subtracting a
+            // multiple of the pivot row.  (Subtraction and addition are
             // both exclusive or in the Galois field.)
-            for (int rowBelow = r + 1; rowBelow < rows; rowBelow++) {
-                if (data[rowBelow][r] != (byte) 0) {
-                    byte scale = data[rowBelow][r];
-                    for (int c = 0; c < columns; c++) {
-                        data[rowBelow][c] ^= Galois.multiply(scale, data[r][c]);
+            for (int r = 0; r < size; r++) {
+                final int rowStart = r * size;
+                final byte factor = work[rowStart + d];
+                if (r != d && factor != (byte) 0) {
+                    final byte [] factorRow = Galois.MULTIPLICATION_TABLE[factor & 0xFF];
+                    work[rowStart + d] = 0;
+                    for (int c = 0; c < size; c++) {
+                        work[rowStart + c] ^= factorRow[work[pivotStart + c] & 0xFF];
                     }
                 }
             }
         }
 
-        // Now clear the part above the main diagonal.
-        for (int d = 0; d < rows; d++) {
-            for (int rowAbove = 0; rowAbove < d; rowAbove++) {
-                if (data[rowAbove][d] != (byte) 0) {
-                    byte scale = data[rowAbove][d];
-                    for (int c = 0; c < columns; c++) {
-                        data[rowAbove][c] ^= Galois.multiply(scale, data[d][c]);
-                    }
-
-                }
-            }
+        for (int d = size - 1; 0 <= d; d--) {
+            swapColumns(work, size, size, d, pivotRows[d]);
         }
     }
-
 }
@@ -0,0 +1,176 @@
+/**
+ * Matrix Algebra over a 16-bit Galois Field
+ */
+
+package com.cw.storage.reedsolomon;
+
+/**
+ * A matrix over the 16-bit Galois field.
+ *
+ * The same as Matrix, with char elements from Galois16.  This class is
+ * not performance-critical, so the implementations are simple and
+ * straightforward.
+ */
+public class Matrix16 {
+
+    private final int rows;
+    private final int columns;
+
+    /**
+     * The data in the matrix, in row major form: data[r][c].
+     */
+    private final char [] [] data;
+
+    /**
+     * Initialize a matrix of zeros.
+     */
+    public Matrix16(int initRows, int initColumns) {
+        rows = initRows;
+        columns = initColumns;
+        data = new char [rows] [columns];
+    }
+
+    /**
+     * Returns an identity matrix of the given size.
+     */
+    public static Matrix16 identity(int size) {
+        Matrix16 result = new Matrix16(size, size);
+        for (int i = 0; i < size; i++) {
+            result.set(i, i, 1);
+        }
+        return result;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the value at row r, column c.
+     */
+    public int get(int r, int c) {
+        if (r < 0 || rows <= r) {
+            throw new IllegalArgumentException("Row index out of range: " + r);
+        }
+        if (c < 0 || columns <= c) {
+            throw new IllegalArgumentException("Column index out of range: " + c);
+        }
+        return data[r][c];
+    }
+
+    /**
+     * Sets the value at row r, column c.
+     */
+    public void set(int r, int c, int value) {
+        if (r < 0 || rows <= r) {
+            throw new IllegalArgumentException("Row index out of range: " + r);
+        }
+        if (c < 0 || columns <= c) {
+            throw new IllegalArgumentException("Column index out of range: " + c);
+        }
+        data[r][c] = (char) value;
+    }
+
+    /**
+     * Multiplies this matrix (the one on the left) by another
+     * matrix (the one on the right).
+     */
+    public Matrix16 times(Matrix16 right) {
+        if (getColumns() != right.getRows()) {
+            throw new IllegalArgumentException(
+                    "Columns on left (" + getColumns() +") " +
+                    "is different than rows on right (" + right.getRows() + ")");
+        }
+        Matrix16 result = new Matrix16(getRows(), right.getColumns());
+        for (int r = 0; r < getRows(); r++) {
+            for (int c = 0; c < right.getColumns(); c++) {
+                int value = 0;
+                for (int i = 0; i < getColumns(); i++) {
+                    value ^= Galois16.multiply(data[r][i], right.data[i][c]);
+                }
+                result.data[r][c] = (char) value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns one row of the matrix as a char array.
+     */
+    public char [] getRow(int row) {
+        return data[row].clone();
+    }
+
+    /**
+     * Exchanges two rows in the matrix.
+     */
+    public void swapRows(int r1, int r2) {
+        if (r1 < 0 || rows <= r1 || r2 < 0 || rows <= r2) {
+            throw new IllegalArgumentException("Row index out of range");
+        }
+        char [] tmp = data[r1];
+        data[r1] = data[r2];
+        data[r2] = tmp;
+    }
+
+    /**
+     * Returns the inverse of this matrix, by Gauss-Jordan elimination
+     * on this matrix augmented with the identity.
+     *
+     * @throws IllegalArgumentException when the matrix is singular and
+     * doesn't have an inverse.
+     */
+    public Matrix16 invert() {
+        if (rows != columns) {
+            throw new IllegalArgumentException("Only square matrices can be inverted");
+        }
+
+        Matrix16 work = new Matrix16(rows, columns * 2);
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(data[r], 0, work.data[r], 0, columns);
+            work.data[r][columns + r] = 1;
+        }
+
+        for (int r = 0; r < rows; r++) {
+            // If the element on the diagonal is 0, find a row below
+            // that has a non-zero and swap them.
+            if (work.data[r][r] == 0) {
+                for (int rowBelow = r + 1; rowBelow < rows; rowBelow++) {
+                    if (work.data[rowBelow][r] != 0) {
+                        work.swapRows(r, rowBelow);
+                        break;
+                    }
+                }
+            }
+            if (work.data[r][r] == 0) {
+                throw new IllegalArgumentException("Matrix is singular");
+            }
+            // Scale to 1.
+            if (work.data[r][r] != 1) {
+                int scale = Galois16.divide(1, work.data[r][r]);
+                for (int c = 0; c < work.columns; c++) {
+                    work.data[r][c] = (char) Galois16.multiply(work.data[r][c], scale);
+                }
+            }
+            // Clear the column in every other row.
+            for (int other = 0; other < rows; other++) {
+                if (other != r && work.data[other][r] != 0) {
+                    int scale = work.data[other][r];
+                    for (int c = 0; c < work.columns; c++) {
+                        work.data[other][c] ^= (char) Galois16.multiply(scale, work.data[r][c]);
+                    }
+                }
+            }
+        }
+
+        Matrix16 result = new Matrix16(rows, columns);
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(work.data[r], columns, result.data[r], 0, columns);
+        }
+        return result;
+    }
+}
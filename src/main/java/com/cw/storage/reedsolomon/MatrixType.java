@@ -0,0 +1,40 @@
+/**
+ * The ways ReedSolomon can build its encoding matrix.
+ */
+
+package com.cw.storage.reedsolomon;
+
+/**
+ * The ways ReedSolomon can build its encoding matrix.
+ *
+ * All of them put the identity on top, so the data shards are stored
+ * unchanged, and all of them have the property that any square subset
+ * of rows is invertible.  They differ in the parity rows, so shards
+ * encoded with one type can only be decoded with the same type.
+ */
+public enum MatrixType {
+
+    /**
+     * A Vandermonde matrix times the inverse of its top square.  This is
+     * the original construction, and the default.  Building it inverts
+     * a dataShardCount x dataShardCount matrix.
+     */
+    VANDERMONDE,
+
+    /**
+     * The identity on top of a Cauchy matrix, with element 1 / (x + y)
+     * for distinct x and y.  Every square submatrix of a Cauchy matrix
+     * is invertible, so nothing needs to be inverted to build it.
+     */
+    CAUCHY,
+
+    /**
+     * The Cauchy matrix with its columns scaled so that the first
+     * parity row is all ones, which makes the first parity shard a
+     * plain XOR of the data shards, and each other parity row scaled
+     * by whichever factor gives its coefficients the fewest ones in
+     * their bit-matrix form.  Scaling rows and columns of the parity
+     * part keeps every square submatrix invertible.
+     */
+    OPTIMIZED_CAUCHY
+}
@@ -0,0 +1,214 @@
+/**
+ * Coding loop that spreads the work over a ForkJoinPool.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Coding loop that spreads the work over a ForkJoinPool.
+ *
+ * Every byte position in a shard is coded independently of every other
+ * one, so the range offset..offset+byteCount can be cut into chunks and
+ * each chunk handed to the wrapped coding loop on its own thread.  Chunks
+ * are never smaller than minChunkSize, which keeps small shards (like the
+ * ones StorageSystem writes) on the calling thread.  Above that, a chunk
+ * is cut so that its inputs and outputs together fit in CACHE_BUDGET
+ * bytes, so they stay in the processor cache however large the stripe.
+ */
+public class ParallelCodingLoop implements CodingLoop {
+
+    /**
+     * Default for the smallest number of bytes per shard given to one task.
+     */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * Chunk boundaries are rounded down to a multiple of this, so
+     * that two threads don't write to the same cache line.
+     */
+    private static final int CHUNK_ALIGNMENT = 64;
+
+    /**
+     * Aim for a few chunks per thread, so that threads that finish
+     * early can steal work.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * The bytes of all the inputs and outputs of one chunk should fit
+     * in about this much of the per-core cache.
+     */
+    private static final int CACHE_BUDGET = 256 * 1024;
+
+    private final CodingLoop codingLoop;
+    private final ForkJoinPool pool;
+    private final int minChunkSize;
+
+    /**
+     * Wraps a coding loop, running it on the common pool.
+     */
+    public ParallelCodingLoop(CodingLoop codingLoop) {
+        this(codingLoop, ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Wraps a coding loop, running it on the given pool with chunks
+     * of at least minChunkSize bytes.
+     */
+    public ParallelCodingLoop(CodingLoop codingLoop, ForkJoinPool pool, int minChunkSize) {
+        if (codingLoop == null || pool == null) {
+            throw new IllegalArgumentException("codingLoop and pool must not be null");
+        }
+        if (minChunkSize < CHUNK_ALIGNMENT) {
+            throw new IllegalArgumentException("minChunkSize is less than " + CHUNK_ALIGNMENT + ": " + minChunkSize);
+        }
+        this.codingLoop = codingLoop;
+        this.pool = pool;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Returns the coding loop that does the work on each chunk.
+     */
+    public CodingLoop getCodingLoop() {
+        return codingLoop;
+    }
+
+    /**
+     * Returns the smallest number of bytes per shard given to one task.
+     */
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    @Override
+    public void codeSomeShards(
+            final byte[][] matrixRows,
+            final byte[][] inputs, final int inputCount,
+            final byte[][] outputs, final int outputCount,
+            int offset, int byteCount) {
+
+        final int chunkSize = chunkSize(byteCount, inputCount + outputCount);
+        if (byteCount <= chunkSize) {
+            codingLoop.codeSomeShards(matrixRows, inputs, inputCount, outputs, outputCount, offset, byteCount);
+            return;
+        }
+        pool.invoke(new CodeTask(matrixRows, inputs, inputCount, outputs, outputCount, offset, byteCount, chunkSize));
+    }
+
+    @Override
+    public boolean checkSomeShards(
+            final byte[][] matrixRows,
+            final byte[][] inputs, final int inputCount,
+            final byte[][] toCheck, final int checkCount,
+            int offset, int byteCount,
+            final byte[] tempBuffer) {
+
+        // Chunks cover disjoint byte ranges, and the temp buffer is
+        // indexed the same way as the shards, so the tasks can share it.
+        final int chunkSize = chunkSize(byteCount, inputCount + checkCount);
+        if (byteCount <= chunkSize) {
+            return codingLoop.checkSomeShards(matrixRows, inputs, inputCount, toCheck, checkCount, offset, byteCount, tempBuffer);
+        }
+        return pool.invoke(new CheckTask(matrixRows, inputs, inputCount, toCheck, checkCount, offset, byteCount, tempBuffer, chunkSize));
+    }
+
+    private int chunkSize(int byteCount, int shardCount) {
+        int perThread = byteCount / (pool.getParallelism() * CHUNKS_PER_THREAD);
+        int cacheSized = (CACHE_BUDGET / shardCount) & ~(CHUNK_ALIGNMENT - 1);
+        return Math.max(minChunkSize, Math.min(perThread, cacheSized));
+    }
+
+    /**
+     * Returns the point at which to split a range into two tasks.
+     */
+    private static int splitPoint(int offset, int byteCount) {
+        int half = (byteCount / 2) & ~(CHUNK_ALIGNMENT - 1);
+        return offset + Math.max(half, CHUNK_ALIGNMENT);
+    }
+
+    private class CodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] matrixRows;
+        private final byte[][] inputs;
+        private final int inputCount;
+        private final byte[][] outputs;
+        private final int outputCount;
+        private final int offset;
+        private final int byteCount;
+        private final int chunkSize;
+
+        CodeTask(byte[][] matrixRows,
+                 byte[][] inputs, int inputCount,
+                 byte[][] outputs, int outputCount,
+                 int offset, int byteCount, int chunkSize) {
+            this.matrixRows = matrixRows;
+            this.inputs = inputs;
+            this.inputCount = inputCount;
+            this.outputs = outputs;
+            this.outputCount = outputCount;
+            this.offset = offset;
+            this.byteCount = byteCount;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (byteCount <= chunkSize) {
+                codingLoop.codeSomeShards(matrixRows, inputs, inputCount, outputs, outputCount, offset, byteCount);
+                return;
+            }
+            int split = splitPoint(offset, byteCount);
+            invokeAll(
+                    new CodeTask(matrixRows, inputs, inputCount, outputs, outputCount, offset, split - offset, chunkSize),
+                    new CodeTask(matrixRows, inputs, inputCount, outputs, outputCount, split, offset + byteCount - split, chunkSize));
+        }
+    }
+
+    private class CheckTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[][] matrixRows;
+        private final byte[][] inputs;
+        private final int inputCount;
+        private final byte[][] toCheck;
+        private final int checkCount;
+        private final int offset;
+        private final int byteCount;
+        private final byte[] tempBuffer;
+        private final int chunkSize;
+
+        CheckTask(byte[][] matrixRows,
+                  byte[][] inputs, int inputCount,
+                  byte[][] toCheck, int checkCount,
+                  int offset, int byteCount,
+                  byte[] tempBuffer, int chunkSize) {
+            this.matrixRows = matrixRows;
+            this.inputs = inputs;
+            this.inputCount = inputCount;
+            this.toCheck = toCheck;
+            this.checkCount = checkCount;
+            this.offset = offset;
+            this.byteCount = byteCount;
+            this.tempBuffer = tempBuffer;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (byteCount <= chunkSize) {
+                return codingLoop.checkSomeShards(matrixRows, inputs, inputCount, toCheck, checkCount, offset, byteCount, tempBuffer);
+            }
+            int split = splitPoint(offset, byteCount);
+            CheckTask right = new CheckTask(matrixRows, inputs, inputCount, toCheck, checkCount, split, offset + byteCount - split, tempBuffer, chunkSize);
+            right.fork();
+            boolean leftCorrect = new CheckTask(matrixRows, inputs, inputCount, toCheck, checkCount, offset, split - offset, tempBuffer, chunkSize).compute();
+            return right.join() && leftCorrect;
+        }
+    }
+}
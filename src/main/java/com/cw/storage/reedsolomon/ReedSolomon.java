@@ -6,16 +6,97 @@
 
 package com.cw.storage.reedsolomon;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Reed-Solomon Coding over 8-bit values.
+ *
+ * A codec never changes after it has been constructed, so one instance
+ * can be shared between threads.  ReedSolomonCodecs keeps one per shape.
+ *
+ * Each coding method also has an overload taking ByteBuffers, which
+ * may be heap, direct or mapped, so shards read from channels don't
+ * have to be copied into byte arrays first.  If the coding loop doesn't
+ * implement ByteBufferCodingLoop, those use the table loop over
+ * buffers.  Either way the output is the same as for byte arrays.
  */
 public class ReedSolomon {
 
+    /**
+     * The maximum number of erasure patterns whose decode rows are
+     * kept by each codec.
+     */
+    public static final int DECODE_CACHE_SIZE = 256;
+
+    /**
+     * encodeParityBatch() packs stripes whose shards are smaller than
+     * this into shared buffers and encodes them in one pass.
+     */
+    public static final int PACKED_BATCH_SHARD_SIZE = 1024;
+
+    /**
+     * The size of each of encodeParityBatch()'s per-thread packing
+     * buffers.
+     */
+    public static final int PACKED_BATCH_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Class name of the Vector API coding loop.  It is only compiled
+     * on JDK 17+ (the "vector" Maven profile), so it is loaded by name.
+     */
+    private static final String VECTOR_CODING_LOOP_CLASS = "com.cw.storage.reedsolomon.VectorCodingLoop";
+
+    /**
+     * Set this system property to "false" to keep create() from
+     * using VectorCodingLoop even when it is available.
+     */
+    public static final String USE_VECTOR_PROPERTY = "reedsolomon.vector";
+
+    /**
+     * The coding loop used by create().
+     */
+    private static final CodingLoop DEFAULT_CODING_LOOP = loadDefaultCodingLoop();
+
+    /**
+     * The loop used for ByteBuffer shards when the coding loop given to
+     * the constructor can't handle them itself.
+     */
+    private static final ByteBufferCodingLoop DEFAULT_BYTE_BUFFER_CODING_LOOP = new InputOutputByteTableBufferCodingLoop();
+
+    /**
+     * For each a, the number of ones in the 8x8 bit matrix that
+     * multiplies by a, which is how many XORs it takes to multiply by a
+     * one bit at a time.  Column i of that matrix is a * 2^i.
+     */
+    private static final int [] BIT_MATRIX_WEIGHTS = generateBitMatrixWeights();
+
+    /**
+     * Scratch space for inverting decode matrices, one per thread, so
+     * that a new erasure pattern allocates nothing but the rows that
+     * go into the cache.  Grown to the largest matrix the thread has
+     * inverted.
+     */
+    private static final ThreadLocal<DecodeScratch> DECODE_SCRATCH = new ThreadLocal<DecodeScratch>() {
+        @Override
+        protected DecodeScratch initialValue() {
+            return new DecodeScratch();
+        }
+    };
+
     private final int dataShardCount;
     private final int parityShardCount;
     private final int totalShardCount;
     private final Matrix matrix;
     private final CodingLoop codingLoop;
+    private final ByteBufferCodingLoop byteBufferCodingLoop;
+    private final MatrixType matrixType;
+    private final SyndromeDecoder syndromeDecoder;
 
     /**
      * Rows from the matrix for encoding parity, each one as its own
@@ -23,17 +104,57 @@ public class ReedSolomon {
      */
     private final byte [] [] parityRows;
 
+    /**
+     * Inverted decode matrices, one per erasure pattern seen by
+     * decodeMissing(), keyed by which shards were present.  Each value
+     * holds the rows of the inverted matrix that maps the first
+     * dataShardCount present shards back to the data shards.
+     */
+    private final ConcurrentMap<ShardPresence, byte [] []> decodeCache =
+            new ConcurrentHashMap<ShardPresence, byte [] []>();
+
+    private final AtomicLong decodeCacheHits = new AtomicLong();
+    private final AtomicLong decodeCacheMisses = new AtomicLong();
+
+    /**
+     * Per-thread buffers that encodeParityBatch() packs small stripes
+     * into, one of PACKED_BATCH_BUFFER_SIZE bytes for each shard.
+     */
+    private final ThreadLocal<byte [] []> batchScratch = new ThreadLocal<byte [] []>() {
+        @Override
+        protected byte [] [] initialValue() {
+            return new byte [totalShardCount] [PACKED_BATCH_BUFFER_SIZE];
+        }
+    };
+
     /**
      * Creates a ReedSolomon codec with the default coding loop.
      */
     public static ReedSolomon create(int dataShardCount, int parityShardCount) {
-        return new ReedSolomon(dataShardCount, parityShardCount, new InputOutputByteTableCodingLoop());
+        return new ReedSolomon(dataShardCount, parityShardCount, DEFAULT_CODING_LOOP);
+    }
+
+    /**
+     * Returns the coding loop used by create(): VectorCodingLoop when
+     * it was compiled in and the jdk.incubator.vector module is
+     * present, and InputOutputByteTableCodingLoop otherwise.
+     */
+    public static CodingLoop getDefaultCodingLoop() {
+        return DEFAULT_CODING_LOOP;
     }
 
     /**
      * Initializes a new encoder/decoder, with a chosen coding loop.
      */
     public ReedSolomon(int dataShardCount, int parityShardCount, CodingLoop codingLoop) {
+        this(dataShardCount, parityShardCount, codingLoop, MatrixType.VANDERMONDE);
+    }
+
+    /**
+     * Initializes a new encoder/decoder, with a chosen coding loop and
+     * way of building the encoding matrix.
+     */
+    public ReedSolomon(int dataShardCount, int parityShardCount, CodingLoop codingLoop, MatrixType matrixType) {
 
         // We can have at most 256 shards total, as any more would
         // lead to duplicate rows in the Vandermonde matrix, which
@@ -43,16 +164,47 @@ public class ReedSolomon {
         if (256 < dataShardCount + parityShardCount) {
             throw new IllegalArgumentException("too many shards - max is 256");
         }
+        if (matrixType == null) {
+            throw new IllegalArgumentException("matrixType is null");
+        }
 
         this.dataShardCount = dataShardCount;
         this.parityShardCount = parityShardCount;
         this.codingLoop = codingLoop;
+        this.byteBufferCodingLoop = (codingLoop instanceof ByteBufferCodingLoop)
+                ? (ByteBufferCodingLoop) codingLoop
+                : DEFAULT_BYTE_BUFFER_CODING_LOOP;
+        this.matrixType = matrixType;
         this.totalShardCount = dataShardCount + parityShardCount;
-        matrix = buildMatrix(dataShardCount, this.totalShardCount);
+        matrix = buildMatrix(dataShardCount, this.totalShardCount, matrixType);
         parityRows = new byte [parityShardCount] [];
         for (int i = 0; i < parityShardCount; i++) {
             parityRows[i] = matrix.getRow(dataShardCount + i);
         }
+        syndromeDecoder = new SyndromeDecoder(parityRows, dataShardCount);
+    }
+
+    /**
+     * Returns the way the encoding matrix was built.
+     */
+    public MatrixType getMatrixType() {
+        return matrixType;
+    }
+
+    /**
+     * Returns the parity rows of the encoding matrix, for other codecs
+     * in this package that build on this one.  Callers must not modify
+     * them.
+     */
+    byte [] [] getParityRows() {
+        return parityRows;
+    }
+
+    /**
+     * Returns the coding loop used for byte arrays.
+     */
+    CodingLoop getCodingLoop() {
+        return codingLoop;
     }
 
     /**
@@ -76,6 +228,22 @@ public class ReedSolomon {
         return totalShardCount;
     }
 
+    /**
+     * Returns the number of decodeMissing() calls that found their
+     * decode matrix in the cache.
+     */
+    public long getDecodeCacheHits() {
+        return decodeCacheHits.get();
+    }
+
+    /**
+     * Returns the number of decodeMissing() calls that had to invert
+     * a decode matrix.
+     */
+    public long getDecodeCacheMisses() {
+        return decodeCacheMisses.get();
+    }
+
     /**
      * Encodes parity for a set of data shards.
      *
@@ -102,6 +270,200 @@ public class ReedSolomon {
                 offset, byteCount);
     }
 
+    /**
+     * Encodes parity for many stripes in one call.
+     *
+     * Each stripe is an array of data shards followed by parity shards,
+     * like the argument to encodeParity(), and is encoded over the full
+     * length of its shards.  Different stripes may have different shard
+     * sizes.  All of the stripes are checked before any are encoded.
+     *
+     * Small stripes (like the keys StorageSystem stores) are copied back
+     * to back into one set of per-thread shard buffers, which are encoded
+     * with a single pass of the coding loop, and the parity is copied
+     * back out.  Every byte position is coded independently, so this
+     * gives the same parity as encoding each stripe on its own, but pays
+     * the coding loop's per-call setup once per PACKED_BATCH_BUFFER_SIZE
+     * bytes instead of once per stripe.  Stripes with shards of
+     * PACKED_BATCH_SHARD_SIZE bytes or more are encoded in place, where
+     * the copies would cost more than they save.
+     *
+     * @param stripes The stripes to encode.
+     * @throws IllegalArgumentException if any stripe is null, has the
+     *         wrong number of shards, has a null or empty shard, or has
+     *         shards of different sizes.  No stripe is encoded then.
+     */
+    public void encodeParityBatch(List<byte [] []> stripes) {
+        // Check arguments.
+        for (int s = 0; s < stripes.size(); s++) {
+            final byte [] [] shards = stripes.get(s);
+            if (shards == null || shards.length != totalShardCount) {
+                throw new IllegalArgumentException("stripe " + s + " does not have " + totalShardCount + " shards");
+            }
+            for (byte [] shard : shards) {
+                if (shard == null || shard.length == 0) {
+                    throw new IllegalArgumentException("stripe " + s + " has a missing or empty shard");
+                }
+            }
+            checkBuffersAndSizes(shards, 0, shards[0].length);
+        }
+
+        // Large stripes are coded where they are; small ones are packed
+        // into the scratch buffers, which are coded whenever they fill.
+        final byte [] [] packed = batchScratch.get();
+        final byte [] [] outputs = new byte [parityShardCount] [];
+        int first = 0;
+        int packedLength = 0;
+        for (int s = 0; s < stripes.size(); s++) {
+            final byte [] [] shards = stripes.get(s);
+            final int shardLength = shards[0].length;
+            if (PACKED_BATCH_SHARD_SIZE <= shardLength) {
+                System.arraycopy(shards, dataShardCount, outputs, 0, parityShardCount);
+                codingLoop.codeSomeShards(
+                        parityRows,
+                        shards, dataShardCount,
+                        outputs, parityShardCount,
+                        0, shardLength);
+                continue;
+            }
+            if (PACKED_BATCH_BUFFER_SIZE < packedLength + shardLength) {
+                codePacked(packed, outputs, stripes, first, s, packedLength);
+                first = s;
+                packedLength = 0;
+            }
+            for (int i = 0; i < dataShardCount; i++) {
+                System.arraycopy(shards[i], 0, packed[i], packedLength, shardLength);
+            }
+            packedLength += shardLength;
+        }
+        codePacked(packed, outputs, stripes, first, stripes.size(), packedLength);
+    }
+
+    /**
+     * Codes the first packedLength bytes of the packed data shards, and
+     * copies the parity out to the small stripes in [first, end), in the
+     * order they were packed.
+     */
+    private void codePacked(byte [] [] packed, byte [] [] outputs,
+                            List<byte [] []> stripes, int first, int end,
+                            int packedLength) {
+        if (packedLength == 0) {
+            return;
+        }
+        System.arraycopy(packed, dataShardCount, outputs, 0, parityShardCount);
+        codingLoop.codeSomeShards(
+                parityRows,
+                packed, dataShardCount,
+                outputs, parityShardCount,
+                0, packedLength);
+        int position = 0;
+        for (int s = first; s < end; s++) {
+            final byte [] [] shards = stripes.get(s);
+            final int shardLength = shards[0].length;
+            if (shardLength < PACKED_BATCH_SHARD_SIZE) {
+                for (int i = dataShardCount; i < totalShardCount; i++) {
+                    System.arraycopy(packed[i], position, shards[i], 0, shardLength);
+                }
+                position += shardLength;
+            }
+        }
+    }
+
+    /**
+     * Updates the parity shards after part of one data shard has been
+     * rewritten, without reading the other data shards.
+     *
+     * Parity is linear in the data, so the change to each parity shard
+     * is its matrix coefficient for the data shard times the change to
+     * the data: (old XOR new).  Only the changed data shard and the
+     * parity shards are touched, instead of all of the shards.
+     *
+     * @param shardIndex The index of the data shard that changed.
+     * @param oldBytes The previous contents of the data shard.
+     * @param newBytes The new contents of the data shard.
+     * @param parityShards The parity shards, which are updated in place.
+     * @param offset The index of the first byte that changed in each
+     *               of the buffers.
+     * @param byteCount The number of bytes to update.
+     */
+    public void updateParity(int shardIndex,
+                             byte [] oldBytes,
+                             byte [] newBytes,
+                             byte [] [] parityShards,
+                             int offset,
+                             int byteCount) {
+        // Check arguments.
+        if (shardIndex < 0 || dataShardCount <= shardIndex) {
+            throw new IllegalArgumentException("not a data shard: " + shardIndex);
+        }
+        if (parityShards.length != parityShardCount) {
+            throw new IllegalArgumentException("wrong number of parity shards: " + parityShards.length);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset is negative: " + offset);
+        }
+        if (byteCount < 0) {
+            throw new IllegalArgumentException("byteCount is negative: " + byteCount);
+        }
+        final int end = offset + byteCount;
+        if (oldBytes.length < end || newBytes.length < end) {
+            throw new IllegalArgumentException("buffers too small: " + (offset + byteCount));
+        }
+        for (byte [] parityShard : parityShards) {
+            if (parityShard.length < end) {
+                throw new IllegalArgumentException("buffers too small: " + (offset + byteCount));
+            }
+        }
+
+        // Add coefficient * (old XOR new) into each parity shard.
+        for (int iParity = 0; iParity < parityShardCount; iParity++) {
+            final byte [] parityShard = parityShards[iParity];
+            final byte coefficient = parityRows[iParity][shardIndex];
+            if (coefficient == 0) {
+                continue;
+            }
+            if (coefficient == 1) {
+                for (int iByte = offset; iByte < end; iByte++) {
+                    parityShard[iByte] ^= (byte) (oldBytes[iByte] ^ newBytes[iByte]);
+                }
+            }
+            else {
+                final byte [] multTableRow = Galois.MULTIPLICATION_TABLE[coefficient & 0xFF];
+                for (int iByte = offset; iByte < end; iByte++) {
+                    parityShard[iByte] ^= multTableRow[(oldBytes[iByte] ^ newBytes[iByte]) & 0xFF];
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes parity for a set of data shards held in ByteBuffers.
+     *
+     * The buffers are accessed by absolute index, so their positions
+     * don't matter and aren't changed.
+     *
+     * @param shards An array containing data shards followed by parity shards.
+     *               They must all have the same limit, and the parity
+     *               shards must be writable.
+     * @param offset The index of the first byte in each shard to encode.
+     * @param byteCount The number of bytes to encode in each shard.
+     */
+    public void encodeParity(ByteBuffer [] shards, int offset, int byteCount) {
+        // Check arguments.
+        checkBuffersAndSizes(shards, offset, byteCount);
+
+        // Build the array of output buffers.
+        ByteBuffer [] outputs = new ByteBuffer [parityShardCount];
+        System.arraycopy(shards, dataShardCount, outputs, 0, parityShardCount);
+
+        // Do the coding.
+        byteBufferCodingLoop.codeSomeShards(
+                parityRows,
+                shards, dataShardCount,
+                outputs, parityShardCount,
+                offset, byteCount);
+    }
+
     /**
      * Returns true if the parity shards contain the right data.
      *
@@ -162,6 +524,50 @@ public class ReedSolomon {
                 tempBuffer);
     }
 
+    /**
+     * Returns true if the parity shards held in ByteBuffers contain the
+     * right data.
+     *
+     * @param shards An array containing data shards followed by parity shards.
+     *               They must all have the same limit.
+     * @param firstByte The index of the first byte in each shard to check.
+     * @param byteCount The number of bytes to check in each shard.
+     */
+    public boolean isParityCorrect(ByteBuffer [] shards, int firstByte, int byteCount) {
+        return isParityCorrect(shards, firstByte, byteCount, null);
+    }
+
+    /**
+     * Returns true if the parity shards held in ByteBuffers contain the
+     * right data, using a temporary buffer to compute the parity.
+     *
+     * @param shards An array containing data shards followed by parity shards.
+     *               They must all have the same limit.
+     * @param firstByte The index of the first byte in each shard to check.
+     * @param byteCount The number of bytes to check in each shard.
+     * @param tempBuffer A writable temporary buffer, at least as big as
+     *                   each of the shards, or null.
+     */
+    public boolean isParityCorrect(ByteBuffer [] shards, int firstByte, int byteCount, ByteBuffer tempBuffer) {
+        // Check arguments.
+        checkBuffersAndSizes(shards, firstByte, byteCount);
+        if (tempBuffer != null && tempBuffer.limit() < firstByte + byteCount) {
+            throw new IllegalArgumentException("tempBuffer is not big enough");
+        }
+
+        // Build the array of buffers being checked.
+        ByteBuffer [] toCheck = new ByteBuffer [parityShardCount];
+        System.arraycopy(shards, dataShardCount, toCheck, 0, parityShardCount);
+
+        // Do the checking.
+        return byteBufferCodingLoop.checkSomeShards(
+                parityRows,
+                shards, dataShardCount,
+                toCheck, parityShardCount,
+                firstByte, byteCount,
+                tempBuffer);
+    }
+
     /**
      * Given a list of shards, some of which contain data, fills in the
      * ones that don't have data.
@@ -197,36 +603,25 @@ public class ReedSolomon {
             throw new IllegalArgumentException("Not enough shards present");
         }
 
-        // Pull out the rows of the matrix that correspond to the
-        // shards that we have and build a square matrix.  This
-        // matrix could be used to generate the shards that we have
-        // from the original data.
-        //
-        // Also, pull out an array holding just the shards that
-        // correspond to the rows of the submatrix.  These shards
-        // will be the input to the decoding process that re-creates
-        // the missing data shards.
-        Matrix subMatrix = new Matrix(dataShardCount, dataShardCount);
+        // Pull out an array holding just the first dataShardCount
+        // shards that we have.  These shards will be the input to the
+        // decoding process that re-creates the missing data shards.
         byte [] [] subShards = new byte [dataShardCount] [];
         {
             int subMatrixRow = 0;
             for (int matrixRow = 0; matrixRow < totalShardCount && subMatrixRow < dataShardCount; matrixRow++) {
                 if (shardPresent[matrixRow]) {
-                    for (int c = 0; c < dataShardCount; c++) {
-                        subMatrix.set(subMatrixRow, c, matrix.get(matrixRow, c));
-                    }
                     subShards[subMatrixRow] = shards[matrixRow];
                     subMatrixRow += 1;
                 }
             }
         }
 
-        // Invert the matrix, so we can go from the encoded shards
-        // back to the original data.  Then pull out the row that
-        // generates the shard that we want to decode.  Note that
-        // since this matrix maps back to the orginal data, it can
-        // be used to create a data shard, but not a parity shard.
-        Matrix dataDecodeMatrix = subMatrix.invert();
+        // Get the matrix that goes from the shards we have back to the
+        // original data.  Note that since this matrix maps back to the
+        // orginal data, it can be used to create a data shard, but not
+        // a parity shard.
+        byte [] [] dataDecodeRows = getDataDecodeRows(shardPresent);
 
         // Re-create any data shards that were missing.
         //
@@ -239,7 +634,7 @@ public class ReedSolomon {
         for (int iShard = 0; iShard < dataShardCount; iShard++) {
             if (!shardPresent[iShard]) {
                 outputs[outputCount] = shards[iShard];
-                matrixRows[outputCount] = dataDecodeMatrix.getRow(iShard);
+                matrixRows[outputCount] = dataDecodeRows[iShard];
                 outputCount += 1;
             }
         }
@@ -270,6 +665,326 @@ public class ReedSolomon {
                 offset, byteCount);
     }
 
+    /**
+     * Finds shards that have been silently corrupted, using the parity
+     * alone, and corrects them in place.
+     *
+     * Up to parityShardCount / 2 corrupt shards can be located; the
+     * corrupted bytes don't have to be at the same positions in each
+     * shard.  For each byte position whose parity doesn't match, the
+     * smallest set of shards that explains the mismatch is found (see
+     * SyndromeDecoder).  The shards found are then treated as missing,
+     * decoded, and the result is checked against the parity before
+     * anything is written back.
+     *
+     * @param shards An array containing data shards followed by parity shards.
+     * @param offset The index of the first byte in each shard to check.
+     * @param byteCount The number of bytes to check in each shard.
+     * @return The indexes of the shards that were corrected, in
+     *         increasing order.  Empty if the parity was correct.
+     * @throws IllegalArgumentException if the corruption can't be
+     *         located, because too many shards are corrupt.  The
+     *         shards are left unchanged.
+     */
+    public int [] correctErrors(byte [] [] shards, int offset, int byteCount) {
+        // Check arguments.
+        checkBuffersAndSizes(shards, offset, byteCount);
+
+        // Compute the syndromes: the stored parity minus the parity
+        // of the stored data.  They only cover the range being checked,
+        // so syndromes[r][iByte - offset] goes with byte iByte.  The
+        // coding loops write at the same index they read from, so the
+        // parity is computed here with the multiplication table.
+        final int shardLength = shards[0].length;
+        byte [] [] syndromes = new byte [parityShardCount] [byteCount];
+        for (int r = 0; r < parityShardCount; r++) {
+            final byte [] syndromeRow = syndromes[r];
+            System.arraycopy(shards[dataShardCount + r], offset, syndromeRow, 0, byteCount);
+            for (int c = 0; c < dataShardCount; c++) {
+                final byte [] multTableRow = Galois.MULTIPLICATION_TABLE[parityRows[r][c] & 0xFF];
+                final byte [] dataShard = shards[c];
+                for (int iByte = 0; iByte < byteCount; iByte++) {
+                    syndromeRow[iByte] ^= multTableRow[dataShard[offset + iByte] & 0xFF];
+                }
+            }
+        }
+
+        // Find the set of shards that explains every syndrome.
+        boolean [] corrupt = new boolean [totalShardCount];
+        int [] corruptShards = new int [0];
+        byte [] syndrome = new byte [parityShardCount];
+        for (int iByte = offset; iByte < offset + byteCount; iByte++) {
+            boolean zero = true;
+            for (int r = 0; r < parityShardCount; r++) {
+                syndrome[r] = syndromes[r][iByte - offset];
+                zero &= (syndrome[r] == 0);
+            }
+            if (zero || (0 < corruptShards.length && syndromeDecoder.explains(corruptShards, syndrome))) {
+                continue;
+            }
+            int [] found = syndromeDecoder.locate(syndrome);
+            if (found == null) {
+                throw new IllegalArgumentException("Too many corrupt shards to locate at byte " + iByte);
+            }
+            int count = 0;
+            for (int shardIndex : found) {
+                corrupt[shardIndex] = true;
+            }
+            for (int i = 0; i < totalShardCount; i++) {
+                if (corrupt[i]) {
+                    count += 1;
+                }
+            }
+            if (syndromeDecoder.getMaxErrors() < count) {
+                throw new IllegalArgumentException("Too many corrupt shards to locate: " + count);
+            }
+            corruptShards = new int [count];
+            count = 0;
+            for (int i = 0; i < totalShardCount; i++) {
+                if (corrupt[i]) {
+                    corruptShards[count++] = i;
+                }
+            }
+        }
+        if (corruptShards.length == 0) {
+            return corruptShards;
+        }
+
+        // Decode the corrupt shards into new buffers, and only write
+        // them back if the result is consistent.
+        byte [] [] repaired = shards.clone();
+        boolean [] shardPresent = new boolean [totalShardCount];
+        for (int i = 0; i < totalShardCount; i++) {
+            shardPresent[i] = !corrupt[i];
+            if (corrupt[i]) {
+                repaired[i] = new byte [shardLength];
+            }
+        }
+        decodeMissing(repaired, shardPresent, offset, byteCount);
+        if (!isParityCorrect(repaired, offset, byteCount)) {
+            throw new IllegalArgumentException("Corrupt shards could not be corrected");
+        }
+        for (int shardIndex : corruptShards) {
+            System.arraycopy(repaired[shardIndex], offset, shards[shardIndex], offset, byteCount);
+        }
+        return corruptShards;
+    }
+
+    /**
+     * Re-creates one missing shard, or part of one, leaving all of the
+     * other shards alone.
+     *
+     * A data shard is computed with just its row of the decode matrix
+     * (which is cached, like the one decodeMissing() uses).  A parity
+     * shard is computed straight from the shards that are present, with
+     * its parity row multiplied through the decode matrix, so the
+     * missing data shards don't have to be rebuilt first.
+     *
+     * @param shards An array holding the data shards followed by the
+     *               parity shards.  Shards that are missing may be
+     *               null, except for the one being re-created.
+     * @param shardPresent Which shards hold data.
+     * @param shardIndex The shard to re-create.  If it is present,
+     *                   nothing is done.
+     * @param offset The index of the first byte to re-create.
+     * @param byteCount The number of bytes to re-create.
+     */
+    public void reconstructShard(byte [] [] shards,
+                                 boolean [] shardPresent,
+                                 int shardIndex,
+                                 int offset,
+                                 int byteCount) {
+        // Check arguments.
+        if (shards.length != totalShardCount || shardPresent.length != totalShardCount) {
+            throw new IllegalArgumentException("wrong number of shards: " + shards.length);
+        }
+        if (shardIndex < 0 || totalShardCount <= shardIndex) {
+            throw new IllegalArgumentException("no such shard: " + shardIndex);
+        }
+        if (shardPresent[shardIndex]) {
+            return;
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset is negative: " + offset);
+        }
+        if (byteCount < 0) {
+            throw new IllegalArgumentException("byteCount is negative: " + byteCount);
+        }
+        final byte [] output = shards[shardIndex];
+        if (output == null || output.length < offset + byteCount) {
+            throw new IllegalArgumentException("buffers too small: " + (offset + byteCount));
+        }
+
+        // The first dataShardCount shards that we have are the input.
+        byte [] [] subShards = new byte [dataShardCount] [];
+        int subMatrixRow = 0;
+        for (int matrixRow = 0; matrixRow < totalShardCount && subMatrixRow < dataShardCount; matrixRow++) {
+            if (shardPresent[matrixRow]) {
+                if (shards[matrixRow].length != output.length) {
+                    throw new IllegalArgumentException("Shards are different sizes");
+                }
+                subShards[subMatrixRow] = shards[matrixRow];
+                subMatrixRow += 1;
+            }
+        }
+        if (subMatrixRow < dataShardCount) {
+            throw new IllegalArgumentException("Not enough shards present");
+        }
+
+        byte [] [] dataDecodeRows = getDataDecodeRows(shardPresent);
+        byte [] matrixRow;
+        if (shardIndex < dataShardCount) {
+            matrixRow = dataDecodeRows[shardIndex];
+        }
+        else {
+            // parity = parityRow * data = parityRow * (decode * present),
+            // so the row to apply to the present shards is
+            // parityRow * decode.
+            final byte [] parityRow = parityRows[shardIndex - dataShardCount];
+            matrixRow = new byte [dataShardCount];
+            for (int c = 0; c < dataShardCount; c++) {
+                byte value = 0;
+                for (int i = 0; i < dataShardCount; i++) {
+                    value ^= Galois.multiply(parityRow[i], dataDecodeRows[i][c]);
+                }
+                matrixRow[c] = value;
+            }
+        }
+
+        codingLoop.codeSomeShards(
+                new byte [] [] { matrixRow },
+                subShards, dataShardCount,
+                new byte [] [] { output }, 1,
+                offset, byteCount);
+    }
+
+    /**
+     * The same as decodeMissing() for byte arrays, with shards held in
+     * ByteBuffers.  The buffers for the missing shards must be writable.
+     */
+    public void decodeMissing(ByteBuffer [] shards,
+                              boolean [] shardPresent,
+                              final int offset,
+                              final int byteCount) {
+        // Check arguments.
+        checkBuffersAndSizes(shards, offset, byteCount);
+
+        // Quick check: are all of the shards present?  If so, there's
+        // nothing to do.
+        int numberPresent = 0;
+        for (int i = 0; i < totalShardCount; i++) {
+            if (shardPresent[i]) {
+                numberPresent += 1;
+            }
+        }
+        if (numberPresent == totalShardCount) {
+            return;
+        }
+
+        // More complete sanity check
+        if (numberPresent < dataShardCount) {
+            throw new IllegalArgumentException("Not enough shards present");
+        }
+
+        // The first dataShardCount shards that we have are the input
+        // to re-creating the missing data shards.
+        ByteBuffer [] subShards = new ByteBuffer [dataShardCount];
+        {
+            int subMatrixRow = 0;
+            for (int matrixRow = 0; matrixRow < totalShardCount && subMatrixRow < dataShardCount; matrixRow++) {
+                if (shardPresent[matrixRow]) {
+                    subShards[subMatrixRow] = shards[matrixRow];
+                    subMatrixRow += 1;
+                }
+            }
+        }
+        byte [] [] dataDecodeRows = getDataDecodeRows(shardPresent);
+
+        // Re-create any data shards that were missing.
+        ByteBuffer [] outputs = new ByteBuffer [parityShardCount];
+        byte [] [] matrixRows = new byte [parityShardCount] [];
+        int outputCount = 0;
+        for (int iShard = 0; iShard < dataShardCount; iShard++) {
+            if (!shardPresent[iShard]) {
+                outputs[outputCount] = shards[iShard];
+                matrixRows[outputCount] = dataDecodeRows[iShard];
+                outputCount += 1;
+            }
+        }
+        byteBufferCodingLoop.codeSomeShards(
+                matrixRows,
+                subShards, dataShardCount,
+                outputs, outputCount,
+                offset, byteCount);
+
+        // Now that we have all of the data shards intact, we can
+        // compute any of the parity that is missing.
+        outputCount = 0;
+        for (int iShard = dataShardCount; iShard < totalShardCount; iShard++) {
+            if (!shardPresent[iShard]) {
+                outputs[outputCount] = shards[iShard];
+                matrixRows[outputCount] = parityRows[iShard - dataShardCount];
+                outputCount += 1;
+            }
+        }
+        byteBufferCodingLoop.codeSomeShards(
+                matrixRows,
+                shards, dataShardCount,
+                outputs, outputCount,
+                offset, byteCount);
+    }
+
+    /**
+     * Returns the rows of the decode matrix for the given set of
+     * present shards, inverting it only the first time the erasure
+     * pattern is seen.
+     */
+    private byte [] [] getDataDecodeRows(boolean [] shardPresent) {
+        ShardPresence key = new ShardPresence(shardPresent, totalShardCount);
+        byte [] [] rows = decodeCache.get(key);
+        if (rows != null) {
+            decodeCacheHits.incrementAndGet();
+            return rows;
+        }
+        decodeCacheMisses.incrementAndGet();
+
+        // Pull out the rows of the matrix that correspond to the
+        // shards that we have and build a square matrix, flat, in
+        // this thread's scratch space.  This matrix could be used to
+        // generate the shards that we have from the original data.
+        DecodeScratch scratch = DECODE_SCRATCH.get();
+        scratch.ensureSize(dataShardCount);
+        final byte [] work = scratch.work;
+        int subMatrixRow = 0;
+        for (int matrixRow = 0; matrixRow < totalShardCount && subMatrixRow < dataShardCount; matrixRow++) {
+            if (shardPresent[matrixRow]) {
+                matrix.copyRow(matrixRow, work, subMatrixRow * dataShardCount);
+                subMatrixRow += 1;
+            }
+        }
+
+        // Invert the matrix in place, so we can go from the encoded
+        // shards back to the original data, and cut the rows out.
+        Matrix.invertInPlace(work, dataShardCount, scratch.pivotRows);
+        rows = new byte [dataShardCount] [];
+        for (int r = 0; r < dataShardCount; r++) {
+            rows[r] = Arrays.copyOfRange(work, r * dataShardCount, (r + 1) * dataShardCount);
+        }
+
+        // Keep the cache bounded.  When it's full, drop an arbitrary
+        // entry; a codec normally only sees a handful of patterns, so
+        // this only matters for very wide codes.
+        if (DECODE_CACHE_SIZE <= decodeCache.size()) {
+            Iterator<ShardPresence> iterator = decodeCache.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        decodeCache.put(key, rows);
+        return rows;
+    }
+
     /**
      * Checks the consistency of arguments passed to public methods.
      */
@@ -300,6 +1015,53 @@ public class ReedSolomon {
         }
     }
 
+    /**
+     * Checks the consistency of arguments passed to the ByteBuffer
+     * methods.  The limit of each buffer plays the part of the length
+     * of a byte array.
+     */
+    private void checkBuffersAndSizes(ByteBuffer [] shards, int offset, int byteCount) {
+        if (shards.length != totalShardCount) {
+            throw new IllegalArgumentException("wrong number of shards: " + shards.length);
+        }
+
+        int shardLength = shards[0].limit();
+        for (int i = 1; i < shards.length; i++) {
+            if (shards[i].limit() != shardLength) {
+                throw new IllegalArgumentException("Shards are different sizes");
+            }
+        }
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset is negative: " + offset);
+        }
+        if (byteCount < 0) {
+            throw new IllegalArgumentException("byteCount is negative: " + byteCount);
+        }
+        if (shardLength < offset + byteCount) {
+            throw new IllegalArgumentException("buffers too small: " + (offset + byteCount));
+        }
+    }
+
+    /**
+     * Picks the coding loop for create().
+     */
+    private static CodingLoop loadDefaultCodingLoop() {
+        if (!"false".equals(System.getProperty(USE_VECTOR_PROPERTY))) {
+            try {
+                return (CodingLoop) Class.forName(VECTOR_CODING_LOOP_CLASS).getDeclaredConstructor().newInstance();
+            }
+            catch (Exception e) {
+                // Not compiled in, or the vectors are too short.
+            }
+            catch (LinkageError e) {
+                // Compiled for a newer JDK, or the jdk.incubator.vector
+                // module wasn't added.
+            }
+        }
+        return new InputOutputByteTableCodingLoop();
+    }
+
     /**
      * Create the matrix to use for encoding, given the number of
      * data shards and the number of total shards.
@@ -308,7 +1070,20 @@ public class ReedSolomon {
      * matrix, which means that the data shards are unchanged after
      * encoding.
      */
-    private static Matrix buildMatrix(int dataShards, int totalShards) {
+    private static Matrix buildMatrix(int dataShards, int totalShards, MatrixType matrixType) {
+        switch (matrixType) {
+            case VANDERMONDE:
+                return buildVandermondeMatrix(dataShards, totalShards);
+            case CAUCHY:
+                return buildCauchyMatrix(dataShards, totalShards, false);
+            case OPTIMIZED_CAUCHY:
+                return buildCauchyMatrix(dataShards, totalShards, true);
+            default:
+                throw new IllegalArgumentException("unknown matrix type: " + matrixType);
+        }
+    }
+
+    private static Matrix buildVandermondeMatrix(int dataShards, int totalShards) {
         // Start with a Vandermonde matrix.  This matrix would work,
         // in theory, but doesn't have the property that the data
         // shards are unchanged after encoding.
@@ -322,6 +1097,87 @@ public class ReedSolomon {
         return vandermonde.times(top.invert());
     }
 
+    /**
+     * Builds the identity on top of a Cauchy matrix.
+     *
+     * The identity plus C has every square subset of rows invertible
+     * exactly when every square submatrix of C is, which holds for a
+     * Cauchy matrix, and still holds after multiplying any row or
+     * column of C by a non-zero value.
+     *
+     * @param optimize If true, scale the columns so that the first
+     *                 parity row is all ones, and each other parity
+     *                 row to the multiple with the lightest bit matrix.
+     */
+    private static Matrix buildCauchyMatrix(int dataShards, int totalShards, boolean optimize) {
+        final int parityShards = totalShards - dataShards;
+        Matrix result = new Matrix(totalShards, dataShards);
+        for (int c = 0; c < dataShards; c++) {
+            result.set(c, c, (byte) 1);
+        }
+
+        // Element (r, c) of C is 1 / (x_r + y_c), with x_r = dataShards + r
+        // and y_c = c.  These are all distinct field elements, so the
+        // sums are never zero.
+        byte [] [] cauchy = new byte [parityShards] [dataShards];
+        for (int r = 0; r < parityShards; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                byte sum = Galois.add((byte) (dataShards + r), (byte) c);
+                cauchy[r][c] = Galois.divide((byte) 1, sum);
+            }
+        }
+
+        if (optimize && 0 < parityShards) {
+            // Divide each column by its element in the first row.
+            for (int c = 0; c < dataShards; c++) {
+                byte scale = cauchy[0][c];
+                for (int r = 0; r < parityShards; r++) {
+                    cauchy[r][c] = Galois.divide(cauchy[r][c], scale);
+                }
+            }
+
+            // Multiply each other row by the factor that needs the
+            // fewest XORs.
+            for (int r = 1; r < parityShards; r++) {
+                int bestWeight = Integer.MAX_VALUE;
+                byte bestScale = 1;
+                for (int scale = 1; scale < Galois.FIELD_SIZE; scale++) {
+                    final byte [] multTableRow = Galois.MULTIPLICATION_TABLE[scale];
+                    int weight = 0;
+                    for (int c = 0; c < dataShards; c++) {
+                        weight += BIT_MATRIX_WEIGHTS[multTableRow[cauchy[r][c] & 0xFF] & 0xFF];
+                    }
+                    if (weight < bestWeight) {
+                        bestWeight = weight;
+                        bestScale = (byte) scale;
+                    }
+                }
+                for (int c = 0; c < dataShards; c++) {
+                    cauchy[r][c] = Galois.multiply(cauchy[r][c], bestScale);
+                }
+            }
+        }
+
+        for (int r = 0; r < parityShards; r++) {
+            for (int c = 0; c < dataShards; c++) {
+                result.set(dataShards + r, c, cauchy[r][c]);
+            }
+        }
+        return result;
+    }
+
+    private static int [] generateBitMatrixWeights() {
+        int [] result = new int [Galois.FIELD_SIZE];
+        for (int a = 0; a < Galois.FIELD_SIZE; a++) {
+            byte column = (byte) a;
+            for (int i = 0; i < 8; i++) {
+                result[a] += Integer.bitCount(column & 0xFF);
+                column = Galois.multiply(column, (byte) 2);
+            }
+        }
+        return result;
+    }
+
     /**
      * Create a Vandermonde matrix, which is guaranteed to have the
      * property that any subset of rows that forms a square matrix
@@ -340,4 +1196,46 @@ public class ReedSolomon {
         }
         return result;
     }
+
+    /**
+     * Bitmap of which shards are present, used as the key of the
+     * decode cache.
+     */
+    private static final class ShardPresence {
+        private final long [] words;
+
+        private ShardPresence(boolean [] shardPresent, int shardCount) {
+            words = new long [(shardCount + 63) / 64];
+            for (int i = 0; i < shardCount; i++) {
+                if (shardPresent[i]) {
+                    words[i >>> 6] |= 1L << (i & 63);
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ShardPresence && Arrays.equals(words, ((ShardPresence) other).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+    }
+
+    /**
+     * A thread's scratch space for getDataDecodeRows().
+     */
+    private static final class DecodeScratch {
+        private byte [] work = new byte [0];
+        private int [] pivotRows = new int [0];
+
+        void ensureSize(int size) {
+            if (pivotRows.length < size) {
+                work = new byte [size * size];
+                pivotRows = new int [size];
+            }
+        }
+    }
 }
@@ -0,0 +1,309 @@
+/**
+ * Reed-Solomon Coding over 16-bit values.
+ */
+
+package com.cw.storage.reedsolomon;
+
+/**
+ * Reed-Solomon Coding over 16-bit values.
+ *
+ * ReedSolomon works in GF(2^8), which limits a code to 256 shards.
+ * This class has the same API over GF(2^16), which allows up to 65536
+ * shards, for wide archive stripes.  Each pair of bytes in a shard is
+ * one symbol, so shard sizes, offsets and byte counts must be even.
+ *
+ * The encoding matrix is the identity on top of a Cauchy matrix with
+ * element 1 / (x_r + y_c), where x_r = dataShardCount + r and y_c = c.
+ * Building it doesn't need the dataShardCount x dataShardCount
+ * inversion that the Vandermonde construction does, which would take
+ * seconds for a thousand shards.  Decoding only has to invert a square
+ * as big as the number of missing data shards: with the present data
+ * shards known, the parity shards used in their place give that many
+ * equations in the missing ones, and every square submatrix of a
+ * Cauchy matrix is invertible.
+ *
+ * Multiplication goes through log and exp tables, so this is several
+ * times slower per byte than ReedSolomon.  Use it only for codes that
+ * don't fit in 256 shards.
+ */
+public class ReedSolomon16 {
+
+    /**
+     * The maximum number of shards in a code.
+     */
+    public static final int MAX_SHARD_COUNT = Galois16.FIELD_SIZE;
+
+    private final int dataShardCount;
+    private final int parityShardCount;
+    private final int totalShardCount;
+    private final CodingLoop16 codingLoop;
+
+    /**
+     * Rows from the matrix for encoding parity, each one as its own
+     * char array to allow for efficient access while encoding.
+     */
+    private final char [] [] parityRows;
+
+    /**
+     * Creates a ReedSolomon16 codec with the default coding loop.
+     */
+    public static ReedSolomon16 create(int dataShardCount, int parityShardCount) {
+        return new ReedSolomon16(dataShardCount, parityShardCount, new InputOutputSymbolCodingLoop16());
+    }
+
+    /**
+     * Initializes a new encoder/decoder, with a chosen coding loop.
+     */
+    public ReedSolomon16(int dataShardCount, int parityShardCount, CodingLoop16 codingLoop) {
+        if (dataShardCount <= 0 || parityShardCount < 0) {
+            throw new IllegalArgumentException("bad shard counts: " + dataShardCount + "+" + parityShardCount);
+        }
+        if (MAX_SHARD_COUNT < dataShardCount + parityShardCount) {
+            throw new IllegalArgumentException("too many shards - max is " + MAX_SHARD_COUNT);
+        }
+        this.dataShardCount = dataShardCount;
+        this.parityShardCount = parityShardCount;
+        this.totalShardCount = dataShardCount + parityShardCount;
+        this.codingLoop = codingLoop;
+
+        parityRows = new char [parityShardCount] [dataShardCount];
+        for (int r = 0; r < parityShardCount; r++) {
+            for (int c = 0; c < dataShardCount; c++) {
+                parityRows[r][c] = (char) cauchyElement(r, c);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of data shards.
+     */
+    public int getDataShardCount() {
+        return dataShardCount;
+    }
+
+    /**
+     * Returns the number of parity shards.
+     */
+    public int getParityShardCount() {
+        return parityShardCount;
+    }
+
+    /**
+     * Returns the total number of shards.
+     */
+    public int getTotalShardCount() {
+        return totalShardCount;
+    }
+
+    /**
+     * Encodes parity for a set of data shards.
+     *
+     * @param shards An array containing data shards followed by parity shards.
+     *               Each shard is a byte array, and they must all be the same
+     *               size.
+     * @param offset The index of the first byte in each shard to encode.
+     * @param byteCount The number of bytes to encode in each shard.
+     */
+    public void encodeParity(byte [] [] shards, int offset, int byteCount) {
+        // Check arguments.
+        checkBuffersAndSizes(shards, offset, byteCount);
+
+        // Build the array of output buffers.
+        byte [] [] outputs = new byte [parityShardCount] [];
+        System.arraycopy(shards, dataShardCount, outputs, 0, parityShardCount);
+
+        // Do the coding.
+        codingLoop.codeSomeShards(
+                parityRows,
+                shards, dataShardCount,
+                outputs, parityShardCount,
+                offset, byteCount);
+    }
+
+    /**
+     * Returns true if the parity shards contain the right data.
+     */
+    public boolean isParityCorrect(byte [] [] shards, int firstByte, int byteCount) {
+        return isParityCorrect(shards, firstByte, byteCount, null);
+    }
+
+    /**
+     * Returns true if the parity shards contain the right data, using
+     * a temporary buffer (the same size as each of the shards, or
+     * null) to compute the parity.
+     */
+    public boolean isParityCorrect(byte [] [] shards, int firstByte, int byteCount, byte [] tempBuffer) {
+        // Check arguments.
+        checkBuffersAndSizes(shards, firstByte, byteCount);
+        if (tempBuffer != null && tempBuffer.length < firstByte + byteCount) {
+            throw new IllegalArgumentException("tempBuffer is not big enough");
+        }
+
+        // Build the array of buffers being checked.
+        byte [] [] toCheck = new byte [parityShardCount] [];
+        System.arraycopy(shards, dataShardCount, toCheck, 0, parityShardCount);
+
+        // Do the checking.
+        return codingLoop.checkSomeShards(
+                parityRows,
+                shards, dataShardCount,
+                toCheck, parityShardCount,
+                firstByte, byteCount,
+                tempBuffer);
+    }
+
+    /**
+     * Given a list of shards, some of which contain data, fills in the
+     * ones that don't have data.
+     *
+     * Quickly does nothing if all of the shards are present.
+     *
+     * @param shards The data and parity shards.  The missing ones must
+     *               be allocated, and are overwritten.
+     * @param shardPresent Which shards hold data.
+     * @param offset The index of the first byte in each shard to decode.
+     * @param byteCount The number of bytes to decode in each shard.
+     */
+    public void decodeMissing(byte [] [] shards,
+                              boolean [] shardPresent,
+                              final int offset,
+                              final int byteCount) {
+        // Check arguments.
+        checkBuffersAndSizes(shards, offset, byteCount);
+
+        int numberPresent = 0;
+        for (int i = 0; i < totalShardCount; i++) {
+            if (shardPresent[i]) {
+                numberPresent += 1;
+            }
+        }
+        if (numberPresent == totalShardCount) {
+            return;
+        }
+        if (numberPresent < dataShardCount) {
+            throw new IllegalArgumentException("Not enough shards present");
+        }
+
+        // Which data shards are missing, and which parity shards will
+        // stand in for them.
+        int missingCount = 0;
+        int [] missingData = new int [dataShardCount];
+        for (int i = 0; i < dataShardCount; i++) {
+            if (!shardPresent[i]) {
+                missingData[missingCount++] = i;
+            }
+        }
+
+        if (0 < missingCount) {
+            int [] standIns = new int [missingCount];
+            for (int i = dataShardCount, found = 0; found < missingCount; i++) {
+                if (shardPresent[i]) {
+                    standIns[found++] = i - dataShardCount;
+                }
+            }
+
+            // Parity p = sum over present data d of C[p][d] * d, plus
+            // sum over missing data j of C[p][j] * j.  So with M being
+            // C restricted to the stand-in rows and missing columns:
+            //
+            //     missing = inv(M) * (standIns + C[standIns][present] * present)
+            //
+            // which is one row of coefficients over the stand-in parity
+            // shards and the present data shards for each missing shard.
+            Matrix16 m = new Matrix16(missingCount, missingCount);
+            for (int r = 0; r < missingCount; r++) {
+                for (int c = 0; c < missingCount; c++) {
+                    m.set(r, c, parityRows[standIns[r]][missingData[c]]);
+                }
+            }
+            Matrix16 inverse = m.invert();
+
+            byte [] [] inputs = new byte [dataShardCount] [];
+            char [] [] decodeRows = new char [missingCount] [dataShardCount];
+            int inputCount = 0;
+            for (int d = 0; d < dataShardCount; d++) {
+                if (shardPresent[d]) {
+                    for (int r = 0; r < missingCount; r++) {
+                        int value = 0;
+                        for (int p = 0; p < missingCount; p++) {
+                            value ^= Galois16.multiply(inverse.get(r, p), parityRows[standIns[p]][d]);
+                        }
+                        decodeRows[r][inputCount] = (char) value;
+                    }
+                    inputs[inputCount++] = shards[d];
+                }
+            }
+            for (int p = 0; p < missingCount; p++) {
+                for (int r = 0; r < missingCount; r++) {
+                    decodeRows[r][inputCount] = (char) inverse.get(r, p);
+                }
+                inputs[inputCount++] = shards[dataShardCount + standIns[p]];
+            }
+
+            byte [] [] outputs = new byte [missingCount] [];
+            for (int r = 0; r < missingCount; r++) {
+                outputs[r] = shards[missingData[r]];
+            }
+            codingLoop.codeSomeShards(
+                    decodeRows,
+                    inputs, dataShardCount,
+                    outputs, missingCount,
+                    offset, byteCount);
+        }
+
+        // Now that we have all of the data shards intact, we can
+        // compute any of the parity that is missing.
+        byte [] [] outputs = new byte [parityShardCount] [];
+        char [] [] matrixRows = new char [parityShardCount] [];
+        int outputCount = 0;
+        for (int iShard = dataShardCount; iShard < totalShardCount; iShard++) {
+            if (!shardPresent[iShard]) {
+                outputs[outputCount] = shards[iShard];
+                matrixRows[outputCount] = parityRows[iShard - dataShardCount];
+                outputCount += 1;
+            }
+        }
+        codingLoop.codeSomeShards(
+                matrixRows,
+                shards, dataShardCount,
+                outputs, outputCount,
+                offset, byteCount);
+    }
+
+    /**
+     * Element (r, c) of the Cauchy part of the encoding matrix.  x_r and
+     * y_c are distinct field elements, so their sum is never zero.
+     */
+    private int cauchyElement(int r, int c) {
+        return Galois16.divide(1, Galois16.add(dataShardCount + r, c));
+    }
+
+    /**
+     * Checks the consistency of arguments passed to public methods.
+     */
+    private void checkBuffersAndSizes(byte [] [] shards, int offset, int byteCount) {
+        if (shards.length != totalShardCount) {
+            throw new IllegalArgumentException("wrong number of shards: " + shards.length);
+        }
+
+        int shardLength = shards[0].length;
+        for (int i = 1; i < shards.length; i++) {
+            if (shards[i].length != shardLength) {
+                throw new IllegalArgumentException("Shards are different sizes");
+            }
+        }
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset is negative: " + offset);
+        }
+        if (byteCount < 0) {
+            throw new IllegalArgumentException("byteCount is negative: " + byteCount);
+        }
+        if ((offset % 2) != 0 || (byteCount % 2) != 0) {
+            throw new IllegalArgumentException("offset and byteCount must be even: " + offset + ", " + byteCount);
+        }
+        if (shardLength < offset + byteCount) {
+            throw new IllegalArgumentException("buffers too small: " + (offset + byteCount));
+        }
+    }
+}
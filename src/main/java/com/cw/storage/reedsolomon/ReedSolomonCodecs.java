@@ -0,0 +1,131 @@
+/**
+ * Shared registry of Reed-Solomon codecs.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared registry of Reed-Solomon codecs.
+ *
+ * Building a codec builds a Vandermonde matrix, inverts its top
+ * square and copies out the parity rows.  None of that depends on the
+ * data being coded, and a ReedSolomon never changes after it has been
+ * constructed, so one instance per (data, parity, coding loop, matrix
+ * type) shape can be shared by every caller and every thread.
+ *
+ * Coding loops are compared by identity, so callers that want their
+ * codec to be shared should pass the same coding loop instance each
+ * time (for example, one from CodingLoop.ALL_CODING_LOOPS).
+ */
+public final class ReedSolomonCodecs {
+
+    private static final ConcurrentMap<Shape, ReedSolomon> CODECS = new ConcurrentHashMap<Shape, ReedSolomon>();
+
+    private ReedSolomonCodecs() {
+    }
+
+    /**
+     * Returns the shared codec for the given shape, using the same
+     * coding loop as ReedSolomon.create().
+     */
+    public static ReedSolomon forShape(int dataShardCount, int parityShardCount) {
+        return forShape(dataShardCount, parityShardCount, ReedSolomon.getDefaultCodingLoop());
+    }
+
+    /**
+     * Returns the shared codec for the given shape and coding loop,
+     * building it the first time it is asked for.
+     */
+    public static ReedSolomon forShape(int dataShardCount, int parityShardCount, CodingLoop codingLoop) {
+        return forShape(dataShardCount, parityShardCount, codingLoop, MatrixType.VANDERMONDE);
+    }
+
+    /**
+     * Returns the shared codec for the given shape, coding loop and
+     * matrix type, building it the first time it is asked for.
+     */
+    public static ReedSolomon forShape(int dataShardCount, int parityShardCount, CodingLoop codingLoop, MatrixType matrixType) {
+        if (codingLoop == null) {
+            throw new IllegalArgumentException("codingLoop is null");
+        }
+        if (matrixType == null) {
+            throw new IllegalArgumentException("matrixType is null");
+        }
+        Shape shape = new Shape(dataShardCount, parityShardCount, codingLoop, matrixType);
+        ReedSolomon codec = CODECS.get(shape);
+        if (codec == null) {
+            ReedSolomon created = new ReedSolomon(dataShardCount, parityShardCount, codingLoop, matrixType);
+            codec = CODECS.putIfAbsent(shape, created);
+            if (codec == null) {
+                codec = created;
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * Returns the shared codec for the given shape, using the coding
+     * loop that CodingLoopTuner found fastest for shards of bufferSize
+     * bytes.  The first call for a shape may take a second or two to
+     * calibrate, unless the tuning profile already has it.
+     */
+    public static ReedSolomon tuned(int dataShardCount, int parityShardCount, int bufferSize) {
+        CodingLoop codingLoop = CodingLoopTuner.select(dataShardCount, parityShardCount, bufferSize).getCodingLoop();
+        return forShape(dataShardCount, parityShardCount, codingLoop);
+    }
+
+    /**
+     * Returns the number of codecs currently held by the registry.
+     */
+    public static int size() {
+        return CODECS.size();
+    }
+
+    /**
+     * Drops every cached codec.  Codecs already handed out keep working.
+     */
+    public static void clear() {
+        CODECS.clear();
+    }
+
+    /**
+     * Key for the registry.
+     */
+    private static final class Shape {
+        private final int dataShardCount;
+        private final int parityShardCount;
+        private final CodingLoop codingLoop;
+        private final MatrixType matrixType;
+
+        private Shape(int dataShardCount, int parityShardCount, CodingLoop codingLoop, MatrixType matrixType) {
+            this.dataShardCount = dataShardCount;
+            this.parityShardCount = parityShardCount;
+            this.codingLoop = codingLoop;
+            this.matrixType = matrixType;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Shape)) {
+                return false;
+            }
+            Shape that = (Shape) other;
+            return dataShardCount == that.dataShardCount &&
+                    parityShardCount == that.parityShardCount &&
+                    codingLoop == that.codingLoop &&
+                    matrixType == that.matrixType;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = dataShardCount;
+            result = 31 * result + parityShardCount;
+            result = 31 * result + System.identityHashCode(codingLoop);
+            result = 31 * result + matrixType.hashCode();
+            return result;
+        }
+    }
+}
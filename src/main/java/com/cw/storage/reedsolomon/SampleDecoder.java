@@ -6,9 +6,8 @@
 
 package com.cw.storage.reedsolomon;
 
-import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.file.Files;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Command-line program that decodes a file using Reed-Solomon 4+2.
@@ -16,7 +15,7 @@ import java.nio.file.Files;
  * The file name given should be the name of the file to decode, say
  * "foo.txt".  This program will expected to find "foo.txt.0" through
  * "foo.txt.5", with at most two missing.  It will then write
- * "foo.txt.decoded".
+ * "foo.txt.decoded".  Missing shard files are re-created on the way.
  */
 public class SampleDecoder {
 
@@ -24,9 +23,6 @@ public class SampleDecoder {
     public static final int PARITY_SHARDS = 1;
     public static final int TOTAL_SHARDS = 3;
 
-    public static final int BYTES_IN_INT = 4;
-
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public static void main(String [] arguments) throws IOException {
 
 //        // Parse the command line
@@ -40,25 +36,15 @@ public class SampleDecoder {
             return;
         }
 
-        // Read in any of the shards that are present.
-        // (There should be checking here to make sure the input
-        // shards are the same size, but there isn't.)
-        final byte [] [] shards = new byte [TOTAL_SHARDS] [];
-        final boolean [] shardPresent = new boolean [TOTAL_SHARDS];
-        int shardSize = 0;
+        // Use Reed-Solomon to fill in any missing shards and write
+        // the decoded file.
+        ReedSolomon reedSolomon = ReedSolomon.create(DATA_SHARDS, PARITY_SHARDS);
+        MappedShardCodec shardCodec = new MappedShardCodec(reedSolomon);
+        File [] shardFiles = shardCodec.shardFiles(originalFile);
         int shardCount = 0;
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            File shardFile = new File(
-                    originalFile.getParentFile(),
-                    originalFile.getName() + "." + i);
+        for (File shardFile : shardFiles) {
             if (shardFile.exists()) {
-                shardSize = (int) shardFile.length();
-                shards[i] = new byte [shardSize];
-                shardPresent[i] = true;
                 shardCount += 1;
-                InputStream in = Files.newInputStream(shardFile.toPath());
-                in.read(shards[i], 0, shardSize);
-                in.close();
                 System.out.println("Read " + shardFile);
             }
         }
@@ -69,31 +55,8 @@ public class SampleDecoder {
             return;
         }
 
-        // Make empty buffers for the missing shards.
-        for (int i = 0; i < TOTAL_SHARDS; i++) {
-            if (!shardPresent[i]) {
-                shards[i] = new byte [shardSize];
-            }
-        }
-
-        // Use Reed-Solomon to fill in the missing shards
-        ReedSolomon reedSolomon = ReedSolomon.create(DATA_SHARDS, PARITY_SHARDS);
-        reedSolomon.decodeMissing(shards, shardPresent, 0, shardSize);
-
-        // Combine the data shards into one buffer for convenience.
-        // (This is not efficient, but it is convenient.)
-        byte [] allBytes = new byte [shardSize * DATA_SHARDS];
-        for (int i = 0; i < DATA_SHARDS; i++) {
-            System.arraycopy(shards[i], 0, allBytes, shardSize * i, shardSize);
-        }
-
-        // Extract the file length
-        int fileSize = ByteBuffer.wrap(allBytes).getInt();
-
-        // Write the decoded file
         File decodedFile = new File(originalFile.getParentFile(), originalFile.getName() + ".decoded");
-        OutputStream out = Files.newOutputStream(decodedFile.toPath());
-        out.write(allBytes, BYTES_IN_INT, fileSize);
+        shardCodec.decode(shardFiles, decodedFile);
         System.out.println("Wrote " + decodedFile);
     }
 }
@@ -0,0 +1,255 @@
+/**
+ * Reed-Solomon coding of streams, one stripe at a time.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reed-Solomon coding of streams, one stripe at a time.
+ *
+ * SampleEncoder reads the whole input into one byte array, which limits
+ * it to 2 GB and makes memory grow with the size of the input.  This
+ * class instead reads the input a stripe at a time: chunkSize bytes for
+ * each data shard, encodes the parity for them, and appends one chunk to
+ * each of the shard streams.  The buffers for a stripe come from a small
+ * pool, so memory use depends only on the chunk size and the number of
+ * calls running at once, no matter how big the input is.
+ *
+ * The data shards of a stripe hold the payload in order, except for the
+ * last four bytes of the last data shard, which hold the number of
+ * payload bytes in the stripe.  Every stripe but the last one is full.
+ * The last stripe is the one that isn't full, which may mean it holds no
+ * payload at all, so the end of the data is always marked explicitly and
+ * a truncated set of shard streams can be told apart from a complete one.
+ */
+public class StreamingReedSolomon {
+
+    /**
+     * Default number of bytes of each shard in one stripe.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Default number of idle stripe buffers to keep.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    private static final int BYTES_IN_INT = 4;
+
+    private final ReedSolomon codec;
+    private final int chunkSize;
+    private final int payloadPerStripe;
+    private final BlockingQueue<byte [] []> stripePool;
+
+    /**
+     * Makes a streaming codec with the default chunk and pool sizes.
+     */
+    public StreamingReedSolomon(ReedSolomon codec) {
+        this(codec, DEFAULT_CHUNK_SIZE, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Makes a streaming codec.
+     *
+     * @param codec The codec used for each stripe.
+     * @param chunkSize The number of bytes of each shard in one stripe.
+     * @param poolSize The number of idle stripe buffers to keep for reuse.
+     */
+    public StreamingReedSolomon(ReedSolomon codec, int chunkSize, int poolSize) {
+        // Each stripe has to carry at least one byte of payload besides
+        // its length, or encode() would never get through the input.
+        long payload = (long) codec.getDataShardCount() * chunkSize - BYTES_IN_INT;
+        if (chunkSize < BYTES_IN_INT || payload <= 0) {
+            throw new IllegalArgumentException("chunkSize is too small: " + chunkSize);
+        }
+        if (Integer.MAX_VALUE < payload) {
+            throw new IllegalArgumentException("chunkSize is too large: " + chunkSize);
+        }
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        this.codec = codec;
+        this.chunkSize = chunkSize;
+        this.payloadPerStripe = (int) payload;
+        this.stripePool = new ArrayBlockingQueue<byte [] []>(poolSize);
+    }
+
+    /**
+     * Returns the number of bytes of each shard in one stripe.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Reads all of the input and writes data and parity shards to the
+     * given streams, one per shard.  The streams are not closed.
+     *
+     * @return The number of bytes read from the input.
+     */
+    public long encode(InputStream in, OutputStream [] shardOutputs) throws IOException {
+        if (shardOutputs.length != codec.getTotalShardCount()) {
+            throw new IllegalArgumentException("wrong number of shard outputs: " + shardOutputs.length);
+        }
+        final int dataShardCount = codec.getDataShardCount();
+        final int totalShardCount = codec.getTotalShardCount();
+        byte [] [] shards = takeStripe();
+        try {
+            long totalRead = 0;
+            while (true) {
+                // Fill the data shards with as much payload as we can get.
+                int stripeRead = 0;
+                for (int i = 0; i < dataShardCount && stripeRead < payloadPerStripe; i++) {
+                    int wanted = Math.min(chunkSize, payloadPerStripe - stripeRead);
+                    int got = readFully(in, shards[i], 0, wanted);
+                    Arrays.fill(shards[i], got, chunkSize, (byte) 0);
+                    stripeRead += got;
+                    if (got < wanted) {
+                        for (int j = i + 1; j < dataShardCount; j++) {
+                            Arrays.fill(shards[j], (byte) 0);
+                        }
+                        break;
+                    }
+                }
+                ByteBuffer.wrap(shards[dataShardCount - 1]).putInt(chunkSize - BYTES_IN_INT, stripeRead);
+                totalRead += stripeRead;
+
+                codec.encodeParity(shards, 0, chunkSize);
+                for (int i = 0; i < totalShardCount; i++) {
+                    shardOutputs[i].write(shards[i], 0, chunkSize);
+                }
+
+                if (stripeRead < payloadPerStripe) {
+                    return totalRead;
+                }
+            }
+        }
+        finally {
+            releaseStripe(shards);
+        }
+    }
+
+    /**
+     * Same as encode(InputStream, OutputStream[]), reading from a channel.
+     */
+    public long encode(ReadableByteChannel in, OutputStream [] shardOutputs) throws IOException {
+        return encode(Channels.newInputStream(in), shardOutputs);
+    }
+
+    /**
+     * Reads the shard streams that are present and writes the original
+     * data to out.  Missing shards are given as null; at least as many
+     * as the data shard count must be present.  The streams are not
+     * closed.
+     *
+     * @return The number of bytes written.
+     */
+    public long decode(InputStream [] shardInputs, OutputStream out) throws IOException {
+        final int dataShardCount = codec.getDataShardCount();
+        final int totalShardCount = codec.getTotalShardCount();
+        if (shardInputs.length != totalShardCount) {
+            throw new IllegalArgumentException("wrong number of shard inputs: " + shardInputs.length);
+        }
+        final boolean [] shardPresent = new boolean [totalShardCount];
+        int presentCount = 0;
+        for (int i = 0; i < totalShardCount; i++) {
+            if (shardInputs[i] != null) {
+                shardPresent[i] = true;
+                presentCount += 1;
+            }
+        }
+        if (presentCount < dataShardCount) {
+            throw new IllegalArgumentException("Not enough shards present");
+        }
+
+        byte [] [] shards = takeStripe();
+        try {
+            long totalWritten = 0;
+            while (true) {
+                for (int i = 0; i < totalShardCount; i++) {
+                    if (shardPresent[i] && readFully(shardInputs[i], shards[i], 0, chunkSize) != chunkSize) {
+                        throw new EOFException("shard " + i + " ends before the last stripe");
+                    }
+                }
+                codec.decodeMissing(shards, shardPresent, 0, chunkSize);
+
+                int stripePayload = ByteBuffer.wrap(shards[dataShardCount - 1]).getInt(chunkSize - BYTES_IN_INT);
+                if (stripePayload < 0 || payloadPerStripe < stripePayload) {
+                    throw new IOException("corrupt stripe length: " + stripePayload);
+                }
+                int remaining = stripePayload;
+                for (int i = 0; i < dataShardCount && 0 < remaining; i++) {
+                    int count = Math.min(chunkSize, remaining);
+                    out.write(shards[i], 0, count);
+                    remaining -= count;
+                }
+                totalWritten += stripePayload;
+
+                if (stripePayload < payloadPerStripe) {
+                    return totalWritten;
+                }
+            }
+        }
+        finally {
+            releaseStripe(shards);
+        }
+    }
+
+    /**
+     * Same as decode(InputStream[], OutputStream), using channels.
+     * Missing shards are given as null.
+     */
+    public long decode(ReadableByteChannel [] shardInputs, WritableByteChannel out) throws IOException {
+        InputStream [] streams = new InputStream [shardInputs.length];
+        for (int i = 0; i < shardInputs.length; i++) {
+            if (shardInputs[i] != null) {
+                streams[i] = Channels.newInputStream(shardInputs[i]);
+            }
+        }
+        OutputStream outStream = Channels.newOutputStream(out);
+        long result = decode(streams, outStream);
+        outStream.flush();
+        return result;
+    }
+
+    private byte [] [] takeStripe() {
+        byte [] [] stripe = stripePool.poll();
+        if (stripe == null) {
+            stripe = new byte [codec.getTotalShardCount()] [chunkSize];
+        }
+        return stripe;
+    }
+
+    private void releaseStripe(byte [] [] stripe) {
+        // If the pool is already full, the buffers are just dropped.
+        stripePool.offer(stripe);
+    }
+
+    /**
+     * Reads until the buffer has count bytes or the stream ends, and
+     * returns the number of bytes read.
+     */
+    private static int readFully(InputStream in, byte [] buffer, int offset, int count) throws IOException {
+        int total = 0;
+        while (total < count) {
+            int got = in.read(buffer, offset + total, count - total);
+            if (got < 0) {
+                break;
+            }
+            total += got;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Finds corrupt shards from parity syndromes.
+ */
+
+package com.cw.storage.reedsolomon;
+
+/**
+ * Finds corrupt shards from parity syndromes.
+ *
+ * For a code with parity rows P (m x k), the parity check matrix is
+ * H = [P | I], and the syndrome of a byte position is H times the
+ * column of shard bytes at that position: the stored parity minus the
+ * parity recomputed from the stored data.  It is zero for a consistent
+ * column, and if shards E were corrupted by errors x, it is H_E * x,
+ * where H_E is the columns of H for the shards in E.
+ *
+ * Any 2t columns of H are independent when t <= m / 2, so the smallest
+ * set E that explains a syndrome is unique, and is the set of shards
+ * that were corrupted.  It is found by trying every set of up to t
+ * shards, smallest first, and solving H_E * x = s by Gaussian
+ * elimination.  That's C(n, t) small solves, which is fine for the
+ * parity counts used in practice.
+ */
+final class SyndromeDecoder {
+
+    private final int parityShardCount;
+    private final int totalShardCount;
+
+    /**
+     * Column i of H, for each shard i.
+     */
+    private final byte [] [] columns;
+
+    SyndromeDecoder(byte [] [] parityRows, int dataShardCount) {
+        this.parityShardCount = parityRows.length;
+        this.totalShardCount = dataShardCount + parityShardCount;
+        columns = new byte [totalShardCount] [parityShardCount];
+        for (int r = 0; r < parityShardCount; r++) {
+            for (int c = 0; c < dataShardCount; c++) {
+                columns[c][r] = parityRows[r][c];
+            }
+            columns[dataShardCount + r][r] = 1;
+        }
+    }
+
+    /**
+     * Returns the number of corrupt shards that can be located:
+     * floor(m / 2).
+     */
+    int getMaxErrors() {
+        return parityShardCount / 2;
+    }
+
+    /**
+     * Returns the smallest set of at most getMaxErrors() shards that
+     * explains the syndrome, in increasing order, or null if there is
+     * none.
+     */
+    int [] locate(byte [] syndrome) {
+        for (int size = 1; size <= getMaxErrors(); size++) {
+            int [] support = new int [size];
+            for (int i = 0; i < size; i++) {
+                support[i] = i;
+            }
+            do {
+                if (explains(support, syndrome)) {
+                    return support;
+                }
+            } while (nextCombination(support, totalShardCount));
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if errors in just the given shards could produce the
+     * syndrome: if H_E * x = s has a solution.
+     */
+    boolean explains(int [] support, byte [] syndrome) {
+        final int unknowns = support.length;
+
+        // Augmented matrix [H_E | s], one row per parity row.
+        byte [] [] work = new byte [parityShardCount] [unknowns + 1];
+        for (int r = 0; r < parityShardCount; r++) {
+            for (int c = 0; c < unknowns; c++) {
+                work[r][c] = columns[support[c]][r];
+            }
+            work[r][unknowns] = syndrome[r];
+        }
+
+        // Reduce to row echelon form.
+        int pivotRow = 0;
+        for (int c = 0; c < unknowns && pivotRow < parityShardCount; c++) {
+            int found = pivotRow;
+            while (found < parityShardCount && work[found][c] == 0) {
+                found += 1;
+            }
+            if (found == parityShardCount) {
+                continue;
+            }
+            byte [] tmp = work[found];
+            work[found] = work[pivotRow];
+            work[pivotRow] = tmp;
+
+            byte scale = Galois.divide((byte) 1, work[pivotRow][c]);
+            for (int i = c; i <= unknowns; i++) {
+                work[pivotRow][i] = Galois.multiply(work[pivotRow][i], scale);
+            }
+            for (int r = 0; r < parityShardCount; r++) {
+                if (r != pivotRow && work[r][c] != 0) {
+                    byte factor = work[r][c];
+                    for (int i = c; i <= unknowns; i++) {
+                        work[r][i] ^= Galois.multiply(factor, work[pivotRow][i]);
+                    }
+                }
+            }
+            pivotRow += 1;
+        }
+
+        // Consistent if no remaining row says 0 = non-zero.
+        for (int r = pivotRow; r < parityShardCount; r++) {
+            if (work[r][unknowns] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Steps to the next combination of indexes below n, in
+     * lexicographic order.  Returns false after the last one.
+     */
+    private static boolean nextCombination(int [] combination, int n) {
+        int k = combination.length;
+        int i = k - 1;
+        while (0 <= i && combination[i] == n - k + i) {
+            i -= 1;
+        }
+        if (i < 0) {
+            return false;
+        }
+        combination[i] += 1;
+        for (int j = i + 1; j < k; j++) {
+            combination[j] = combination[j - 1] + 1;
+        }
+        return true;
+    }
+}
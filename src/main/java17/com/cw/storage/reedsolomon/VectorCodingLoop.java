@@ -0,0 +1,102 @@
+/**
+ * Coding loop using the JDK 17 Vector API.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Same loop nesting as InputOutputByteNibbleCodingLoop, but each step
+ * of the byte loop handles a whole SIMD register of bytes.
+ *
+ * The input bytes are split into low and high nibbles, and each nibble
+ * is used as a shuffle index into a vector holding the 16 products of
+ * the coefficient with every possible nibble (the tables in
+ * Galois.LOW_NIBBLE_TABLE and Galois.HIGH_NIBBLE_TABLE).  On x86 this
+ * compiles to PSHUFB, which is how ISA-L does GF(2^8) multiplication.
+ *
+ * This class is compiled only by the "vector" Maven profile (JDK 17+),
+ * and needs "--add-modules jdk.incubator.vector" at run time.
+ * ReedSolomon.create() uses it when it can be loaded, and falls back to
+ * InputOutputByteTableCodingLoop otherwise.
+ */
+public class VectorCodingLoop extends CodingLoopBase {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    /**
+     * The nibble tables, repeated to fill one vector, so that they can
+     * be loaded with fromArray().
+     */
+    private static final byte [] [] LOW_NIBBLE_VECTORS = repeatToVectorLength(Galois.LOW_NIBBLE_TABLE);
+    private static final byte [] [] HIGH_NIBBLE_VECTORS = repeatToVectorLength(Galois.HIGH_NIBBLE_TABLE);
+
+    public VectorCodingLoop() {
+        // The shuffle indexes go up to 15, so we need at least 16 lanes.
+        if (SPECIES.length() < 16) {
+            throw new UnsupportedOperationException("vectors are too short: " + SPECIES);
+        }
+    }
+
+    @Override
+    public void codeSomeShards(
+            byte[][] matrixRows,
+            byte[][] inputs, int inputCount,
+            byte[][] outputs, int outputCount,
+            int offset, int byteCount) {
+
+        final int vectorEnd = offset + SPECIES.loopBound(byteCount);
+        final int end = offset + byteCount;
+
+        for (int iInput = 0; iInput < inputCount; iInput++) {
+            final byte[] inputShard = inputs[iInput];
+            final boolean first = (iInput == 0);
+            for (int iOutput = 0; iOutput < outputCount; iOutput++) {
+                final byte[] outputShard = outputs[iOutput];
+                final int coefficient = matrixRows[iOutput][iInput] & 0xFF;
+                final ByteVector lowTable = ByteVector.fromArray(SPECIES, LOW_NIBBLE_VECTORS[coefficient], 0);
+                final ByteVector highTable = ByteVector.fromArray(SPECIES, HIGH_NIBBLE_VECTORS[coefficient], 0);
+                int iByte = offset;
+                for (; iByte < vectorEnd; iByte += SPECIES.length()) {
+                    ByteVector product = multiply(ByteVector.fromArray(SPECIES, inputShard, iByte), lowTable, highTable);
+                    if (!first) {
+                        product = product.lanewise(VectorOperators.XOR, ByteVector.fromArray(SPECIES, outputShard, iByte));
+                    }
+                    product.intoArray(outputShard, iByte);
+                }
+
+                // Leftover bytes at the end.
+                final byte[] lowRow = Galois.LOW_NIBBLE_TABLE[coefficient];
+                final byte[] highRow = Galois.HIGH_NIBBLE_TABLE[coefficient];
+                for (; iByte < end; iByte++) {
+                    final int value = inputShard[iByte];
+                    final byte product = (byte) (lowRow[value & 0x0F] ^ highRow[(value >> 4) & 0x0F]);
+                    outputShard[iByte] = first ? product : (byte) (outputShard[iByte] ^ product);
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies every lane of input by the coefficient whose nibble
+     * tables are given.
+     */
+    private static ByteVector multiply(ByteVector input, ByteVector lowTable, ByteVector highTable) {
+        ByteVector low = input.and((byte) 0x0F);
+        ByteVector high = input.lanewise(VectorOperators.LSHR, 4);
+        return low.selectFrom(lowTable).lanewise(VectorOperators.XOR, high.selectFrom(highTable));
+    }
+
+    private static byte [] [] repeatToVectorLength(byte [] [] nibbleTable) {
+        byte [] [] result = new byte [nibbleTable.length] [SPECIES.length()];
+        for (int a = 0; a < nibbleTable.length; a++) {
+            for (int i = 0; i < SPECIES.length(); i++) {
+                result[a][i] = nibbleTable[a][i % 16];
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package com.cw.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @ClassName : LogStructuredShardStoreTest
+ * @Description : LogStructuredShardStore 的重启恢复和压缩。
+ * 末尾写到一半的记录被截掉，文件中间的损坏拒绝打开；压缩后的日志能继续追加，重启后内容不变。
+ */
+public class LogStructuredShardStoreTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void reopenRebuildsIndex() throws IOException {
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 2)) {
+            store.put(0, "a", "k", bytes("one"));
+            store.put(0, "a", "k", bytes("two"));
+            store.put(0, "b", "k", bytes("three"));
+            store.put(1, "a", "k", bytes("four"));
+            Assertions.assertTrue(store.delete(0, "b", "k"));
+        }
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 2)) {
+            Assertions.assertArrayEquals(bytes("two"), store.get(0, "a", "k"));
+            Assertions.assertNull(store.get(0, "b", "k"));
+            Assertions.assertArrayEquals(bytes("four"), store.get(1, "a", "k"));
+        }
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        long goodSize;
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            store.put(0, "a", "k", bytes("one"));
+            store.put(0, "b", "k", bytes("two"));
+            goodSize = store.getLogSize(0);
+        }
+        // 崩溃时最后一条记录只写了一半
+        ByteBuffer record = ShardRecords.encode(ShardRecords.PUT, "c", "k", bytes("three"));
+        appendToLog(record.array(), record.limit() / 2);
+
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            Assertions.assertEquals(goodSize, logFile().length());
+            Assertions.assertArrayEquals(bytes("one"), store.get(0, "a", "k"));
+            Assertions.assertArrayEquals(bytes("two"), store.get(0, "b", "k"));
+            Assertions.assertNull(store.get(0, "c", "k"));
+            store.put(0, "c", "k", bytes("again"));
+        }
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            Assertions.assertArrayEquals(bytes("again"), store.get(0, "c", "k"));
+        }
+    }
+
+    @Test
+    public void badCrcInLastRecordIsTruncated() throws IOException {
+        long goodSize;
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            store.put(0, "a", "k", bytes("one"));
+            goodSize = store.getLogSize(0);
+            store.put(0, "b", "k", bytes("two"));
+        }
+        flipByte(logFile().length() - ShardRecords.CRC_LENGTH - 1);
+
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            Assertions.assertEquals(goodSize, logFile().length());
+            Assertions.assertArrayEquals(bytes("one"), store.get(0, "a", "k"));
+            Assertions.assertNull(store.get(0, "b", "k"));
+        }
+    }
+
+    @Test
+    public void midFileCorruptionRefusesToOpen() throws IOException {
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            store.put(0, "a", "k", bytes("one"));
+            store.put(0, "a", "k", bytes("two"));
+            store.put(0, "b", "k", bytes("three"));
+        }
+        long size = logFile().length();
+        // 第一条记录的分片里翻转一位，后面的记录都是好的
+        flipByte(ShardRecords.shardOffset(1, 1));
+
+        IOException e = Assertions.assertThrows(IOException.class, () -> new LogStructuredShardStore(directory, 1));
+        Assertions.assertTrue(e.getMessage().contains("corrupt"), e.getMessage());
+        Assertions.assertEquals(size, logFile().length());
+
+        // 记录开头的 magic 坏了也一样
+        flipByte(ShardRecords.shardOffset(1, 1));
+        flipByte(0);
+        Assertions.assertThrows(IOException.class, () -> new LogStructuredShardStore(directory, 1));
+        Assertions.assertEquals(size, logFile().length());
+    }
+
+    @Test
+    public void compactKeepsLiveShards() throws IOException {
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            for (int i = 0; i < 100; i++) {
+                store.put(0, "g" + (i % 10), "k", bytes("value-" + i));
+            }
+            store.put(0, "gone", "k", bytes("deleted"));
+            store.delete(0, "gone", "k");
+            long before = store.getLogSize(0);
+
+            store.compact(0);
+
+            Assertions.assertTrue(store.getLogSize(0) < before);
+            Assertions.assertEquals(store.getLogSize(0), logFile().length());
+            Assertions.assertFalse(new File(directory, "db-0.log.compact").exists());
+            for (int g = 0; g < 10; g++) {
+                Assertions.assertArrayEquals(bytes("value-" + (90 + g)), store.get(0, "g" + g, "k"));
+            }
+            Assertions.assertNull(store.get(0, "gone", "k"));
+            // 压缩后的日志继续追加
+            store.put(0, "g0", "k", bytes("after"));
+        }
+        try (LogStructuredShardStore store = new LogStructuredShardStore(directory, 1)) {
+            Assertions.assertArrayEquals(bytes("after"), store.get(0, "g0", "k"));
+            Assertions.assertArrayEquals(bytes("value-99"), store.get(0, "g9", "k"));
+            Assertions.assertNull(store.get(0, "gone", "k"));
+        }
+    }
+
+    private File logFile() {
+        return new File(directory, "db-0.log");
+    }
+
+    private void appendToLog(byte[] data, int length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(logFile(), "rw")) {
+            file.seek(file.length());
+            file.write(data, 0, length);
+        }
+    }
+
+    private void flipByte(long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(logFile(), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x01);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+package com.cw.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @ClassName : MappedSegmentShardStoreTest
+ * @Description : MappedSegmentShardStore 的重启恢复。
+ * 每个段放两条 100 字节分片的记录：最后一段末尾写到一半的记录被清零，段中间或前面段里的损坏拒绝打开。
+ */
+public class MappedSegmentShardStoreTest {
+
+    private static final int SEGMENT_SIZE = 256;
+    private static final int RECORD_LENGTH = ShardRecords.encode(ShardRecords.PUT, "g0", "k", new byte[100]).limit();
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void reopenRebuildsIndexAcrossSegments() throws IOException {
+        writeFiveShards();
+        MappedSegmentShardStore store = open();
+        Assertions.assertEquals(3, store.getSegmentCount(0));
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertArrayEquals(shard(i), store.get(0, "g" + i, "k"));
+        }
+        store.close();
+    }
+
+    @Test
+    public void tornTailOfLastSegmentIsCleared() throws IOException {
+        writeFiveShards();
+        // 第 6 条记录只写了一半，落在最后一段第一条记录之后
+        ByteBuffer torn = ShardRecords.encode(ShardRecords.PUT, "g5", "k", shard(5));
+        writeSegment(2, RECORD_LENGTH, Arrays.copyOf(torn.array(), torn.limit() / 2));
+
+        MappedSegmentShardStore store = open();
+        Assertions.assertArrayEquals(shard(4), store.get(0, "g4", "k"));
+        Assertions.assertNull(store.get(0, "g5", "k"));
+        store.put(0, "g5", "k", shard(5));
+        store.close();
+
+        store = open();
+        Assertions.assertArrayEquals(shard(5), store.get(0, "g5", "k"));
+        store.close();
+    }
+
+    @Test
+    public void damageBeforeAGoodRecordRefusesToOpen() throws IOException {
+        writeFiveShards();
+        // 最后一段只有一条记录，先补一条，再弄坏它前面那条
+        MappedSegmentShardStore store = open();
+        store.put(0, "g5", "k", shard(5));
+        store.close();
+        flipByte(2, ShardRecords.shardOffset(2, 1));
+
+        IOException e = Assertions.assertThrows(IOException.class, this::open);
+        Assertions.assertTrue(e.getMessage().contains("corrupt"), e.getMessage());
+    }
+
+    @Test
+    public void damageInEarlierSegmentRefusesToOpen() throws IOException {
+        writeFiveShards();
+        // 第一段的最后一条记录，它之后这一段再没有记录
+        flipByte(0, RECORD_LENGTH + ShardRecords.shardOffset(2, 1));
+
+        IOException e = Assertions.assertThrows(IOException.class, this::open);
+        Assertions.assertTrue(e.getMessage().contains("not the last segment"), e.getMessage());
+    }
+
+    /**
+     * 写 g0..g4，每段两条，共三段
+     */
+    private void writeFiveShards() throws IOException {
+        MappedSegmentShardStore store = open();
+        for (int i = 0; i < 5; i++) {
+            store.put(0, "g" + i, "k", shard(i));
+        }
+        store.close();
+    }
+
+    private MappedSegmentShardStore open() throws IOException {
+        return new MappedSegmentShardStore(directory, 1, SEGMENT_SIZE, false);
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, "db-0.seg-" + segment);
+    }
+
+    private void writeSegment(int segment, long position, byte[] data) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "rw")) {
+            file.seek(position);
+            file.write(data);
+        }
+    }
+
+    private void flipByte(int segment, long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x01);
+        }
+    }
+
+    private static byte[] shard(int i) {
+        byte[] shard = new byte[100];
+        Arrays.fill(shard, (byte) (i + 1));
+        System.arraycopy(("shard-" + i).getBytes(StandardCharsets.UTF_8), 0, shard, 0, 7);
+        return shard;
+    }
+}
@@ -0,0 +1,81 @@
+package com.cw.storage;
+
+import com.cw.enums.KeyTypeEnum;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+/**
+ * @ClassName : StorageSystemPlacementTest
+ * @Description : 数据库个数或 k+m 布局改变之后读已有的数据。
+ * 分片里的位置标记让挪了位置的分片仍能按原来的序号解码，按别的布局写的分片被认出来而不是解码成错误的数据。
+ */
+public class StorageSystemPlacementTest {
+
+    private static final int GROUPS = 200;
+
+    @Test
+    public void addingADataBaseKeepsValuesReadable() {
+        InMemoryShardStore three = new InMemoryShardStore(3);
+        StorageSystem before = new StorageSystem(three);
+        for (int g = 0; g < GROUPS; g++) {
+            before.put(value(g), group(g), KeyTypeEnum.PUB_KEY);
+        }
+
+        // 同样的三个数据库再加一个空的：环会给大部分 key 换节点、换分片序号
+        InMemoryShardStore four = new InMemoryShardStore(4);
+        for (int i = 0; i < 3; i++) {
+            final int dataBase = i;
+            three.scan(i, (group, keyType) -> four.put(dataBase, group, keyType, three.get(dataBase, group, keyType)));
+        }
+        StorageSystem after = new StorageSystem(four);
+        for (int g = 0; g < GROUPS; g++) {
+            // 2+1 放在 4 个节点上，环选出的 3 个节点里至少有 2 个是原来的
+            Assertions.assertEquals(value(g), get(after, g));
+        }
+
+        // 重新写入后读到的是新值，旧节点上留下的分片不会混进来
+        for (int g = 0; g < GROUPS; g++) {
+            after.put(value(g) + "-new", group(g), KeyTypeEnum.PUB_KEY);
+        }
+        for (int g = 0; g < GROUPS; g++) {
+            Assertions.assertEquals(value(g) + "-new", get(after, g));
+        }
+        Assertions.assertEquals(0, after.getCorruptShardCount());
+    }
+
+    @Test
+    public void changingTheLayoutIsNotMisread() {
+        InMemoryShardStore store = new InMemoryShardStore(6);
+        StorageSystem twoPlusOne = new StorageSystem(store);
+        for (int g = 0; g < GROUPS; g++) {
+            twoPlusOne.put(value(g), group(g), KeyTypeEnum.PUB_KEY);
+        }
+
+        StorageSystem fourPlusTwo = new StorageSystem(store, new ShardLayout(4, 2), Collections.emptyMap());
+        for (int g = 0; g < GROUPS; g++) {
+            Assertions.assertEquals("insufficient", get(fourPlusTwo, g));
+        }
+        Assertions.assertEquals(0, fourPlusTwo.getCorruptShardCount());
+
+        for (int g = 0; g < GROUPS; g++) {
+            fourPlusTwo.put(value(g), group(g), KeyTypeEnum.PUB_KEY);
+        }
+        for (int g = 0; g < GROUPS; g++) {
+            Assertions.assertEquals(value(g), get(fourPlusTwo, g));
+        }
+    }
+
+    private static String get(StorageSystem storage, int g) {
+        return storage.get(null, group(g), KeyTypeEnum.PUB_KEY.getType(), null, null);
+    }
+
+    private static String group(int g) {
+        return "group-" + g;
+    }
+
+    private static String value(int g) {
+        return "public-key-" + g + "-" + Integer.toHexString(g * 0x9E3779B1);
+    }
+}
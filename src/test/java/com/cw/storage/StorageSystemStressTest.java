@@ -0,0 +1,201 @@
+package com.cw.storage;
+
+import com.cw.enums.KeyTypeEnum;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName : StorageSystemStressTest
+ * @Description : StorageSystem 的多线程压力测试，依次测内存、日志（带预写日志）和内存映射三种后端。
+ * 每个线程在共享的组上混合 get / put / recover，在自己独占的组上 putAll：
+ * 1. 每个值都能由它的前缀重新生成，get 读到拼错的分条（各分片来自不同的写入）就会发现；
+ * 2. 结束时每个独占组的值必须是它的线程最后写入的值，否则就是丢了写入。
+ * 线程数和每种后端的秒数可以用 -Dstress.threads、-Dstress.seconds 调大。
+ */
+public class StorageSystemStressTest {
+
+    private static final int SHARED_GROUPS = 64;
+    private static final int PRIVATE_GROUPS_PER_THREAD = 8;
+
+    private final int threadCount = Integer.getInteger("stress.threads", 16);
+    private final long durationMillis = Long.getLong("stress.seconds", 2) * 1000;
+    private final AtomicLong failures = new AtomicLong();
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void inMemoryStore() throws Exception {
+        run("memory");
+    }
+
+    @Test
+    public void logStructuredStoreWithWriteAheadLog() throws Exception {
+        run("log");
+    }
+
+    @Test
+    public void mappedSegmentStore() throws Exception {
+        run("mapped");
+    }
+
+    private void run(String store) throws Exception {
+        ShardStore shardStore;
+        StorageSystem storage;
+        WriteAheadLog writeAheadLog = null;
+        switch (store) {
+            case "memory":
+                shardStore = new InMemoryShardStore(3);
+                storage = new StorageSystem(shardStore);
+                break;
+            case "log":
+                shardStore = new LogStructuredShardStore(directory, 3);
+                writeAheadLog = new WriteAheadLog(new File(directory, "wal.log"));
+                storage = new StorageSystem(shardStore, writeAheadLog);
+                break;
+            case "mapped":
+                shardStore = new MappedSegmentShardStore(directory, 3, 1024 * 1024, false);
+                storage = new StorageSystem(shardStore);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown store: " + store);
+        }
+
+        for (int g = 0; g < SHARED_GROUPS; g++) {
+            storage.put(value("init-" + g, 0), sharedGroup(g), KeyTypeEnum.PUB_KEY);
+        }
+
+        AtomicLong operations = new AtomicLong();
+        long deadline = System.currentTimeMillis() + durationMillis;
+        String[][] lastWritten = new String[threadCount][PRIVATE_GROUPS_PER_THREAD * KeyTypeEnum.values().length];
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            final StorageSystem system = storage;
+            threads.add(new Thread(() -> work(system, thread, deadline, lastWritten[thread], operations), "stress-" + t));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // 没有丢失的写入：独占组的值都是各自线程最后写入的
+        for (int t = 0; t < threadCount; t++) {
+            for (int g = 0; g < PRIVATE_GROUPS_PER_THREAD; g++) {
+                for (KeyTypeEnum keyType : KeyTypeEnum.values()) {
+                    String expected = lastWritten[t][g * KeyTypeEnum.values().length + keyType.ordinal()];
+                    if (expected == null || KeyTypeEnum.isPriKey(keyType.getType())) {
+                        continue;
+                    }
+                    String actual = storage.get(null, privateGroup(t, g), keyType.getType(), null, null);
+                    if (!expected.equals(actual)) {
+                        fail("lost write in " + privateGroup(t, g) + ": expected " + prefix(expected) + ", got " + prefix(actual));
+                    }
+                }
+            }
+        }
+        System.out.println(String.format("%-6s %2d threads: %10.0f ops/s, %d checksum failures", store, threadCount,
+                operations.get() / seconds, storage.getCorruptShardCount()));
+
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+        }
+        shardStore.close();
+        Assertions.assertEquals(0, failures.get(), "torn reads, lost writes or accepted wrong recoveries");
+        Assertions.assertEquals(0, storage.getCorruptShardCount(), "checksum failures");
+    }
+
+    private void work(StorageSystem storage, int thread, long deadline, String[] lastWritten, AtomicLong operations) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long sequence = 0;
+        long done = 0;
+        while (System.currentTimeMillis() < deadline) {
+            int op = random.nextInt(10);
+            String group = sharedGroup(random.nextInt(SHARED_GROUPS));
+            if (op < 5) {
+                String read = storage.get(null, group, KeyTypeEnum.PUB_KEY.getType(), null, null);
+                if (!wellFormed(read)) {
+                    fail("torn read in " + group + ": " + prefix(read));
+                }
+            } else if (op < 8) {
+                storage.put(value(thread + "-" + sequence, sequence), group, KeyTypeEnum.PUB_KEY);
+            } else if (op < 9) {
+                // 用刚读到的值恢复：期间被别人覆盖时可能失败，但不能写坏
+                String read = storage.get(null, group, KeyTypeEnum.PUB_KEY.getType(), null, null);
+                storage.recover(read, group, KeyTypeEnum.PUB_KEY);
+                if (storage.recover(value("wrong", sequence), group, KeyTypeEnum.PUB_KEY)) {
+                    fail("recover accepted a wrong value in " + group);
+                }
+            } else {
+                int g = random.nextInt(PRIVATE_GROUPS_PER_THREAD);
+                Map<KeyTypeEnum, String> keys = new EnumMap<>(KeyTypeEnum.class);
+                for (KeyTypeEnum keyType : KeyTypeEnum.values()) {
+                    String v = value(thread + "-" + sequence + "-" + keyType.getType(), sequence);
+                    keys.put(keyType, v);
+                    lastWritten[g * KeyTypeEnum.values().length + keyType.ordinal()] = v;
+                }
+                storage.putAll(keys, privateGroup(thread, g));
+            }
+            sequence += 1;
+            done += 1;
+        }
+        operations.addAndGet(done);
+    }
+
+    private void fail(String message) {
+        if (failures.incrementAndGet() <= 10) {
+            System.out.println(message);
+        }
+    }
+
+    private static String sharedGroup(int g) {
+        return "shared-" + g;
+    }
+
+    private static String privateGroup(int thread, int g) {
+        return "private-" + thread + "-" + g;
+    }
+
+    /**
+     * 前缀 + "|" + 由前缀决定的内容，长度随 sequence 变化，所以不同写入的分片大小也不同
+     */
+    private static String value(String prefix, long sequence) {
+        String pattern = Integer.toHexString(prefix.hashCode());
+        StringBuilder value = new StringBuilder(prefix).append('|');
+        int length = 16 + (int) (sequence % 200);
+        for (int i = 0; i < length; i++) {
+            value.append(pattern.charAt(i % pattern.length()));
+        }
+        return value.toString();
+    }
+
+    private static boolean wellFormed(String value) {
+        int bar = value.indexOf('|');
+        if (bar < 0) {
+            return false;
+        }
+        String body = value.substring(bar + 1);
+        String pattern = Integer.toHexString(value.substring(0, bar).hashCode());
+        for (int i = 0; i < body.length(); i++) {
+            if (body.charAt(i) != pattern.charAt(i % pattern.length())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String prefix(String value) {
+        return value == null || value.length() <= 40 ? value : value.substring(0, 40) + "...";
+    }
+}
@@ -0,0 +1,166 @@
+package com.cw.storage;
+
+import com.cw.enums.KeyTypeEnum;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @ClassName : WriteAheadLogTest
+ * @Description : WriteAheadLog 的重放、截断和组提交，以及 StorageSystem 启动时从日志重放没写进数据库的分条。
+ */
+public class WriteAheadLogTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void replayReturnsRecordsInOrder() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            wal.appendAndSync(bytes("one"));
+            wal.appendAndSync(new byte[0]);
+            wal.appendAndSync(bytes("three"));
+        }
+        long size = walFile().length();
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            Assertions.assertEquals(3, wal.replay(record -> { }));
+            Assertions.assertEquals(size, wal.size());
+        }
+        Assertions.assertEquals(Arrays.asList("one", "", "three"), replay());
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        long goodSize;
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            wal.appendAndSync(bytes("one"));
+            wal.appendAndSync(bytes("two"));
+            goodSize = wal.size();
+            wal.appendAndSync(bytes("three"));
+        }
+        // 崩溃时最后一条记录只写了一半
+        try (RandomAccessFile file = new RandomAccessFile(walFile(), "rw")) {
+            file.setLength(goodSize + 6);
+        }
+
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            List<String> replayed = new ArrayList<>();
+            Assertions.assertEquals(2, wal.replay(record -> replayed.add(string(record))));
+            Assertions.assertEquals(Arrays.asList("one", "two"), replayed);
+            Assertions.assertEquals(goodSize, walFile().length());
+            // 新记录接在最后一条完整记录之后
+            wal.appendAndSync(bytes("four"));
+        }
+        Assertions.assertEquals(Arrays.asList("one", "two", "four"), replay());
+    }
+
+    @Test
+    public void badCrcIsTruncated() throws IOException {
+        long goodSize;
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            wal.appendAndSync(bytes("one"));
+            goodSize = wal.size();
+            wal.appendAndSync(bytes("two"));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(walFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0x01);
+        }
+        Assertions.assertEquals(Arrays.asList("one"), replay());
+        Assertions.assertEquals(goodSize, walFile().length());
+    }
+
+    @Test
+    public void truncateEmptiesTheLog() throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            wal.appendAndSync(bytes("one"));
+            wal.truncate();
+            Assertions.assertEquals(0, wal.size());
+            Assertions.assertEquals(0, walFile().length());
+            wal.appendAndSync(bytes("two"));
+        }
+        Assertions.assertEquals(Arrays.asList("two"), replay());
+    }
+
+    @Test
+    public void concurrentAppendsShareSyncs() throws Exception {
+        final int threads = 8;
+        final int perThread = 50;
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                writers.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        try {
+                            wal.appendAndSync(bytes(thread + "-" + i));
+                        } catch (IOException e) {
+                            throw new AssertionError(e);
+                        }
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            Assertions.assertTrue(wal.getSyncCount() <= threads * perThread);
+        }
+        Assertions.assertEquals(threads * perThread, replay().size());
+    }
+
+    @Test
+    public void storageSystemReplaysStripesMissingFromTheStore() throws IOException {
+        File first = new File(directory, "first");
+        File second = new File(directory, "second");
+        Assertions.assertTrue(first.mkdir() && second.mkdir());
+        File crashedWal = new File(second, "wal.log");
+        try (LogStructuredShardStore store = new LogStructuredShardStore(first, 3);
+             WriteAheadLog wal = new WriteAheadLog(new File(first, "wal.log"))) {
+            StorageSystem storage = new StorageSystem(store, wal);
+            storage.put("public-key-value", "group", KeyTypeEnum.PUB_KEY);
+            // 日志已落盘，数据库却没写进去：用一份日志配一个空数据库来模拟
+            Files.copy(new File(first, "wal.log").toPath(), crashedWal.toPath());
+        }
+        Assertions.assertTrue(crashedWal.length() > 0);
+
+        try (LogStructuredShardStore store = new LogStructuredShardStore(second, 3);
+             WriteAheadLog wal = new WriteAheadLog(crashedWal)) {
+            StorageSystem storage = new StorageSystem(store, wal);
+            Assertions.assertEquals("public-key-value", storage.get(null, "group", KeyTypeEnum.PUB_KEY.getType(), null, null));
+            // 重放后做过 checkpoint，日志已清空
+            Assertions.assertEquals(0, wal.size());
+        }
+    }
+
+    private File walFile() {
+        return new File(directory, "wal.log");
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(walFile())) {
+            wal.replay(record -> replayed.add(string(record)));
+        }
+        return replayed;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
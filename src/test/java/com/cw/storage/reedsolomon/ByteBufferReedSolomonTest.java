@@ -0,0 +1,119 @@
+/**
+ * Tests for the ByteBuffer overloads of ReedSolomon.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The ByteBuffer overloads must give exactly the same shards as the
+ * byte[] ones, for heap and direct buffers, with coding loops that have
+ * their own ByteBuffer loop (InputOutputByteSwarCodingLoop) and ones
+ * that fall back to the default buffer loop.
+ */
+public class ByteBufferReedSolomonTest {
+
+    private static final CodingLoop [] CODING_LOOPS = {
+            new InputOutputByteTableCodingLoop(),
+            new InputOutputByteSwarCodingLoop(),
+            new OutputInputByteExpCodingLoop(),
+    };
+
+    private static final int [] [] SHAPES = {{2, 1}, {4, 2}, {10, 4}, {17, 3}};
+
+    // Sizes around the 8-byte words of the SWAR loop.
+    private static final int [] SHARD_SIZES = {1, 7, 8, 13, 1000, 4099};
+
+    @Test
+    public void buffersMatchByteArrays() {
+        Random random = new Random(2);
+        for (CodingLoop codingLoop : CODING_LOOPS) {
+            for (int [] shape : SHAPES) {
+                for (int shardSize : SHARD_SIZES) {
+                    for (boolean direct : new boolean [] {false, true}) {
+                        check(random, new ReedSolomon(shape[0], shape[1], codingLoop), shardSize, direct);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsShortTempBuffer() {
+        ReedSolomon codec = ReedSolomon.create(4, 2);
+        ByteBuffer [] shards = new ByteBuffer [6];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = ByteBuffer.allocate(100);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> codec.isParityCorrect(shards, 0, 100, ByteBuffer.allocate(99)));
+    }
+
+    private static void check(Random random, ReedSolomon codec, int shardSize, boolean direct) {
+        final int dataShardCount = codec.getDataShardCount();
+        final int totalShardCount = codec.getTotalShardCount();
+        final String context = codec.getDataShardCount() + "+" + codec.getParityShardCount() +
+                " size " + shardSize + (direct ? " direct" : " heap");
+        final int offset = 3 < shardSize ? 3 : 0;
+        final int byteCount = shardSize - offset;
+
+        byte [] [] expected = new byte [totalShardCount] [shardSize];
+        for (int i = 0; i < dataShardCount; i++) {
+            random.nextBytes(expected[i]);
+        }
+        codec.encodeParity(expected, offset, byteCount);
+
+        // The positions of the buffers don't matter and must not change.
+        ByteBuffer [] shards = new ByteBuffer [totalShardCount];
+        for (int i = 0; i < totalShardCount; i++) {
+            shards[i] = direct ? ByteBuffer.allocateDirect(shardSize) : ByteBuffer.allocate(shardSize);
+            if (i < dataShardCount) {
+                shards[i].put(expected[i]);
+                shards[i].position(5 % shardSize);
+            }
+        }
+        codec.encodeParity(shards, offset, byteCount);
+        assertShardsEqual(expected, shards, offset, context + " encode");
+        Assertions.assertEquals(5 % shardSize, shards[0].position(), context);
+
+        Assertions.assertTrue(codec.isParityCorrect(shards, offset, byteCount), context);
+        Assertions.assertTrue(codec.isParityCorrect(shards, offset, byteCount, ByteBuffer.allocateDirect(shardSize)), context);
+        flip(shards[totalShardCount - 1], shardSize - 1);
+        Assertions.assertFalse(codec.isParityCorrect(shards, offset, byteCount), context);
+        Assertions.assertFalse(codec.isParityCorrect(shards, offset, byteCount, ByteBuffer.allocate(shardSize)), context);
+        flip(shards[totalShardCount - 1], shardSize - 1);
+
+        // Erase as many shards as there are parity shards.
+        boolean [] present = new boolean [totalShardCount];
+        Arrays.fill(present, true);
+        for (int e = 0; e < codec.getParityShardCount(); e++) {
+            int missing = (e * 5 + 1) % totalShardCount;
+            present[missing] = false;
+            for (int j = 0; j < shardSize; j++) {
+                shards[missing].put(j, (byte) 0);
+            }
+        }
+        codec.decodeMissing(shards, present, offset, byteCount);
+        assertShardsEqual(expected, shards, offset, context + " decode");
+    }
+
+    private static void flip(ByteBuffer buffer, int index) {
+        buffer.put(index, (byte) (buffer.get(index) ^ 1));
+    }
+
+    private static void assertShardsEqual(byte [] [] expected, ByteBuffer [] actual, int offset, String context) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = offset; j < expected[i].length; j++) {
+                if (expected[i][j] != actual[i].get(j)) {
+                    Assertions.fail(context + ": shard " + i + " byte " + j);
+                }
+            }
+        }
+    }
+}
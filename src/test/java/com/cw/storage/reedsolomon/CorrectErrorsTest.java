@@ -0,0 +1,140 @@
+/**
+ * Tests for ReedSolomon.correctErrors() and SyndromeDecoder.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class CorrectErrorsTest {
+
+    private static final int [] [] SHAPES = {{2, 2}, {4, 2}, {10, 4}, {6, 6}, {17, 3}};
+
+    @Test
+    public void cleanShardsAreLeftAlone() {
+        ReedSolomon codec = ReedSolomon.create(10, 4);
+        byte [] [] shards = encodedShards(codec, new Random(1), 200);
+        byte [] [] copy = copy(shards);
+        Assertions.assertEquals(0, codec.correctErrors(shards, 0, 200).length);
+        assertShardsEqual(copy, shards, "clean");
+    }
+
+    @Test
+    public void locatesAndCorrectsUpToHalfTheParity() {
+        Random random = new Random(8);
+        for (MatrixType matrixType : MatrixType.values()) {
+            for (int [] shape : SHAPES) {
+                ReedSolomon codec = new ReedSolomon(shape[0], shape[1], new InputOutputByteTableCodingLoop(), matrixType);
+                int maxErrors = shape[1] / 2;
+                int shardSize = 300;
+                byte [] [] shards = encodedShards(codec, random, shardSize);
+                for (int trial = 0; trial < 100; trial++) {
+                    // Nonzero offsets check that only the range is used.
+                    int offset = trial % 2 == 0 ? 0 : 1 + random.nextInt(100);
+                    int byteCount = 1 + random.nextInt(shardSize - offset);
+                    byte [] [] damaged = copy(shards);
+                    TreeSet<Integer> corrupted = corrupt(damaged, random, 1 + random.nextInt(maxErrors), offset, byteCount);
+
+                    int [] corrected = codec.correctErrors(damaged, offset, byteCount);
+                    String context = matrixType + " " + shape[0] + "+" + shape[1] + " trial " + trial;
+                    Assertions.assertEquals(new ArrayList<Integer>(corrupted), toList(corrected), context);
+                    assertShardsEqual(shards, damaged, context);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void ignoresBytesOutsideTheRange() {
+        ReedSolomon codec = ReedSolomon.create(4, 2);
+        byte [] [] shards = encodedShards(codec, new Random(2), 100);
+        byte [] [] damaged = copy(shards);
+        damaged[1][5] ^= 1;
+        damaged[3][90] ^= 1;
+        Assertions.assertEquals(0, codec.correctErrors(damaged, 10, 80).length);
+        Assertions.assertEquals(shards[1][5] ^ 1, damaged[1][5]);
+    }
+
+    @Test
+    public void tooManyErrorsAreRejectedOrConsistent() {
+        Random random = new Random(4);
+        for (int [] shape : SHAPES) {
+            ReedSolomon codec = ReedSolomon.create(shape[0], shape[1]);
+            byte [] [] shards = encodedShards(codec, random, 200);
+            for (int trial = 0; trial < 100; trial++) {
+                byte [] [] damaged = copy(shards);
+                corrupt(damaged, random, shape[1] / 2 + 1, 0, 200);
+                byte [] [] before = copy(damaged);
+                try {
+                    codec.correctErrors(damaged, 0, 200);
+                    // Past the limit a wrong codeword may be closer; it
+                    // must at least be a consistent one.
+                    Assertions.assertTrue(codec.isParityCorrect(damaged, 0, 200));
+                }
+                catch (IllegalArgumentException e) {
+                    assertShardsEqual(before, damaged, "rejected shards must be unchanged");
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes a few random bytes in each of count random shards,
+     * within the range, and returns the shards changed.
+     */
+    private static TreeSet<Integer> corrupt(byte [] [] shards, Random random, int count, int offset, int byteCount) {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < shards.length; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        TreeSet<Integer> corrupted = new TreeSet<Integer>(order.subList(0, count));
+        for (int shardIndex : corrupted) {
+            // Distinct positions, so two changes can't cancel out.
+            int changes = 1 + random.nextInt(Math.min(5, byteCount));
+            int start = random.nextInt(byteCount);
+            for (int c = 0; c < changes; c++) {
+                shards[shardIndex][offset + (start + c) % byteCount] ^= (byte) (1 + random.nextInt(255));
+            }
+        }
+        return corrupted;
+    }
+
+    private static byte [] [] encodedShards(ReedSolomon codec, Random random, int shardSize) {
+        byte [] [] shards = new byte [codec.getTotalShardCount()] [shardSize];
+        for (int i = 0; i < codec.getDataShardCount(); i++) {
+            random.nextBytes(shards[i]);
+        }
+        codec.encodeParity(shards, 0, shardSize);
+        return shards;
+    }
+
+    private static byte [] [] copy(byte [] [] shards) {
+        byte [] [] result = new byte [shards.length] [];
+        for (int i = 0; i < shards.length; i++) {
+            result[i] = shards[i].clone();
+        }
+        return result;
+    }
+
+    private static List<Integer> toList(int [] values) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private static void assertShardsEqual(byte [] [] expected, byte [] [] actual, String context) {
+        for (int i = 0; i < expected.length; i++) {
+            Assertions.assertArrayEquals(expected[i], actual[i], context + ": shard " + i);
+        }
+    }
+}
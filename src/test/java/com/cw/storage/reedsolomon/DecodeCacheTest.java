@@ -0,0 +1,108 @@
+/**
+ * Tests for the decode matrix cache in ReedSolomon.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * decodeMissing() inverts each erasure pattern once, in per-thread
+ * scratch space, and reuses the rows after that.  Every pattern of the
+ * code must decode, both when it is inverted and when it comes out of
+ * the cache, and threads sharing a codec must not see each other's
+ * scratch.
+ */
+public class DecodeCacheTest {
+
+    private static final int SHARD_SIZE = 50;
+
+    @Test
+    public void testEveryErasurePatternTwice() {
+        ReedSolomon codec = ReedSolomon.create(4, 2);
+        byte [] [] original = encodedShards(codec, new Random(20));
+        int patterns = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int mask = 0; mask < (1 << codec.getTotalShardCount()); mask++) {
+                if (Integer.bitCount(mask) != codec.getParityShardCount()) {
+                    continue;
+                }
+                decodeAndCheck(codec, original, mask);
+                if (pass == 0) {
+                    patterns += 1;
+                }
+            }
+        }
+        Assertions.assertEquals(patterns, codec.getDecodeCacheMisses());
+        Assertions.assertEquals(patterns, codec.getDecodeCacheHits());
+    }
+
+    @Test
+    public void testConcurrentDecodes() throws Exception {
+        final ReedSolomon codec = ReedSolomon.create(10, 4);
+        final byte [] [] original = encodedShards(codec, new Random(21));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 4; t++) {
+                final long seed = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 500; i++) {
+                            int mask = 0;
+                            while (Integer.bitCount(mask) < codec.getParityShardCount()) {
+                                mask |= 1 << random.nextInt(codec.getTotalShardCount());
+                            }
+                            decodeAndCheck(codec, original, mask);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(2000, codec.getDecodeCacheHits() + codec.getDecodeCacheMisses());
+    }
+
+    private static byte [] [] encodedShards(ReedSolomon codec, Random random) {
+        byte [] [] shards = new byte [codec.getTotalShardCount()] [SHARD_SIZE];
+        for (int i = 0; i < codec.getDataShardCount(); i++) {
+            random.nextBytes(shards[i]);
+        }
+        codec.encodeParity(shards, 0, SHARD_SIZE);
+        return shards;
+    }
+
+    /**
+     * Erases the shards in the bit mask from a copy of original, decodes
+     * it, and checks that every shard came back.
+     */
+    private static void decodeAndCheck(ReedSolomon codec, byte [] [] original, int erasedMask) {
+        byte [] [] shards = new byte [original.length] [];
+        boolean [] present = new boolean [original.length];
+        for (int i = 0; i < original.length; i++) {
+            present[i] = (erasedMask & (1 << i)) == 0;
+            shards[i] = present[i] ? Arrays.copyOf(original[i], SHARD_SIZE) : new byte [SHARD_SIZE];
+        }
+        codec.decodeMissing(shards, present, 0, SHARD_SIZE);
+        for (int i = 0; i < original.length; i++) {
+            Assertions.assertArrayEquals(original[i], shards[i], "shard " + i + " with mask " + erasedMask);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Tests for ReedSolomon.encodeParityBatch().
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A batch must give exactly the parity that encoding each stripe on its
+ * own gives, whether its stripes are packed, coded in place, or split
+ * across several fills of the packing buffers, and a bad stripe anywhere
+ * in the batch must be rejected before any stripe is encoded.
+ */
+public class EncodeParityBatchTest {
+
+    private final Random random = new Random(19);
+
+    @Test
+    public void testMatchesEncodeParity() {
+        ReedSolomon codec = ReedSolomon.create(4, 2);
+        int [] shardSizes = {
+                1, 25, 100, 1023,
+                ReedSolomon.PACKED_BATCH_SHARD_SIZE,
+                5000, 7, ReedSolomon.PACKED_BATCH_SHARD_SIZE - 1,
+        };
+        List<byte [] []> stripes = new ArrayList<byte [] []>();
+        List<byte [] []> expected = new ArrayList<byte [] []>();
+        // Enough small stripes to fill the packing buffers several times.
+        for (int round = 0; round < 10; round++) {
+            for (int shardSize : shardSizes) {
+                byte [] [] shards = randomShards(codec, shardSize);
+                stripes.add(shards);
+                byte [] [] copy = copyShards(shards);
+                codec.encodeParity(copy, 0, shardSize);
+                expected.add(copy);
+            }
+        }
+
+        codec.encodeParityBatch(stripes);
+
+        for (int s = 0; s < stripes.size(); s++) {
+            for (int i = 0; i < codec.getTotalShardCount(); i++) {
+                Assertions.assertArrayEquals(expected.get(s)[i], stripes.get(s)[i], "stripe " + s + " shard " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        ReedSolomon.create(2, 1).encodeParityBatch(new ArrayList<byte [] []>());
+    }
+
+    @Test
+    public void testRejectsBadStripesBeforeEncoding() {
+        ReedSolomon codec = ReedSolomon.create(2, 1);
+        byte [] [] good = randomShards(codec, 10);
+        byte [] [] goodBefore = copyShards(good);
+
+        List<byte [] []> badStripes = new ArrayList<byte [] []>();
+        badStripes.add(null);
+        badStripes.add(new byte [0] []);
+        badStripes.add(new byte [2] [10]);
+        badStripes.add(new byte [] [] {new byte [10], null, new byte [10]});
+        badStripes.add(new byte [] [] {new byte [0], new byte [0], new byte [0]});
+        badStripes.add(new byte [] [] {new byte [10], new byte [9], new byte [10]});
+
+        for (byte [] [] bad : badStripes) {
+            List<byte [] []> batch = new ArrayList<byte [] []>();
+            batch.add(good);
+            batch.add(bad);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> codec.encodeParityBatch(batch));
+            for (int i = 0; i < good.length; i++) {
+                Assertions.assertArrayEquals(goodBefore[i], good[i]);
+            }
+        }
+    }
+
+    private byte [] [] randomShards(ReedSolomon codec, int shardSize) {
+        byte [] [] shards = new byte [codec.getTotalShardCount()] [shardSize];
+        for (byte [] shard : shards) {
+            random.nextBytes(shard);
+        }
+        return shards;
+    }
+
+    private static byte [] [] copyShards(byte [] [] shards) {
+        byte [] [] copy = new byte [shards.length] [];
+        for (int i = 0; i < shards.length; i++) {
+            copy[i] = Arrays.copyOf(shards[i], shards[i].length);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Tests for LocallyRepairableCode.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class LocallyRepairableCodeTest {
+
+    /**
+     * (data shards, local groups, global parity shards)
+     */
+    private static final int [] [] CONFIGURATIONS = {{12, 2, 2}, {6, 2, 2}, {10, 3, 4}, {5, 1, 1}};
+
+    private static final int SHARD_SIZE = 50;
+
+    @Test
+    public void repairsOneShardFromItsRepairSetOnly() {
+        Random random = new Random(7);
+        for (int [] configuration : CONFIGURATIONS) {
+            LocallyRepairableCode code = LocallyRepairableCode.create(configuration[0], configuration[1], configuration[2]);
+            byte [] [] shards = encodedShards(code, random);
+            Assertions.assertTrue(code.isParityCorrect(shards, 0, SHARD_SIZE));
+            int largestGroup = (configuration[0] + configuration[1] - 1) / configuration[1];
+
+            for (int lost = 0; lost < code.getTotalShardCount(); lost++) {
+                int [] repairSet = code.repairSet(lost);
+                if (lost < configuration[0] + configuration[1]) {
+                    // The rest of the group: its data shards and local parity.
+                    Assertions.assertTrue(repairSet.length <= largestGroup, "shard " + lost + " reads " + repairSet.length);
+                }
+                Set<Integer> needed = new HashSet<Integer>();
+                for (int i : repairSet) {
+                    needed.add(i);
+                }
+
+                // Shards that repair shouldn't read are null, so reading
+                // one would throw.
+                byte [] [] damaged = new byte [shards.length] [];
+                boolean [] present = new boolean [shards.length];
+                for (int i = 0; i < shards.length; i++) {
+                    present[i] = i != lost;
+                    if (needed.contains(i)) {
+                        damaged[i] = shards[i].clone();
+                    }
+                }
+                damaged[lost] = new byte [SHARD_SIZE];
+                code.reconstructShard(damaged, present, lost, 0, SHARD_SIZE);
+                Assertions.assertArrayEquals(shards[lost], damaged[lost], "shard " + lost);
+            }
+        }
+    }
+
+    @Test
+    public void decodesAnyPatternUpToGlobalParityCount() {
+        Random random = new Random(8);
+        for (int [] configuration : CONFIGURATIONS) {
+            LocallyRepairableCode code = LocallyRepairableCode.create(configuration[0], configuration[1], configuration[2]);
+            byte [] [] shards = encodedShards(code, random);
+            int totalShardCount = code.getTotalShardCount();
+            for (int erasures = 1; erasures <= configuration[2]; erasures++) {
+                for (int trial = 0; trial < 100; trial++) {
+                    byte [] [] damaged = new byte [totalShardCount] [];
+                    boolean [] present = new boolean [totalShardCount];
+                    Arrays.fill(present, true);
+                    for (int i = 0; i < totalShardCount; i++) {
+                        damaged[i] = shards[i].clone();
+                    }
+                    List<Integer> order = new ArrayList<Integer>();
+                    for (int i = 0; i < totalShardCount; i++) {
+                        order.add(i);
+                    }
+                    Collections.shuffle(order, random);
+                    for (int k = 0; k < erasures; k++) {
+                        present[order.get(k)] = false;
+                        Arrays.fill(damaged[order.get(k)], (byte) 0);
+                    }
+                    code.decodeMissing(damaged, present, 0, SHARD_SIZE);
+                    for (int i = 0; i < totalShardCount; i++) {
+                        Assertions.assertArrayEquals(shards[i], damaged[i],
+                                Arrays.toString(configuration) + " lost " + order.subList(0, erasures) + " shard " + i);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void detectsWrongLocalParity() {
+        LocallyRepairableCode code = LocallyRepairableCode.create(6, 2, 2);
+        byte [] [] shards = encodedShards(code, new Random(9));
+        shards[6][0] ^= 1;
+        Assertions.assertFalse(code.isParityCorrect(shards, 0, SHARD_SIZE));
+    }
+
+    @Test
+    public void rejectsBadConfiguration() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LocallyRepairableCode.create(4, 0, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LocallyRepairableCode.create(4, 5, 2));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new LocallyRepairableCode(4, 2, ReedSolomon.create(5, 2)));
+    }
+
+    private static byte [] [] encodedShards(LocallyRepairableCode code, Random random) {
+        byte [] [] shards = new byte [code.getTotalShardCount()] [SHARD_SIZE];
+        for (int i = 0; i < code.getDataShardCount(); i++) {
+            random.nextBytes(shards[i]);
+        }
+        code.encodeParity(shards, 0, SHARD_SIZE);
+        return shards;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Tests for Matrix.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * invert() is built on invertInPlace(), which has no augmented identity
+ * matrix and undoes its row swaps as column swaps at the end, so the
+ * inverses are checked against both sides of the identity, on matrices
+ * with enough zeros to need those swaps.
+ */
+public class MatrixTest {
+
+    @Test
+    public void testInverse() {
+        Matrix m = new Matrix(new byte [] [] {
+                {56, 23, 98},
+                {3, 100, (byte) 200},
+                {45, (byte) 201, 123}
+        });
+        Assertions.assertEquals("[[175, 133, 33], [130, 13, 245], [112, 35, 126]]", m.invert().toString());
+        Assertions.assertEquals(Matrix.identity(3), m.times(m.invert()));
+    }
+
+    @Test
+    public void testInverseNeedsRowSwaps() {
+        // A zero on every diagonal element.
+        Matrix m = new Matrix(new byte [] [] {
+                {0, 1, 0},
+                {0, 0, 1},
+                {1, 0, 0}
+        });
+        Matrix inverse = m.invert();
+        Assertions.assertEquals(Matrix.identity(3), m.times(inverse));
+        Assertions.assertEquals(Matrix.identity(3), inverse.times(m));
+    }
+
+    @Test
+    public void testRandomInverses() {
+        Random random = new Random(20);
+        int inverted = 0;
+        for (int trial = 0; trial < 2000; trial++) {
+            int size = 1 + random.nextInt(20);
+            Matrix m = new Matrix(size, size);
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    // A quarter zeros, to force pivot swaps and
+                    // sometimes singular matrices.
+                    m.set(r, c, (byte) (random.nextInt(4) == 0 ? 0 : random.nextInt(256)));
+                }
+            }
+            Matrix inverse;
+            try {
+                inverse = m.invert();
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            Assertions.assertEquals(Matrix.identity(size), m.times(inverse));
+            Assertions.assertEquals(Matrix.identity(size), inverse.times(m));
+            inverted += 1;
+        }
+        Assertions.assertTrue(1000 < inverted, "only " + inverted + " matrices were invertible");
+    }
+
+    @Test
+    public void testInvertInPlaceWithLargerScratch() {
+        // ReedSolomon hands in scratch space sized for its widest code.
+        Matrix m = new Matrix(new byte [] [] {
+                {1, 2, 3, 4},
+                {0, 0, 5, 6},
+                {7, 0, 0, 8},
+                {9, 10, 0, 11}
+        });
+        byte [] work = new byte [8 * 8];
+        for (int r = 0; r < 4; r++) {
+            System.arraycopy(m.getRow(r), 0, work, r * 4, 4);
+        }
+        Matrix.invertInPlace(work, 4, new int [8]);
+        Matrix inverse = new Matrix(4, 4);
+        for (int r = 0; r < 4; r++) {
+            for (int c = 0; c < 4; c++) {
+                inverse.set(r, c, work[r * 4 + c]);
+            }
+        }
+        Assertions.assertEquals(m.invert(), inverse);
+    }
+
+    @Test
+    public void testSingular() {
+        Matrix m = new Matrix(new byte [] [] {
+                {4, 2},
+                {12, 6}
+        });
+        Assertions.assertThrows(IllegalArgumentException.class, m::invert);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Matrix(2, 3).invert());
+    }
+}
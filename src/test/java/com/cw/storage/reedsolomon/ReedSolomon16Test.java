@@ -0,0 +1,96 @@
+/**
+ * Tests for ReedSolomon16 and Galois16.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ReedSolomon16Test {
+
+    @Test
+    public void fieldDivisionUndoesMultiplication() {
+        Random random = new Random(6);
+        for (int i = 0; i < 100000; i++) {
+            int a = random.nextInt(Galois16.FIELD_SIZE);
+            int b = 1 + random.nextInt(Galois16.FIELD_SIZE - 1);
+            Assertions.assertEquals(a, Galois16.multiply(Galois16.divide(a, b), b));
+            Assertions.assertEquals(Galois16.multiply(a, b), Galois16.multiply(b, a));
+        }
+        Assertions.assertEquals(0, Galois16.multiply(0, 12345));
+        Assertions.assertEquals(12345, Galois16.multiply(1, 12345));
+    }
+
+    @Test
+    public void decodesUpToParityShardCountErasures() {
+        Random random = new Random(6);
+        // 300+30 has more shards than GF(2^8) allows.
+        for (int [] shape : new int [] [] {{2, 1}, {4, 2}, {17, 3}, {300, 30}}) {
+            ReedSolomon16 codec = ReedSolomon16.create(shape[0], shape[1]);
+            int totalShardCount = shape[0] + shape[1];
+            int shardSize = 64;
+            byte [] [] shards = new byte [totalShardCount] [shardSize];
+            for (int i = 0; i < shape[0]; i++) {
+                random.nextBytes(shards[i]);
+            }
+            codec.encodeParity(shards, 0, shardSize);
+            Assertions.assertTrue(codec.isParityCorrect(shards, 0, shardSize));
+            Assertions.assertTrue(codec.isParityCorrect(shards, 0, shardSize, new byte [shardSize]));
+
+            for (int trial = 0; trial < 10; trial++) {
+                byte [] [] damaged = new byte [totalShardCount] [];
+                boolean [] present = new boolean [totalShardCount];
+                Arrays.fill(present, true);
+                for (int i = 0; i < totalShardCount; i++) {
+                    damaged[i] = shards[i].clone();
+                }
+                List<Integer> order = new ArrayList<Integer>();
+                for (int i = 0; i < totalShardCount; i++) {
+                    order.add(i);
+                }
+                Collections.shuffle(order, random);
+                int erasures = trial == 0 ? shape[1] : 1 + random.nextInt(shape[1]);
+                for (int k = 0; k < erasures; k++) {
+                    present[order.get(k)] = false;
+                    Arrays.fill(damaged[order.get(k)], (byte) 0);
+                }
+                // Decode all but the first and last symbol.
+                codec.decodeMissing(damaged, present, 2, shardSize - 4);
+                for (int i = 0; i < totalShardCount; i++) {
+                    Assertions.assertArrayEquals(
+                            Arrays.copyOfRange(shards[i], 2, shardSize - 2),
+                            Arrays.copyOfRange(damaged[i], 2, shardSize - 2),
+                            shape[0] + "+" + shape[1] + " shard " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void detectsWrongParity() {
+        ReedSolomon16 codec = ReedSolomon16.create(10, 4);
+        byte [] [] shards = new byte [14] [100];
+        new Random(1).nextBytes(shards[0]);
+        codec.encodeParity(shards, 0, 100);
+        shards[13][99] ^= 1;
+        Assertions.assertFalse(codec.isParityCorrect(shards, 0, 100));
+    }
+
+    @Test
+    public void rejectsBadArguments() {
+        ReedSolomon16 codec = ReedSolomon16.create(4, 2);
+        byte [] [] shards = new byte [6] [10];
+        // Symbols are two bytes.
+        Assertions.assertThrows(IllegalArgumentException.class, () -> codec.encodeParity(shards, 1, 8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> codec.encodeParity(shards, 0, 12));
+        boolean [] present = {false, false, false, true, true, true};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> codec.decodeMissing(shards, present, 0, 10));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Tests for StreamingReedSolomon.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class StreamingReedSolomonTest {
+
+    @Test
+    public void roundTripWithMissingShards() throws IOException {
+        Random random = new Random(7);
+        for (int [] shape : new int [] [] {{1, 1}, {2, 1}, {4, 2}}) {
+            for (int chunkSize : new int [] {8, 16, 1000}) {
+                // Lengths around the payload of one stripe, and several stripes.
+                for (int length : new int [] {0, 1, 11, 12, 13, 27, 28, 29, 5000, 100003}) {
+                    ReedSolomon codec = ReedSolomon.create(shape[0], shape[1]);
+                    StreamingReedSolomon streaming = new StreamingReedSolomon(codec, chunkSize, 2);
+                    byte [] data = new byte [length];
+                    random.nextBytes(data);
+                    ByteArrayOutputStream [] shardOutputs = encode(streaming, codec, data);
+
+                    InputStream [] shardInputs = inputs(shardOutputs, 0);
+                    for (int i = 0; i < shape[1]; i++) {
+                        shardInputs[random.nextInt(shardInputs.length)] = null;
+                    }
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    Assertions.assertEquals(length, streaming.decode(shardInputs, out));
+                    Assertions.assertArrayEquals(data, out.toByteArray(),
+                            shape[0] + "+" + shape[1] + " chunk " + chunkSize + " length " + length);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void truncatedShardsAreDetected() throws IOException {
+        ReedSolomon codec = ReedSolomon.create(4, 2);
+        StreamingReedSolomon streaming = new StreamingReedSolomon(codec, 16, 2);
+        byte [] data = new byte [1000];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream [] shardOutputs = encode(streaming, codec, data);
+        Assertions.assertThrows(EOFException.class,
+                () -> streaming.decode(inputs(shardOutputs, 16), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void rejectsChunkSizeWithNoRoomForPayload() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new StreamingReedSolomon(ReedSolomon.create(1, 1), 4, 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new StreamingReedSolomon(ReedSolomon.create(4, 2), 3, 1));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new StreamingReedSolomon(ReedSolomon.create(4, 2), Integer.MAX_VALUE, 1));
+        Assertions.assertEquals(5, new StreamingReedSolomon(ReedSolomon.create(1, 1), 5, 1).getChunkSize());
+    }
+
+    private static ByteArrayOutputStream [] encode(StreamingReedSolomon streaming, ReedSolomon codec, byte [] data) throws IOException {
+        ByteArrayOutputStream [] shardOutputs = new ByteArrayOutputStream [codec.getTotalShardCount()];
+        for (int i = 0; i < shardOutputs.length; i++) {
+            shardOutputs[i] = new ByteArrayOutputStream();
+        }
+        Assertions.assertEquals(data.length, streaming.encode(new ByteArrayInputStream(data), shardOutputs));
+        return shardOutputs;
+    }
+
+    /**
+     * Streams over the encoded shards, each with the last dropBytes removed.
+     */
+    private static InputStream [] inputs(ByteArrayOutputStream [] shardOutputs, int dropBytes) {
+        InputStream [] inputs = new InputStream [shardOutputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            byte [] shard = shardOutputs[i].toByteArray();
+            inputs[i] = new ByteArrayInputStream(Arrays.copyOf(shard, shard.length - dropBytes));
+        }
+        return inputs;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Tests VectorCodingLoop against the table coding loop.
+ */
+
+package com.cw.storage.reedsolomon;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * VectorCodingLoop is only compiled by the "vector" profile and only
+ * loads when jdk.incubator.vector is present, so these tests are
+ * skipped elsewhere.  Where it is available, ReedSolomon.create() (and
+ * so StorageSystem, through ReedSolomonCodecs) uses it by default, and
+ * its output has to be identical to InputOutputByteTableCodingLoop's.
+ */
+public class VectorCodingLoopTest {
+
+    private static final int [] [] SHAPES = {{1, 1}, {2, 1}, {4, 2}, {10, 4}, {17, 3}, {64, 16}};
+
+    @Test
+    public void defaultLoopIsVectorWhenAvailable() {
+        CodingLoop vector = vectorCodingLoop();
+        Assertions.assertEquals(vector.getClass(), ReedSolomon.getDefaultCodingLoop().getClass());
+    }
+
+    @Test
+    public void parityMatchesTableLoop() {
+        CodingLoop vector = vectorCodingLoop();
+        Random random = new Random(17);
+        for (int [] shape : SHAPES) {
+            ReedSolomon vectorCodec = new ReedSolomon(shape[0], shape[1], vector);
+            ReedSolomon tableCodec = new ReedSolomon(shape[0], shape[1], new InputOutputByteTableCodingLoop());
+            // Sizes and offsets that aren't multiples of the vector length
+            // exercise the scalar tail.
+            for (int shardSize : new int [] {1, 7, 31, 64, 100, 1000, 65537}) {
+                int offset = random.nextInt(Math.min(5, shardSize));
+                int byteCount = shardSize - offset;
+                byte [] [] expected = randomShards(random, shape[0] + shape[1], shardSize);
+                byte [] [] actual = new byte [expected.length] [];
+                for (int i = 0; i < expected.length; i++) {
+                    actual[i] = expected[i].clone();
+                }
+                tableCodec.encodeParity(expected, offset, byteCount);
+                vectorCodec.encodeParity(actual, offset, byteCount);
+                for (int i = 0; i < expected.length; i++) {
+                    Assertions.assertArrayEquals(expected[i], actual[i],
+                            shape[0] + "+" + shape[1] + " size " + shardSize + " shard " + i);
+                }
+
+                Assertions.assertTrue(vectorCodec.isParityCorrect(actual, offset, byteCount));
+                actual[actual.length - 1][shardSize - 1] ^= 1;
+                Assertions.assertFalse(vectorCodec.isParityCorrect(actual, offset, byteCount));
+            }
+        }
+    }
+
+    @Test
+    public void codecsDecodeEachOthersShards() {
+        CodingLoop vector = vectorCodingLoop();
+        Random random = new Random(3);
+        ReedSolomon vectorCodec = new ReedSolomon(10, 4, vector);
+        ReedSolomon tableCodec = new ReedSolomon(10, 4, new InputOutputByteTableCodingLoop());
+        byte [] [] shards = randomShards(random, 14, 4099);
+        byte [] [] copy = new byte [14] [];
+        vectorCodec.encodeParity(shards, 0, 4099);
+        for (int i = 0; i < 14; i++) {
+            copy[i] = shards[i].clone();
+        }
+        Assertions.assertTrue(tableCodec.isParityCorrect(shards, 0, 4099));
+
+        boolean [] present = new boolean [14];
+        Arrays.fill(present, true);
+        for (int missing : new int [] {0, 3, 9, 12}) {
+            present[missing] = false;
+            Arrays.fill(shards[missing], (byte) 0);
+        }
+        vectorCodec.decodeMissing(shards, present, 0, 4099);
+        for (int i = 0; i < 14; i++) {
+            Assertions.assertArrayEquals(copy[i], shards[i], "shard " + i);
+        }
+    }
+
+    private static CodingLoop vectorCodingLoop() {
+        try {
+            return (CodingLoop) Class.forName("com.cw.storage.reedsolomon.VectorCodingLoop")
+                    .getDeclaredConstructor().newInstance();
+        }
+        catch (Exception | LinkageError e) {
+            Assumptions.abort("VectorCodingLoop is not available: " + e);
+            return null;
+        }
+    }
+
+    private static byte [] [] randomShards(Random random, int count, int size) {
+        byte [] [] shards = new byte [count] [size];
+        for (byte [] shard : shards) {
+            random.nextBytes(shard);
+        }
+        return shards;
+    }
+}